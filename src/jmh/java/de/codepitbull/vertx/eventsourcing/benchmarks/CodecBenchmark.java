@@ -0,0 +1,76 @@
+package de.codepitbull.vertx.eventsourcing.benchmarks;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The JSON-encoding of a {@link RoundUpdate} compared to the binary one of {@link EventCodecs}.
+ *
+ * @author Jochen Mader
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"2", "100"})
+    public int moves;
+
+    private RoundUpdate update;
+    private byte[] json;
+    private Buffer binary;
+
+    @Setup
+    public void setUp() {
+        RoundUpdate.Builder builder = RoundUpdate.builder()
+                .roundId(4711)
+                .newPlayer(Player.builder().id(moves).name("newcomer").x(3).y(5).build());
+        for (int i = 0; i < moves; i++)
+            builder.move(i, Move.fromOrdinal(i % 4));
+        update = builder.build();
+        json = update.toJson().encode().getBytes(UTF_8);
+        binary = EventCodecs.encode(update);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return update.toJson().encode().getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public JsonObject jsonDecode() {
+        return new JsonObject(new String(json, UTF_8));
+    }
+
+    @Benchmark
+    public Buffer binaryEncode() {
+        return EventCodecs.encode(update);
+    }
+
+    @Benchmark
+    public RoundUpdate binaryDecode() {
+        return EventCodecs.decodeRoundUpdate(binary);
+    }
+}
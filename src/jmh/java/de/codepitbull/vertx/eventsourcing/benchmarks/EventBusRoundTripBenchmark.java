@@ -0,0 +1,112 @@
+package de.codepitbull.vertx.eventsourcing.benchmarks;
+
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.verticles.GameVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.REPLAY_SNAPSHOTS_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.REPLAY_UPDATES_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+
+/**
+ * Time from sending moves to {@link GameVerticle} until all of them arrived as a {@link RoundUpdate} at the
+ * event store address. The game collects moves into rounds, so expect the result to be dominated by the round length.
+ *
+ * @author Jochen Mader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBusRoundTripBenchmark {
+
+    private static final String GAME = "benchmark";
+
+    @Param({"1", "100"})
+    public int players;
+
+    private Vertx vertx;
+    private volatile CountDownLatch pendingMoves = new CountDownLatch(0);
+    private JsonObject[] moves;
+
+    @Setup
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        EventBus eventBus = vertx.eventBus();
+        eventBus.<RoundUpdate>consumer(REPLAY_UPDATES_BASE + GAME, msg -> {
+            RoundUpdate update = msg.body();
+            for (int i = 0; i < update.moveCount(); i++)
+                pendingMoves.countDown();
+            msg.reply(true);
+        });
+        eventBus.consumer(REPLAY_SNAPSHOTS_BASE + GAME, msg -> msg.reply(true));
+
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(GameVerticle.class.getName(),
+                new DeploymentOptions().setConfig(new JsonObject().put(GAME_ID, GAME).put(NR_PLAYERS, players)),
+                result -> {
+                    if (result.succeeded())
+                        deployed.complete(result.result());
+                    else
+                        deployed.completeExceptionally(result.cause());
+                });
+        deployed.get(10, TimeUnit.SECONDS);
+
+        moves = new JsonObject[players];
+        for (int i = 0; i < players; i++) {
+            CompletableFuture<Integer> registered = new CompletableFuture<>();
+            eventBus.<Integer>send(GAME_BASE + GAME, new JsonObject().put(ACTION, ACTION_REG).put(PLAYER_NAME, "player" + i),
+                    result -> {
+                        if (result.succeeded())
+                            registered.complete(result.result().body());
+                        else
+                            registered.completeExceptionally(result.cause());
+                    });
+            int playerId = registered.get(10, TimeUnit.SECONDS);
+            moves[i] = new JsonObject()
+                    .put(ACTION, ACTION_MOVE)
+                    .put(PLAYER_ID, playerId)
+                    .put(ACTION_MOVE, ((playerId & 1) == 0 ? Move.DOWN : Move.UP).code());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        vertx.close(result -> closed.countDown());
+        closed.await(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void roundTrip() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(players);
+        pendingMoves = latch;
+        for (JsonObject move : moves)
+            vertx.eventBus().send(GAME_BASE + GAME, move);
+        if (!latch.await(10, TimeUnit.SECONDS))
+            throw new IllegalStateException("Moves didn't arrive at " + REPLAY_UPDATES_BASE + GAME);
+    }
+}
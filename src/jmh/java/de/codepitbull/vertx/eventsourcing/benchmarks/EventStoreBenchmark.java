@@ -0,0 +1,74 @@
+package de.codepitbull.vertx.eventsourcing.benchmarks;
+
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.InMemoryEventStore;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing and reading single events with the {@link InMemoryEventStore}.
+ *
+ * @author Jochen Mader
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStoreBenchmark {
+
+    private static final int EVENTS = 1 << 16;
+    private static final Integer SPECTATOR_ID = 1;
+
+    private InMemoryEventStore store;
+    private RoundUpdate update;
+    private RoundUpdate lastRead;
+    private int read;
+
+    private final Handler<AsyncResult<Void>> storedHandler = result -> {};
+    private final Handler<AsyncResult<RoundUpdate>> readHandler = result -> lastRead = result.result();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        update = RoundUpdate.builder()
+                .roundId(1)
+                .move(0, Move.LEFT)
+                .move(1, Move.UP)
+                .build();
+        store = new InMemoryEventStore();
+        for (int i = 0; i < EVENTS; i++)
+            store.storeEvent(update, storedHandler);
+        store.startConsumerForSpectatorIdWithStartOffset(SPECTATOR_ID, -1);
+        read = 0;
+    }
+
+    @Benchmark
+    public void storeEvent() {
+        store.storeEvent(update, storedHandler);
+    }
+
+    @Benchmark
+    public RoundUpdate getNextEvent() {
+        if (++read == EVENTS) {
+            store.startConsumerForSpectatorIdWithStartOffset(SPECTATOR_ID, -1);
+            read = 0;
+        }
+        store.getNextEvent(SPECTATOR_ID, readHandler);
+        return lastRead;
+    }
+}
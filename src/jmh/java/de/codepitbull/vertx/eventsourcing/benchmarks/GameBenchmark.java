@@ -0,0 +1,74 @@
+package de.codepitbull.vertx.eventsourcing.benchmarks;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving players and taking snapshots of a {@link Game}.
+ *
+ * @author Jochen Mader
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    @Param({"10", "500"})
+    public int players;
+
+    private Game game;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        game = Game.builder()
+                .gameId("benchmark")
+                .numPlayers(players)
+                .build();
+        for (int i = 0; i < players; i++)
+            game.addPlayer(Player.builder().id(i).name("player" + i).x(i).y(5).build());
+    }
+
+    @Benchmark
+    public int move() {
+        int index = next++ % players;
+        game.move(index, (index & 1) == 0 ? Move.LEFT : Move.RIGHT);
+        return game.x(index);
+    }
+
+    @Benchmark
+    public JsonObject toJson() {
+        return game.toJson();
+    }
+
+    @Benchmark
+    public Buffer encodeFullSnapshot() {
+        return EventCodecs.encode(game.snapshot(true));
+    }
+
+    @Benchmark
+    public Buffer encodeDeltaSnapshot() {
+        game.move(next++ % players, Move.UP);
+        return EventCodecs.encode(game.snapshot(false));
+    }
+}
@@ -0,0 +1,339 @@
+package de.codepitbull.vertx.eventsourcing.broadcast;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.eventbus.MessageConsumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.BROWSER_GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.ACTION;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.ACTION_SNAPSHOT;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Sends the updates of games to the sockets of the browsers watching them. All sockets get the same, once serialised
+ * buffer of an update, see {@link RoundUpdate#toJsonBuffer()} and {@link RoundUpdate#toBuffer()}.
+ * <p>
+ * A socket whose write queue is full gets no updates until it has drained, the rounds in between are dropped. Once
+ * drained it is sent the latest state of the game instead, so a slow browser costs a bounded amount of memory and
+ * catches up with a single message. The latest state is kept by applying the updates to a copy of the game, requested
+ * from the game when its first socket subscribes. New sockets start with that state as well.
+ * <p>
+ * Sockets of players may be given the id of the player, they only get the moves of the players in its view, see
+ * {@link Game#playersInView(int, java.util.BitSet)}. Players coming into view are sent as new players with their
+ * current position, players leaving it are no longer updated. States sent to them only hold the players in view as
+ * well. The updates and states of players standing in the same cell are the same and serialised once, so the cost of
+ * a socket depends on the players around it instead of the size of the game.
+ * <p>
+ * Sockets are written JSON or the binary layout of {@link EventCodecs}. Browsers tell states from updates by their
+ * {@link de.codepitbull.vertx.eventsourcing.constants.Constants#MSG_TYPE}, binary clients by the type in front.
+ * All methods have to be called on the context the fan-out has been created on.
+ *
+ * @author Jochen Mader
+ */
+public class UpdateFanOut {
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateFanOut.class);
+
+    public static final long STATE_RETRY_MS = 1000;
+    public static final int NO_VIEWER = -1;
+
+    private final Vertx vertx;
+    private final Map<String, Channel> channels = new HashMap<>();
+    private long droppedUpdates;
+
+    public UpdateFanOut(Vertx vertx) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        EventCodecs.register(vertx);
+    }
+
+    /**
+     * How states and updates are written to a socket.
+     */
+    public enum Encoding {
+        JSON {
+            @Override
+            Buffer update(RoundUpdate update) {
+                return update.toJsonBuffer();
+            }
+
+            @Override
+            Buffer state(Game game) {
+                return Buffer.buffer(game.toJson().encode());
+            }
+        },
+        BINARY {
+            @Override
+            Buffer update(RoundUpdate update) {
+                return update.toBuffer();
+            }
+
+            @Override
+            Buffer state(Game game) {
+                return EventCodecs.encode(game);
+            }
+        };
+
+        abstract Buffer update(RoundUpdate update);
+
+        abstract Buffer state(Game game);
+    }
+
+    public void subscribe(String gameId, WriteStream<Buffer> socket) {
+        subscribe(gameId, socket, Encoding.JSON);
+    }
+
+    /**
+     * Starts sending the updates of a game to the socket, beginning with the current state of the game.
+     */
+    public void subscribe(String gameId, WriteStream<Buffer> socket, Encoding encoding) {
+        subscribe(gameId, socket, encoding, NO_VIEWER);
+    }
+
+    /**
+     * Starts sending the updates of a game to the socket, beginning with the current state of the game.
+     * @param viewerId the player the updates are filtered for, {@link #NO_VIEWER} to get the updates of all players
+     */
+    public void subscribe(String gameId, WriteStream<Buffer> socket, Encoding encoding, int viewerId) {
+        notNull(gameId, "gameId must be set");
+        notNull(socket, "socket must be set");
+        notNull(encoding, "encoding must be set");
+        channels.computeIfAbsent(gameId, Channel::new).add(socket, encoding, viewerId);
+    }
+
+    public void unsubscribe(String gameId, WriteStream<Buffer> socket) {
+        Channel channel = channels.get(gameId);
+        if (channel != null)
+            channel.remove(socket);
+    }
+
+    public int subscribers(String gameId) {
+        Channel channel = channels.get(gameId);
+        return channel == null ? 0 : channel.subscribers.size();
+    }
+
+    /**
+     * @return the number of updates not sent to slow sockets so far
+     */
+    public long droppedUpdates() {
+        return droppedUpdates;
+    }
+
+    /**
+     * Stops all subscriptions, the sockets are left open.
+     */
+    public void close() {
+        new ArrayList<>(channels.values()).forEach(Channel::close);
+    }
+
+    private static class Subscriber {
+        final WriteStream<Buffer> socket;
+        final Encoding encoding;
+        final int viewerId;
+        //indices of the players whose position the socket knows, only used with a viewer
+        final BitSet known = new BitSet();
+        //false until the socket has been sent the state of the game
+        boolean synced;
+
+        Subscriber(WriteStream<Buffer> socket, Encoding encoding, int viewerId) {
+            this.socket = socket;
+            this.encoding = encoding;
+            this.viewerId = viewerId;
+        }
+    }
+
+    private class Channel {
+        private final String gameId;
+        private final Map<WriteStream<Buffer>, Subscriber> subscribers = new IdentityHashMap<>();
+        private final MessageConsumer<RoundUpdate> consumer;
+        //updates received before the state of the game arrived
+        private List<RoundUpdate> early = new ArrayList<>();
+        private Game game;
+        //the current state by encoding
+        private final Buffer[] states = new Buffer[Encoding.values().length];
+        //the filtered updates of the current round by cell of the viewer and encoding
+        private final Map<Long, Buffer[]> views = new HashMap<>();
+        //the filtered states of the current round by cell of the viewer and encoding
+        private final Map<Long, Buffer[]> viewStates = new HashMap<>();
+        private final BitSet visible = new BitSet();
+        private final BitSet entering = new BitSet();
+
+        Channel(String gameId) {
+            this.gameId = gameId;
+            consumer = vertx.eventBus().<RoundUpdate>consumer(BROWSER_GAME_BASE + gameId, msg -> update(msg.body()));
+            consumer.completionHandler(registered -> {
+                if (registered.succeeded())
+                    requestState();
+                else
+                    LOG.error("Failed subscribing to game " + gameId, registered.cause());
+            });
+        }
+
+        private void requestState() {
+            vertx.eventBus().<JsonObject>send(GAME_BASE + gameId, new JsonObject().put(ACTION, ACTION_SNAPSHOT), reply -> {
+                if (channels.get(gameId) != this)
+                    return;
+                if (reply.failed()) {
+                    LOG.error("Failed getting state of game " + gameId, reply.cause());
+                    //all updates received so far will be contained in the next state
+                    early.clear();
+                    vertx.setTimer(STATE_RETRY_MS, retry -> {
+                        if (channels.get(gameId) == this)
+                            requestState();
+                    });
+                    return;
+                }
+                game = Game.fromJson(reply.result().body());
+                //the game has been read after registering, so only older updates can be missing from it
+                early.stream().filter(update -> update.getRoundId() > game.getRoundId()).forEach(game::apply);
+                early = null;
+                subscribers.values().forEach(this::sync);
+            });
+        }
+
+        void add(WriteStream<Buffer> socket, Encoding encoding, int viewerId) {
+            Subscriber subscriber = new Subscriber(socket, encoding, viewerId);
+            subscribers.put(socket, subscriber);
+            if (game != null)
+                sync(subscriber);
+        }
+
+        void remove(WriteStream<Buffer> socket) {
+            Subscriber subscriber = subscribers.remove(socket);
+            if (subscriber != null && !subscriber.synced)
+                socket.drainHandler(null);
+            if (subscribers.isEmpty())
+                close();
+        }
+
+        void close() {
+            consumer.unregister();
+            channels.remove(gameId, this);
+        }
+
+        private void update(RoundUpdate update) {
+            if (game == null) {
+                early.add(update);
+                return;
+            }
+            game.apply(update);
+            Arrays.fill(states, null);
+            views.clear();
+            viewStates.clear();
+            for (Subscriber subscriber : subscribers.values()) {
+                if (!subscriber.synced) {
+                    droppedUpdates++;
+                    continue;
+                }
+                if (subscriber.socket.writeQueueFull()) {
+                    subscriber.synced = false;
+                    droppedUpdates++;
+                    subscriber.socket.drainHandler(drained -> sync(subscriber));
+                    continue;
+                }
+                subscriber.socket.write(view(subscriber, update));
+            }
+        }
+
+        /**
+         * The part of the update the subscriber is interested in, shared with the subscribers in the same cell unless
+         * players came into view.
+         */
+        private Buffer view(Subscriber subscriber, RoundUpdate update) {
+            int viewer = subscriber.viewerId == NO_VIEWER ? -1 : game.indexOf(subscriber.viewerId);
+            if (viewer < 0)
+                return subscriber.encoding.update(update);
+            game.playersInView(viewer, visible);
+            entering.clear();
+            entering.or(visible);
+            entering.andNot(subscriber.known);
+            subscriber.known.clear();
+            subscriber.known.or(visible);
+            if (!entering.isEmpty())
+                return subscriber.encoding.update(filter(update));
+            Buffer[] encoded = views.computeIfAbsent(game.viewCell(viewer), cell -> new Buffer[Encoding.values().length]);
+            int encoding = subscriber.encoding.ordinal();
+            if (encoded[encoding] == null)
+                encoded[encoding] = subscriber.encoding.update(filter(update));
+            return encoded[encoding];
+        }
+
+        /**
+         * Keeps the moves of the {@link #visible} players and replaces those {@link #entering} by their position.
+         */
+        private RoundUpdate filter(RoundUpdate update) {
+            RoundUpdate.Builder view = RoundUpdate.builder().roundId(update.getRoundId());
+            for (int i = 0; i < update.moveCount(); i++) {
+                int index = game.indexOf(update.playerId(i));
+                if (index >= 0 && visible.get(index) && !entering.get(index))
+                    view.move(update.playerId(i), update.move(i));
+            }
+            for (int index = entering.nextSetBit(0); index >= 0; index = entering.nextSetBit(index + 1))
+                view.newPlayer(game.getPlayer(index));
+            return view.build();
+        }
+
+        /**
+         * Sends the latest state to a socket that has not seen all updates, once it can take it.
+         */
+        private void sync(Subscriber subscriber) {
+            if (subscribers.get(subscriber.socket) != subscriber || game == null)
+                return;
+            if (subscriber.socket.writeQueueFull()) {
+                subscriber.socket.drainHandler(drained -> sync(subscriber));
+                return;
+            }
+            subscriber.socket.drainHandler(null);
+            subscriber.socket.write(state(subscriber));
+            subscriber.synced = true;
+        }
+
+        /**
+         * The state the subscriber is interested in, shared by all sockets catching up in the same round and cell. The
+         * players in it become the players known to the subscriber.
+         */
+        private Buffer state(Subscriber subscriber) {
+            int encoding = subscriber.encoding.ordinal();
+            int viewer = subscriber.viewerId == NO_VIEWER ? -1 : game.indexOf(subscriber.viewerId);
+            subscriber.known.clear();
+            if (viewer < 0) {
+                subscriber.known.set(0, game.currentNumPlayers());
+                if (states[encoding] == null)
+                    states[encoding] = subscriber.encoding.state(game);
+                return states[encoding];
+            }
+            game.playersInView(viewer, visible);
+            subscriber.known.or(visible);
+            Buffer[] encoded = viewStates.computeIfAbsent(game.viewCell(viewer),
+                    cell -> new Buffer[Encoding.values().length]);
+            if (encoded[encoding] == null)
+                encoded[encoding] = subscriber.encoding.state(filterState());
+            return encoded[encoding];
+        }
+
+        /**
+         * The game with the {@link #visible} players only.
+         */
+        private Game filterState() {
+            Game.Builder view = Game.builder().gameId(game.getGameId()).roundId(game.getRoundId())
+                    .numPlayers(game.getNumPlayers());
+            for (int index = visible.nextSetBit(0); index >= 0; index = visible.nextSetBit(index + 1))
+                view.player(game.getPlayer(index));
+            return view.build();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.codepitbull.vertx.eventsourcing.codec;
+
+import io.vertx.core.buffer.Buffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sequential reads from a {@link Buffer}, counterpart of the append-methods of {@link Buffer}.
+ *
+ * @author Jochen Mader
+ */
+class BufferReader {
+    private final Buffer buffer;
+    private int pos;
+
+    BufferReader(Buffer buffer, int pos) {
+        this.buffer = buffer;
+        this.pos = pos;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    byte readByte() {
+        return buffer.getByte(pos++);
+    }
+
+    int readUnsignedShort() {
+        int value = buffer.getShort(pos) & 0xFFFF;
+        pos += 2;
+        return value;
+    }
+
+    int readInt() {
+        int value = buffer.getInt(pos);
+        pos += 4;
+        return value;
+    }
+
+    String readString() {
+        int length = readUnsignedShort();
+        String value = new String(buffer.getBytes(pos, pos + length), UTF_8);
+        pos += length;
+        return value;
+    }
+}
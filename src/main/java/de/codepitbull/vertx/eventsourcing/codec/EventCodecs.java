@@ -0,0 +1,187 @@
+package de.codepitbull.vertx.eventsourcing.codec;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * The fixed-layout binary encoding of {@link RoundUpdate}s, {@link Game}-snapshots and moves, used on the eventbus, in
+ * the event stores and on the binary websockets.
+ * <pre>
+ * update:   [type=1][int round_id][ushort #moves]([ushort player_id][byte move])*[ushort #new players](player)*
+ * snapshot: [type=2|3 (delta)][string game_id][int round_id][ushort nr_players][ushort #players](player)*
+ * move:     [type=4][ushort player_id][byte move]
+ * player:   [ushort player_id][int x][int y][string name]
+ * string:   [ushort length][utf-8 bytes]
+ * </pre>
+ *
+ * @author Jochen Mader
+ */
+public class EventCodecs {
+
+    public static final byte TYPE_ROUND_UPDATE = 1;
+    public static final byte TYPE_SNAPSHOT = 2;
+    public static final byte TYPE_DELTA_SNAPSHOT = 3;
+    public static final byte TYPE_MOVE = 4;
+
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+
+    private EventCodecs() {}
+
+    /**
+     * Registers the codecs as default codecs of the eventbus. Safe to be called by every verticle.
+     */
+    public static void register(Vertx vertx) {
+        EventBus eventBus = ((io.vertx.core.Vertx) vertx.getDelegate()).eventBus();
+        try {
+            eventBus.registerDefaultCodec(RoundUpdate.class, new RoundUpdateCodec());
+            eventBus.registerDefaultCodec(Game.class, new GameCodec());
+        } catch (IllegalStateException e) {
+            //already registered by another verticle
+        }
+    }
+
+    public static Buffer encode(RoundUpdate update) {
+        Buffer buffer = Buffer.buffer(11 + update.moveCount() * 3 + update.getNewPlayers().size() * 24);
+        encode(update, buffer);
+        return buffer;
+    }
+
+    public static void encode(RoundUpdate update, Buffer buffer) {
+        buffer.appendByte(TYPE_ROUND_UPDATE)
+                .appendInt(update.getRoundId());
+        appendUnsignedShort(buffer, update.moveCount());
+        for (int i = 0; i < update.moveCount(); i++) {
+            appendUnsignedShort(buffer, update.playerId(i));
+            buffer.appendByte((byte) update.move(i).ordinal());
+        }
+        appendPlayers(buffer, update.getNewPlayers());
+    }
+
+    /**
+     * @return the round of an encoded update, without decoding the rest of it
+     */
+    public static int roundIdOf(Buffer update) {
+        if (update.getByte(0) != TYPE_ROUND_UPDATE)
+            throw new IllegalArgumentException("Expected type " + TYPE_ROUND_UPDATE + " but got " + update.getByte(0));
+        return update.getInt(1);
+    }
+
+    public static RoundUpdate decodeRoundUpdate(Buffer buffer) {
+        return decodeRoundUpdate(new BufferReader(buffer, 0));
+    }
+
+    static RoundUpdate decodeRoundUpdate(BufferReader reader) {
+        checkType(reader, TYPE_ROUND_UPDATE);
+        RoundUpdate.Builder builder = RoundUpdate.builder()
+                .roundId(reader.readInt());
+        for (int moves = reader.readUnsignedShort(); moves > 0; moves--)
+            builder.move(reader.readUnsignedShort(), Move.fromOrdinal(reader.readByte()));
+        for (int players = reader.readUnsignedShort(); players > 0; players--)
+            builder.newPlayer(readPlayer(reader));
+        return builder.build();
+    }
+
+    public static Buffer encodeMove(int playerId, Move move) {
+        Buffer buffer = Buffer.buffer(4).appendByte(TYPE_MOVE);
+        appendUnsignedShort(buffer, playerId);
+        return buffer.appendByte((byte) move.ordinal());
+    }
+
+    public static int playerIdOfMove(Buffer move) {
+        checkType(move, TYPE_MOVE);
+        return move.getShort(1) & MAX_UNSIGNED_SHORT;
+    }
+
+    public static Move moveOf(Buffer move) {
+        checkType(move, TYPE_MOVE);
+        return Move.fromOrdinal(move.getByte(3));
+    }
+
+    public static Buffer encode(Game game) {
+        Buffer buffer = Buffer.buffer(16 + game.getGameId().length() + game.currentNumPlayers() * 24);
+        encode(game, buffer);
+        return buffer;
+    }
+
+    public static void encode(Game game, Buffer buffer) {
+        buffer.appendByte(game.isDelta() ? TYPE_DELTA_SNAPSHOT : TYPE_SNAPSHOT);
+        appendString(buffer, game.getGameId());
+        buffer.appendInt(game.getRoundId());
+        appendUnsignedShort(buffer, game.getNumPlayers());
+        appendUnsignedShort(buffer, game.currentNumPlayers());
+        for (int i = 0; i < game.currentNumPlayers(); i++)
+            appendPlayer(buffer, game.playerId(i), game.x(i), game.y(i), game.name(i));
+    }
+
+    public static Game decodeGame(Buffer buffer) {
+        return decodeGame(new BufferReader(buffer, 0));
+    }
+
+    static Game decodeGame(BufferReader reader) {
+        byte type = reader.readByte();
+        if (type != TYPE_SNAPSHOT && type != TYPE_DELTA_SNAPSHOT)
+            throw new IllegalArgumentException("Expected a snapshot but got type " + type);
+        Game.Builder builder = Game.builder()
+                .delta(type == TYPE_DELTA_SNAPSHOT)
+                .gameId(reader.readString())
+                .roundId(reader.readInt())
+                .numPlayers(reader.readUnsignedShort());
+        for (int players = reader.readUnsignedShort(); players > 0; players--)
+            builder.player(readPlayer(reader));
+        return builder.build();
+    }
+
+    private static void appendPlayers(Buffer buffer, List<Player> players) {
+        appendUnsignedShort(buffer, players.size());
+        for (Player player : players)
+            appendPlayer(buffer, player.getPlayerId(), player.getX(), player.getY(), player.getName());
+    }
+
+    private static void appendPlayer(Buffer buffer, int playerId, int x, int y, String name) {
+        appendUnsignedShort(buffer, playerId);
+        buffer.appendInt(x)
+                .appendInt(y);
+        appendString(buffer, name);
+    }
+
+    private static Player readPlayer(BufferReader reader) {
+        return Player.builder()
+                .id(reader.readUnsignedShort())
+                .x(reader.readInt())
+                .y(reader.readInt())
+                .name(reader.readString())
+                .build();
+    }
+
+    private static void appendUnsignedShort(Buffer buffer, int value) {
+        isTrue(value >= 0 && value <= MAX_UNSIGNED_SHORT, "Value %d out of range", value);
+        buffer.appendShort((short) value);
+    }
+
+    private static void appendString(Buffer buffer, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        appendUnsignedShort(buffer, bytes.length);
+        buffer.appendBytes(bytes);
+    }
+
+    private static void checkType(Buffer buffer, byte expected) {
+        if (buffer.getByte(0) != expected)
+            throw new IllegalArgumentException("Expected type " + expected + " but got " + buffer.getByte(0));
+    }
+
+    private static void checkType(BufferReader reader, byte expected) {
+        byte type = reader.readByte();
+        if (type != expected)
+            throw new IllegalArgumentException("Expected type " + expected + " but got " + type);
+    }
+}
@@ -0,0 +1,38 @@
+package de.codepitbull.vertx.eventsourcing.codec;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Eventbus codec for {@link Game}-snapshots. A game keeps changing after it has been sent, local delivery copies it.
+ *
+ * @author Jochen Mader
+ */
+public class GameCodec implements MessageCodec<Game, Game> {
+
+    @Override
+    public void encodeToWire(Buffer buffer, Game game) {
+        EventCodecs.encode(game, buffer);
+    }
+
+    @Override
+    public Game decodeFromWire(int pos, Buffer buffer) {
+        return EventCodecs.decodeGame(new BufferReader(buffer, pos));
+    }
+
+    @Override
+    public Game transform(Game game) {
+        return game.copy();
+    }
+
+    @Override
+    public String name() {
+        return "game";
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,39 @@
+package de.codepitbull.vertx.eventsourcing.codec;
+
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Eventbus codec for {@link RoundUpdate}s. Updates are immutable, local delivery hands over the same instance. Sending
+ * an update to several nodes copies its encoding, the update is only encoded once.
+ *
+ * @author Jochen Mader
+ */
+public class RoundUpdateCodec implements MessageCodec<RoundUpdate, RoundUpdate> {
+
+    @Override
+    public void encodeToWire(Buffer buffer, RoundUpdate update) {
+        buffer.appendBuffer(update.toBuffer());
+    }
+
+    @Override
+    public RoundUpdate decodeFromWire(int pos, Buffer buffer) {
+        return EventCodecs.decodeRoundUpdate(new BufferReader(buffer, pos));
+    }
+
+    @Override
+    public RoundUpdate transform(RoundUpdate update) {
+        return update;
+    }
+
+    @Override
+    public String name() {
+        return "roundupdate";
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -9,12 +9,19 @@ public class Addresses {
     public static final String REPLAY_SNAPSHOTS_BASE = "replay.snapshots.";
     public static final String REPLAY_UPDATES_BASE = "replay.updates.";
     public static final String REPLAY_START_BASE = "replay.start.";
+    public static final String REPLAY_STOP_BASE = "replay.stop.";
+    public static final String REPLAY_RECOVER_BASE = "replay.recover.";
     public static final String BROWSER_SPECTATOR_BASE = "browser.replay.";
     public static final String GAMES_CREATE = "games.create";
     public static final String GAMES_GET_ONE = "games.get";
     public static final String GAMES_DELETE = "games.delete";
     public static final String GAMES_LIST = "games.list";
     public static final String GAME_BASE = "game.";
+    public static final String GAME_INPUT_BASE = "input.game.";
+    public static final String GAME_HOST_BASE = "game.host.";
+    public static final String GAME_HOSTS_REGISTER = "game.hosts.register";
+    public static final String GAME_NODE_BASE = "game.node.";
+    public static final String GAME_NODES_HEARTBEAT = "game.nodes.heartbeat";
     public static final String BROWSER_GAME_BASE = "browser.game.";
 
     private Addresses() {};
@@ -10,9 +10,38 @@ public class Constants {
     public static final String CONFIG_IN_MEM = "in_mem";
     public static final String CONFIG_KAFKA_HOST = "kafka_host";
     public static final String CONFIG_KAFKA_PORT = "kafka_port";
+    public static final String CONFIG_KAFKA_FETCH_SIZE = "kafka_fetch_size";
+    public static final String CONFIG_KAFKA_FETCH_THREADS = "kafka_fetch_threads";
+    public static final String CONFIG_KAFKA_TOPIC = "kafka_topic";
+    public static final String CONFIG_FILE_STORE_DIR = "file_store_dir";
+    public static final String CONFIG_FILE_STORE_SEGMENT_SIZE = "file_store_segment_size";
+    public static final String CONFIG_FILE_STORE_FSYNC = "file_store_fsync";
+    public static final String CONFIG_GROUP_COMMIT_WINDOW = "group_commit_window_ms";
+    public static final String CONFIG_GROUP_COMMIT_MAX_EVENTS = "group_commit_max_events";
+    public static final String CONFIG_REPLAY_BUFFER_SIZE = "replay_buffer_size";
+    public static final String CONFIG_SNAPSHOT_CHECKPOINT_INTERVAL = "snapshot_checkpoint_interval";
+    public static final String CONFIG_SNAPSHOT_KEEP_LAST = "snapshot_keep_last";
+    public static final String CONFIG_SNAPSHOT_KEEP_EVERY_ROUNDS = "snapshot_keep_every_rounds";
+    public static final String CONFIG_SNAPSHOT_MAX_AGE = "snapshot_max_age_ms";
+    public static final String CONFIG_RECOVERY_BATCH_SIZE = "recovery_batch_size";
+    public static final String CONFIG_TICK_PERIOD = "tick_period_ms";
+    public static final String CONFIG_MAP = "map";
+    public static final String CONFIG_INPUT_RATE = "input_rate_per_second";
+    public static final String CONFIG_INPUT_BURST = "input_burst";
+    public static final String CONFIG_GAME_HOSTS = "game_hosts";
+    public static final String CONFIG_NODE_HEARTBEAT_INTERVAL = "node_heartbeat_interval_ms";
+    public static final String CONFIG_NODE_TIMEOUT = "node_timeout_ms";
+    public static final String CONFIG_BROWSER_WRITE_QUEUE_SIZE = "browser_write_queue_size";
+    public static final String CONFIG_DEV_MODE = "dev_mode";
+    public static final String CONFIG_MAX_PAGES = "max_pages";
+    public static final String CONFIG_STATIC_MAX_AGE = "static_max_age_seconds";
     public static final String GAME_ID = "game_id";
     public static final String NR_PLAYERS = "nr_players";
     public static final String REPLAY_INDEX = "index";
+    public static final String REPLAY_ROUND = "round";
+    public static final String REPLAY_TIME = "time";
+    public static final String REPLAY_SPEED = "speed";
+    public static final String REPLAY_BINARY = "binary";
     public static final String SPECTATOR_ID = "id";
     public static final String PLAYER_NAME = "name";
     public static final String PLAYER = "player";
@@ -24,9 +53,18 @@ public class Constants {
     public static final String ACTION_SNAPSHOT = "snp";
     public static final String ACTION_REG = "reg";
     public static final String ACTION_NEW_PLAYER = "newp";
+    public static final String ACTION_START_GAME = "start_game";
+    public static final String ACTION_STOP_GAME = "stop_game";
+    public static final String ACTION_RELEASE_GAME = "release_game";
+    public static final String ACTION_ADOPT_GAME = "adopt_game";
+    public static final String HOST_ID = "host_id";
+    public static final String NODE_ID = "node_id";
+    public static final String NODE_LOAD = "load";
+    public static final String GAMES = "games";
     public static final String ROUND_ID = "round_id";
     public static final String MSG_TYPE = "type";
     public static final String SNAPSHOT = "snapshot";
+    public static final String DELTA_SNAPSHOT = "delta_snapshot";
     public static final String POS_X = "x";
     public static final String POS_Y = "y";
     public static final String MOVE_LEFT = "l";
@@ -10,7 +10,12 @@ public enum FailureCodesEnum {
     FAILURE_GAME_DOES_NOT_EXIST(3),
     FAILURE_GAME_FULL(4),
     FAILURE_MISSING_PARAMETER(5),
-    FAILURE_WRIIING_UPDATE(5);
+    FAILURE_WRIIING_UPDATE(5),
+    FAILURE_RECOVERING_GAME(6),
+    FAILURE_NO_SPAWN_TILE(7),
+    FAILURE_UNKNOWN_MOVE(8),
+    FAILURE_UNKNOWN_SPECTATOR(9),
+    FAILURE_NO_SNAPSHOT(10);
 
     private final int intValue;
 
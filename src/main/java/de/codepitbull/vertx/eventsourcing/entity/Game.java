@@ -5,70 +5,339 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
 import static org.apache.commons.lang3.Validate.notNull;
 
 /**
- * A small mapper to handle JSON-documents representing a Game.
+ * The state of a game. Players are kept as parallel primitive arrays, indexed by their position of joining, so moving
+ * a player is a plain array write. {@link Player} and {@link #toJson()} are only adapters for the edges.
+ * <p>
+ * Changed players are tracked so {@link #snapshot(boolean)} can produce deltas containing only the players changed
+ * since the last full snapshot. A delta is turned back into a full game by applying it to that full snapshot.
+ * <p>
+ * The players around a position are found through a {@link SpatialHash}, built on the first such query and kept up
+ * to date from then on, so games never asked don't pay for it.
  *
  * @author Jochen Mader
  */
 public class Game {
 
-    private String gameId;
-    private Integer roundId;
-    private Integer numPlayers;
-    private List<Player> players;
+    /**
+     * Edge of the cells players are grouped by. A player sees the cell it stands in and the eight around it, so at least
+     * this many tiles in every direction, more than half of the 40x30 tiles shown by the browser.
+     */
+    public static final int VIEW_CELL_SIZE = 24;
 
-    private Game(String gameId, Integer roundId, Integer numPlayers, List<Player> players) {
+    private final String gameId;
+    private int roundId;
+    private final int numPlayers;
+    private int playerCount;
+    private final int[] ids;
+    private final int[] xs;
+    private final int[] ys;
+    private final String[] names;
+    private final boolean delta;
+    private final BitSet changedSinceCheckpoint;
+    private boolean changed;
+    private SpatialHash spatialHash;
+
+    private Game(String gameId, int roundId, int numPlayers, int playerCount, int[] ids, int[] xs, int[] ys, String[] names,
+                 boolean delta) {
+        this.delta = delta;
+        this.changedSinceCheckpoint = new BitSet(ids.length);
         this.gameId = gameId;
         this.roundId = roundId;
-        this.players = players;
         this.numPlayers = numPlayers;
+        this.playerCount = playerCount;
+        this.ids = ids;
+        this.xs = xs;
+        this.ys = ys;
+        this.names = names;
     }
 
     public String getGameId() {
         return gameId;
     }
 
-    public Integer getRoundId() {
+    public int getRoundId() {
         return roundId;
     }
 
-    public Integer incrementAndGetRoundId() {
+    public int incrementAndGetRoundId() {
         return ++roundId;
     }
 
-    public Integer getNumPlayers() {
+    public int getNumPlayers() {
         return numPlayers;
     }
 
-    public List<Player> getPlayers() {
-        return players;
+    public int currentNumPlayers() {
+        return playerCount;
+    }
+
+    public int playerId(int index) {
+        return ids[index];
+    }
+
+    public int x(int index) {
+        return xs[index];
+    }
+
+    public int y(int index) {
+        return ys[index];
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return true if one of the players stands on the given tile
+     */
+    public boolean occupied(int x, int y) {
+        for (int i = 0; i < playerCount; i++)
+            if (xs[i] == x && ys[i] == y)
+                return true;
+        return false;
+    }
+
+    /**
+     * @return true if this only contains the players changed since the preceding full snapshot
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * @return true if a player moved or joined since the last call to {@link #snapshot(boolean)}
+     */
+    public boolean hasChanges() {
+        return changed;
+    }
+
+    /**
+     * Applies the given move to the player at the given index.
+     */
+    public void move(int index, Move move) {
+        if (index < 0 || index >= playerCount)
+            throw new IllegalArgumentException("No player with index " + index);
+        xs[index] += move.dx();
+        ys[index] += move.dy();
+        if (spatialHash != null)
+            spatialHash.moved(index, xs[index], ys[index]);
+        changed(index);
+    }
+
+    /**
+     * @return the cell the player at the index stands in, packed into a long, equal for all players seeing the same
+     * players in {@link #playersInView(int, BitSet)}
+     */
+    public long viewCell(int index) {
+        SpatialHash hash = spatialHash();
+        return (long) hash.cellOf(xs[index]) << 32 | hash.cellOf(ys[index]) & 0xffffffffL;
+    }
+
+    /**
+     * Sets the bits of the indices of all players in view of the player at the index, including itself, clearing
+     * all others.
+     */
+    public void playersInView(int index, BitSet into) {
+        SpatialHash hash = spatialHash();
+        into.clear();
+        int cellX = hash.cellOf(xs[index]);
+        int cellY = hash.cellOf(ys[index]);
+        for (int y = cellY - 1; y <= cellY + 1; y++)
+            for (int x = cellX - 1; x <= cellX + 1; x++)
+                hash.collect(x, y, into);
+    }
+
+    private SpatialHash spatialHash() {
+        if (spatialHash == null) {
+            spatialHash = new SpatialHash(ids.length, VIEW_CELL_SIZE);
+            for (int i = 0; i < playerCount; i++)
+                spatialHash.add(i, xs[i], ys[i]);
+        }
+        return spatialHash;
     }
 
     public void addPlayer(Player player) {
-        if(players.size() < numPlayers)
-            players.add(player);
-        else
+        if (playerCount < numPlayers) {
+            set(playerCount, player);
+            if (spatialHash != null)
+                spatialHash.add(playerCount, player.getX(), player.getY());
+            changed(playerCount++);
+        } else
             throw new IllegalArgumentException("Max number of players reached!");
     }
 
-    public Integer currentNumPlayers() {
-        return players.size();
+    public Player getPlayer(int index) {
+        return Player.builder()
+                .id(ids[index])
+                .name(names[index])
+                .x(xs[index])
+                .y(ys[index])
+                .build();
+    }
+
+    /**
+     * @return a copy of the current players, not backed by the game
+     */
+    public List<Player> getPlayers() {
+        List<Player> players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++)
+            players.add(getPlayer(i));
+        return players;
     }
 
     public JsonObject toJson() {
+        JsonArray players = new JsonArray();
+        for (int i = 0; i < playerCount; i++)
+            players.add(new JsonObject()
+                    .put(PLAYER_ID, ids[i])
+                    .put(POS_X, xs[i])
+                    .put(POS_Y, ys[i])
+                    .put(PLAYER_NAME, names[i]));
         return new JsonObject()
-                .put(PLAYERS, players.stream().reduce(new JsonArray(), (arr, player) -> arr.add(player.toJson()), (arr1,arr2) -> arr1.addAll(arr2)))
+                .put(PLAYERS, players)
                 .put(GAME_ID, gameId)
                 .put(ROUND_ID, roundId)
-                .put(MSG_TYPE, Constants.SNAPSHOT)
+                .put(MSG_TYPE, delta ? Constants.DELTA_SNAPSHOT : Constants.SNAPSHOT)
                 .put(NR_PLAYERS, numPlayers);
     }
 
+    /**
+     * Reads a full game from its {@link #toJson()} representation.
+     */
+    public static Game fromJson(JsonObject json) {
+        Builder builder = builder()
+                .gameId(json.getString(GAME_ID))
+                .roundId(json.getInteger(ROUND_ID))
+                .numPlayers(json.getInteger(NR_PLAYERS));
+        for (Object player : json.getJsonArray(PLAYERS, new JsonArray())) {
+            JsonObject playerJson = (JsonObject) player;
+            builder.player(Player.builder()
+                    .id(playerJson.getInteger(PLAYER_ID))
+                    .name(playerJson.getString(PLAYER_NAME))
+                    .x(playerJson.getInteger(POS_X))
+                    .y(playerJson.getInteger(POS_Y))
+                    .build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a deep copy of this game, without change tracking
+     */
+    public Game copy() {
+        return new Game(gameId, roundId, numPlayers, playerCount,
+                Arrays.copyOf(ids, ids.length), Arrays.copyOf(xs, xs.length), Arrays.copyOf(ys, ys.length),
+                Arrays.copyOf(names, names.length), delta);
+    }
+
+    /**
+     * Takes a snapshot and resets {@link #hasChanges()}.
+     *
+     * @param full true for a full snapshot, which also becomes the base of all following deltas
+     * @return a full copy or a delta with the players changed since the last full snapshot
+     */
+    public Game snapshot(boolean full) {
+        changed = false;
+        if (full) {
+            changedSinceCheckpoint.clear();
+            return copy();
+        }
+        int count = changedSinceCheckpoint.cardinality();
+        Game snapshot = new Game(gameId, roundId, numPlayers, count,
+                new int[count], new int[count], new int[count], new String[count], true);
+        int pos = 0;
+        for (int i = changedSinceCheckpoint.nextSetBit(0); i >= 0; i = changedSinceCheckpoint.nextSetBit(i + 1)) {
+            snapshot.ids[pos] = ids[i];
+            snapshot.xs[pos] = xs[i];
+            snapshot.ys[pos] = ys[i];
+            snapshot.names[pos++] = names[i];
+        }
+        return snapshot;
+    }
+
+    /**
+     * Applies a delta taken relative to the full snapshot this game was restored from.
+     */
+    public void apply(Game delta) {
+        if (!delta.isDelta())
+            throw new IllegalArgumentException("Only deltas can be applied");
+        for (int j = 0; j < delta.playerCount; j++) {
+            int index = indexOf(delta.ids[j]);
+            if (index < 0) {
+                if (playerCount == ids.length)
+                    throw new IllegalArgumentException("Max number of players reached!");
+                index = playerCount++;
+                ids[index] = delta.ids[j];
+            }
+            xs[index] = delta.xs[j];
+            ys[index] = delta.ys[j];
+            names[index] = delta.names[j];
+        }
+        roundId = delta.roundId;
+        //deltas are only applied while restoring, rebuilt when needed
+        spatialHash = null;
+    }
+
+    /**
+     * Replays a round on this game, used to rebuild a game from a snapshot and the updates stored after it.
+     * Players already known are not added again since a snapshot may have been taken after they joined but before
+     * the round announcing them ended, they are put to the position given instead. Updates filtered for a single
+     * viewer use this to announce players coming into view.
+     */
+    public void apply(RoundUpdate update) {
+        for (Player player : update.getNewPlayers()) {
+            int index = indexOf(player.getPlayerId());
+            if (index < 0)
+                addPlayer(player);
+            else if (xs[index] != player.getX() || ys[index] != player.getY()) {
+                xs[index] = player.getX();
+                ys[index] = player.getY();
+                if (spatialHash != null)
+                    spatialHash.moved(index, xs[index], ys[index]);
+                changed(index);
+            }
+        }
+        for (int i = 0; i < update.moveCount(); i++) {
+            int index = indexOf(update.playerId(i));
+            if (index >= 0)
+                move(index, update.move(i));
+        }
+        roundId = update.getRoundId();
+    }
+
+    /**
+     * @return the index of the player, -1 if there is no such player
+     */
+    public int indexOf(int playerId) {
+        //players get their join position as id
+        if (playerId < playerCount && ids[playerId] == playerId)
+            return playerId;
+        for (int i = 0; i < playerCount; i++)
+            if (ids[i] == playerId)
+                return i;
+        return -1;
+    }
+
+    private void changed(int index) {
+        changedSinceCheckpoint.set(index);
+        changed = true;
+    }
+
+    private void set(int index, Player player) {
+        ids[index] = player.getPlayerId();
+        xs[index] = player.getX();
+        ys[index] = player.getY();
+        names[index] = player.getName();
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -77,6 +346,7 @@ public class Game {
         private String gameId;
         private Integer roundId = 0;
         private Integer numPlayers;
+        private boolean delta;
         private List<Player> players = new ArrayList<>();
 
         public Builder gameId(String gameId) {
@@ -90,7 +360,7 @@ public class Game {
         }
 
         public Builder player(Player player) {
-            players.add(player);
+            players.add(notNull(player, "Player must not be null"));
             return this;
         }
 
@@ -99,12 +369,21 @@ public class Game {
             return this;
         }
 
+        public Builder delta(boolean delta) {
+            this.delta = delta;
+            return this;
+        }
+
         public Game build() {
             notNull(gameId, "GameId must not be null");
             notNull(roundId, "RoundId must not be null");
-            notNull(players, "Players must not be null");
             notNull(numPlayers, "NumPlayers must not be null");
-            return new Game(gameId, roundId, numPlayers, players);
+            int capacity = delta ? players.size() : Math.max(numPlayers, players.size());
+            Game game = new Game(gameId, roundId, numPlayers, players.size(),
+                    new int[capacity], new int[capacity], new int[capacity], new String[capacity], delta);
+            for (int i = 0; i < players.size(); i++)
+                game.set(i, players.get(i));
+            return game;
         }
     }
 }
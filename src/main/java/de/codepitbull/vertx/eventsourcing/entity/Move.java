@@ -0,0 +1,64 @@
+package de.codepitbull.vertx.eventsourcing.entity;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+
+/**
+ * The moves a player can make. The ordinal is used in the binary encoding, so only ever append new values.
+ *
+ * @author Jochen Mader
+ */
+public enum Move {
+    LEFT(MOVE_LEFT, -1, 0),
+    RIGHT(MOVE_RIGHT, 1, 0),
+    UP(MOVE_UP, 0, -1),
+    DOWN(MOVE_DOWN, 0, 1);
+
+    private static final Move[] VALUES = values();
+
+    private final String code;
+    private final int dx;
+    private final int dy;
+
+    private Move(String code, int dx, int dy) {
+        this.code = code;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * @return the code used in JSON-documents
+     */
+    public String code() {
+        return code;
+    }
+
+    public int dx() {
+        return dx;
+    }
+
+    public int dy() {
+        return dy;
+    }
+
+    public static Move fromCode(String code) {
+        for (Move move : VALUES)
+            if (move.code.equals(code))
+                return move;
+        throw new IllegalArgumentException("Unknown move " + code);
+    }
+
+    public static boolean isCode(String code) {
+        for (Move move : VALUES)
+            if (move.code.equals(code))
+                return true;
+        return false;
+    }
+
+    public static Move fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public static boolean isOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length;
+    }
+}
@@ -6,44 +6,46 @@ import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
 import static org.apache.commons.lang3.Validate.notNull;
 
 /**
- * A small mapper to handle JSON-documents representing a Player.
+ * An immutable view of a single player, used when players join or leave a {@link Game}.
  *
  * @author Jochen Mader
  */
 public class Player {
 
-    private JsonObject player;
+    private final int playerId;
+    private final int x;
+    private final int y;
+    private final String name;
 
-    private Player(JsonObject player) {
-        this.player = player;
+    private Player(int playerId, int x, int y, String name) {
+        this.playerId = playerId;
+        this.x = x;
+        this.y = y;
+        this.name = name;
     }
 
-    public Integer getX() {
-        return player.getInteger(POS_X);
+    public int getX() {
+        return x;
     }
 
-    public void setX(Integer x) {
-        player.put(POS_X, x);
-    }
-
-    public Integer getY() {
-        return player.getInteger(POS_Y);
-    }
-
-    public void setY(Integer y) {
-        player.put(POS_Y, y);
+    public int getY() {
+        return y;
     }
 
     public String getName() {
-        return player.getString(PLAYER_NAME);
+        return name;
     }
 
-    public Integer getPlayerId() {
-        return player.getInteger(PLAYER_ID);
+    public int getPlayerId() {
+        return playerId;
     }
 
     public JsonObject toJson() {
-        return player.copy();
+        return new JsonObject()
+                .put(PLAYER_ID, playerId)
+                .put(POS_X, x)
+                .put(POS_Y, y)
+                .put(PLAYER_NAME, name);
     }
 
     public static Builder builder() {
@@ -81,11 +83,7 @@ public class Player {
             notNull(x, "X must not be null");
             notNull(y, "Y must not be null");
             notNull(id, "ID must not be null");
-            return new Player(new JsonObject()
-                    .put(PLAYER_ID, id)
-                    .put(POS_X, x)
-                    .put(POS_Y, y)
-                    .put(PLAYER_NAME, name));
+            return new Player(id, x, y, name);
         }
     }
 }
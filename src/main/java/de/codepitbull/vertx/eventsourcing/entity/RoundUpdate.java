@@ -0,0 +1,176 @@
+package de.codepitbull.vertx.eventsourcing.entity;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Everything that happened in a single round: the moves of the players and the players that joined.
+ * Instances are immutable so they can be shared between verticles without copying.
+ * <p>
+ * The encodings for the event stores and the browsers are created on first use and kept, so an update is encoded once
+ * no matter how many stores, nodes, sockets and spectators receive it. The returned buffers are shared and must not be
+ * modified.
+ *
+ * @author Jochen Mader
+ */
+public class RoundUpdate {
+
+    private final int roundId;
+    private final int[] playerIds;
+    private final byte[] moves;
+    private final int moveCount;
+    private final List<Player> newPlayers;
+
+    //racy caches, at worst two threads create equal encodings
+    private volatile Buffer binary;
+    private volatile String json;
+    private volatile Buffer jsonBuffer;
+
+    private RoundUpdate(int roundId, int[] playerIds, byte[] moves, int moveCount, List<Player> newPlayers) {
+        this.roundId = roundId;
+        this.playerIds = playerIds;
+        this.moves = moves;
+        this.moveCount = moveCount;
+        this.newPlayers = newPlayers;
+    }
+
+    public int getRoundId() {
+        return roundId;
+    }
+
+    public int moveCount() {
+        return moveCount;
+    }
+
+    public int playerId(int index) {
+        return playerIds[index];
+    }
+
+    public Move move(int index) {
+        return Move.fromOrdinal(moves[index]);
+    }
+
+    public List<Player> getNewPlayers() {
+        return newPlayers;
+    }
+
+    /**
+     * The representation sent to the browsers.
+     */
+    public JsonObject toJson() {
+        JsonArray players = new JsonArray();
+        for (int i = 0; i < moveCount; i++)
+            players.add(new JsonObject()
+                    .put(PLAYER_ID, playerIds[i])
+                    .put(ACTION_MOVE, move(i).code()));
+        JsonArray actions = new JsonArray();
+        newPlayers.forEach(player -> actions.add(new JsonObject()
+                .put(ACTION, ACTION_NEW_PLAYER)
+                .put(PLAYER, player.toJson())));
+        return new JsonObject()
+                .put(PLAYERS, players)
+                .put(ROUND_ID, roundId)
+                .put(ACTIONS, actions);
+    }
+
+    /**
+     * @return the binary encoding written to the event stores and the eventbus
+     */
+    public Buffer toBuffer() {
+        Buffer encoded = binary;
+        if (encoded == null)
+            binary = encoded = EventCodecs.encode(this);
+        return encoded;
+    }
+
+    /**
+     * @return {@link #toJson()} encoded, as sent to spectators over the eventbus bridge
+     */
+    public String toJsonString() {
+        String encoded = json;
+        if (encoded == null)
+            json = encoded = toJson().encode();
+        return encoded;
+    }
+
+    /**
+     * @return {@link #toJson()} encoded, as written to the sockets of browsers
+     */
+    public Buffer toJsonBuffer() {
+        Buffer encoded = jsonBuffer;
+        if (encoded == null)
+            jsonBuffer = encoded = Buffer.buffer(toJsonString());
+        return encoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RoundUpdate)) return false;
+        return toJson().equals(((RoundUpdate) o).toJson());
+    }
+
+    @Override
+    public int hashCode() {
+        return roundId;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Integer roundId;
+        private int[] playerIds = new int[8];
+        private byte[] moves = new byte[8];
+        private int moveCount;
+        private List<Player> newPlayers = new ArrayList<>();
+
+        public Builder roundId(Integer roundId) {
+            this.roundId = roundId;
+            return this;
+        }
+
+        public Builder move(int playerId, Move move) {
+            if (moveCount == moves.length) {
+                playerIds = Arrays.copyOf(playerIds, moveCount * 2);
+                moves = Arrays.copyOf(moves, moveCount * 2);
+            }
+            playerIds[moveCount] = playerId;
+            moves[moveCount++] = (byte) notNull(move, "Move must not be null").ordinal();
+            return this;
+        }
+
+        public Builder newPlayer(Player player) {
+            newPlayers.add(notNull(player, "Player must not be null"));
+            return this;
+        }
+
+        public Builder newPlayers(List<Player> players) {
+            newPlayers.addAll(players);
+            return this;
+        }
+
+        public RoundUpdate build() {
+            notNull(roundId, "RoundId must not be null");
+            return new RoundUpdate(roundId, Arrays.copyOf(playerIds, moveCount), Arrays.copyOf(moves, moveCount), moveCount,
+                    newPlayers.isEmpty() ? Collections.emptyList()
+                            : Collections.unmodifiableList(new ArrayList<>(newPlayers)));
+        }
+    }
+}
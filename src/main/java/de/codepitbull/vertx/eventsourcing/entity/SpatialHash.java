@@ -0,0 +1,89 @@
+package de.codepitbull.vertx.eventsourcing.entity;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Player indices of a {@link Game} bucketed by the square cell of the map they stand in. Cells are hashed into a fixed
+ * table of chains linked through primitive arrays, so neither moving a player nor looking up a cell allocates and
+ * the map doesn't need to be bounded.
+ *
+ * @author Jochen Mader
+ */
+class SpatialHash {
+
+    private static final int NONE = -1;
+
+    private final int cellSize;
+    private final int mask;
+    private final int[] heads;
+    private final int[] next;
+    private final int[] prev;
+    private final int[] cellXs;
+    private final int[] cellYs;
+
+    SpatialHash(int capacity, int cellSize) {
+        this.cellSize = cellSize;
+        int buckets = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+        this.mask = buckets - 1;
+        this.heads = new int[buckets];
+        Arrays.fill(heads, NONE);
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.cellXs = new int[capacity];
+        this.cellYs = new int[capacity];
+    }
+
+    int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    void add(int index, int x, int y) {
+        link(index, cellOf(x), cellOf(y));
+    }
+
+    /**
+     * Has to be called whenever the player at the index changed its position.
+     */
+    void moved(int index, int x, int y) {
+        int cellX = cellOf(x);
+        int cellY = cellOf(y);
+        if (cellX == cellXs[index] && cellY == cellYs[index])
+            return;
+        unlink(index);
+        link(index, cellX, cellY);
+    }
+
+    /**
+     * Sets the bits of all players standing in the given cell.
+     */
+    void collect(int cellX, int cellY, BitSet into) {
+        for (int index = heads[bucket(cellX, cellY)]; index != NONE; index = next[index])
+            if (cellXs[index] == cellX && cellYs[index] == cellY)
+                into.set(index);
+    }
+
+    private void link(int index, int cellX, int cellY) {
+        int bucket = bucket(cellX, cellY);
+        cellXs[index] = cellX;
+        cellYs[index] = cellY;
+        prev[index] = NONE;
+        next[index] = heads[bucket];
+        if (heads[bucket] != NONE)
+            prev[heads[bucket]] = index;
+        heads[bucket] = index;
+    }
+
+    private void unlink(int index) {
+        if (prev[index] != NONE)
+            next[prev[index]] = next[index];
+        else
+            heads[bucket(cellXs[index], cellYs[index])] = next[index];
+        if (next[index] != NONE)
+            prev[next[index]] = prev[index];
+    }
+
+    private int bucket(int cellX, int cellY) {
+        return (cellX * 73856093 ^ cellY * 19349663) & mask;
+    }
+}
@@ -0,0 +1,137 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * The game nodes of a cluster as seen by one of them, built from the heartbeats the other nodes publish.
+ * A node that didn't send a heartbeat within the timeout is considered failed, its games are recovered by the node
+ * owning them on a {@link ConsistentHashRing} of the remaining nodes.
+ *
+ * @author Jochen Mader
+ */
+public class ClusterView {
+
+    private final String localNodeId;
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final ConsistentHashRing ring = new ConsistentHashRing();
+
+    public ClusterView(String localNodeId) {
+        this.localNodeId = notNull(localNodeId, "Local node id must not be null");
+        ring.addNode(localNodeId);
+    }
+
+    /**
+     * Replaces what is known about a remote node with the content of its heartbeat.
+     */
+    public void heartbeat(String nodeId, long load, Map<String, Integer> games, long now) {
+        notNull(nodeId, "Node id must not be null");
+        if (localNodeId.equals(nodeId))
+            return;
+        Node node = nodes.get(nodeId);
+        if (node == null) {
+            node = new Node(nodeId);
+            nodes.put(nodeId, node);
+            ring.addNode(nodeId);
+        }
+        node.lastSeen = now;
+        node.load = load;
+        node.games = new HashMap<>(games);
+    }
+
+    /**
+     * Removes all nodes whose last heartbeat is older than the timeout.
+     * @return games of the removed nodes mapped to their number of players
+     */
+    public Map<String, Integer> expire(long now, long timeout) {
+        Map<String, Integer> orphans = new HashMap<>();
+        Iterator<Node> it = nodes.values().iterator();
+        while (it.hasNext()) {
+            Node node = it.next();
+            if (now - node.lastSeen > timeout) {
+                it.remove();
+                ring.removeNode(node.id);
+                orphans.putAll(node.games);
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * @return the node with the lowest load, ties are broken by the node id so all nodes agree
+     */
+    public String leastLoadedNode(long localLoad) {
+        String best = localNodeId;
+        long bestLoad = localLoad;
+        for (Node node : nodes.values()) {
+            if (node.load < bestLoad || node.load == bestLoad && node.id.compareTo(best) < 0) {
+                best = node.id;
+                bestLoad = node.load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Accounts for a game started on a remote node until its next heartbeat reports it.
+     */
+    public void reserve(String nodeId, String gameId, int nrPlayers) {
+        Node node = nodes.get(nodeId);
+        if (node != null && node.games.put(gameId, nrPlayers) == null)
+            node.load += nrPlayers;
+    }
+
+    public void removeGame(String gameId) {
+        for (Node node : nodes.values()) {
+            Integer nrPlayers = node.games.remove(gameId);
+            if (nrPlayers != null)
+                node.load -= nrPlayers;
+        }
+    }
+
+    /**
+     * @return the remote node running the game or null if no remote node reported it
+     */
+    public String ownerOf(String gameId) {
+        for (Node node : nodes.values())
+            if (node.games.containsKey(gameId))
+                return node.id;
+        return null;
+    }
+
+    /**
+     * @return the games running on remote nodes mapped to their number of players
+     */
+    public Map<String, Integer> games() {
+        Map<String, Integer> games = new HashMap<>();
+        nodes.values().forEach(node -> games.putAll(node.games));
+        return games;
+    }
+
+    /**
+     * @return the node, the local one included, responsible for recovering the game of a failed node
+     */
+    public String recoveryNodeFor(String gameId) {
+        return ring.nodeFor(gameId);
+    }
+
+    public List<String> remoteNodes() {
+        return new ArrayList<>(nodes.keySet());
+    }
+
+    private static class Node {
+        final String id;
+        long lastSeen;
+        long load;
+        Map<String, Integer> games = new HashMap<>();
+
+        Node(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Maps keys to nodes so that adding or removing a node only moves the keys of its neighbours on the ring.
+ * Every node is placed on the ring several times to spread the keys evenly.
+ *
+ * @author Jochen Mader
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes = new ArrayList<>();
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        isTrue(virtualNodes > 0, "Number of virtual nodes must be positive but was %d", virtualNodes);
+        this.virtualNodes = virtualNodes;
+    }
+
+    public void addNode(String node) {
+        notNull(node, "Node must not be null");
+        if (nodes.contains(node))
+            return;
+        nodes.add(node);
+        for (int i = 0; i < virtualNodes; i++)
+            ring.put(hash(node + "#" + i), node);
+    }
+
+    public void removeNode(String node) {
+        if (nodes.remove(node))
+            ring.values().removeIf(node::equals);
+    }
+
+    /**
+     * @return the node owning the key or null if the ring is empty
+     */
+    public String nodeFor(String key) {
+        if (ring.isEmpty())
+            return null;
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public List<String> nodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 64 bit FNV-1a followed by the finalizer of MurmurHash3, String.hashCode is too clustered for similar node names.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
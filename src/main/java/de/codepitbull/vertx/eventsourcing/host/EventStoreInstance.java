@@ -0,0 +1,377 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.constants.Addresses;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.metrics.Histogram;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import de.codepitbull.vertx.eventsourcing.replay.ReplayScheduler;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import de.codepitbull.vertx.eventsourcing.store.FileEventStore;
+import de.codepitbull.vertx.eventsourcing.store.GroupCommitEventStore;
+import de.codepitbull.vertx.eventsourcing.store.InMemoryEventStore;
+import de.codepitbull.vertx.eventsourcing.store.KafkaEventStore;
+import de.codepitbull.vertx.eventsourcing.store.KafkaFetchPool;
+import de.codepitbull.vertx.eventsourcing.store.KafkaPrefetchReader;
+import de.codepitbull.vertx.eventsourcing.store.SnapshotRetention;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.eventbus.Message;
+import io.vertx.rxjava.core.eventbus.MessageConsumer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.*;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+import static de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum.*;
+import static org.apache.commons.lang3.Validate.notNull;
+import static rx.observables.JoinObservable.from;
+import static rx.observables.JoinObservable.when;
+
+/**
+ * Storage and replay of the events of a single game, running on the context it has been started on.
+ * <p>
+ * Like {@link GameInstance} it can be detached and started again on another context, the {@link EventStore} is kept.
+ * Running replays are stopped when detaching, spectators have to start them again.
+ *
+ * @author Jochen Mader
+ */
+public class EventStoreInstance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventStoreInstance.class);
+
+    private final Vertx vertx;
+    private final JsonObject config;
+    private final String gameId;
+
+    private Integer spectatorCounter = 0;
+
+    private Map<Integer, SpectatorData> spectatorIdToData= new HashMap<>();
+
+    private EventStore eventStore;
+
+    private ReplayScheduler replayScheduler;
+
+    private SnapshotRetention retention;
+
+    private MessageConsumer<?>[] consumers;
+
+    private int writesInFlight;
+
+    private Handler<Void> drainedHandler;
+
+    private Histogram appendDuration;
+
+    private Histogram snapshotDuration;
+
+    private Histogram snapshotSize;
+
+    public EventStoreInstance(Vertx vertx, JsonObject config) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.config = notNull(config, "config must be set");
+        this.gameId = notNull(config.getString(GAME_ID));
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Starts handling the events of the game on the current context, the first start opens the {@link EventStore}.
+     */
+    public void start(Future<Void> startFuture) throws IOException {
+        EventCodecs.register(vertx);
+
+        if (eventStore != null) {
+            attach(startFuture);
+            return;
+        }
+        createEventStore(created -> {
+            if (created.failed()) {
+                LOG.info("Failed opening event store of game " + gameId, created.cause());
+                startFuture.fail(created.cause());
+                return;
+            }
+            eventStore = created.result();
+            retention = SnapshotRetention.builder()
+                    .keepLast(config.getInteger(CONFIG_SNAPSHOT_KEEP_LAST, 0))
+                    .keepEveryRounds(config.getInteger(CONFIG_SNAPSHOT_KEEP_EVERY_ROUNDS, 0))
+                    .maxAgeMs(config.getLong(CONFIG_SNAPSHOT_MAX_AGE, 0l))
+                    .build();
+            MetricsRegistry metrics = MetricsRegistry.get(vertx);
+            appendDuration = metrics.histogram(MetricsRegistry.STORE_APPEND_DURATION, "Time until an update has been stored",
+                    MetricsRegistry.NANOS, "store", eventStore.getClass().getSimpleName());
+            snapshotDuration = metrics.histogram(MetricsRegistry.SNAPSHOT_DURATION, "Time until a snapshot has been stored",
+                    MetricsRegistry.NANOS);
+            snapshotSize = metrics.histogram(MetricsRegistry.SNAPSHOT_SIZE, "Bytes written for the stored snapshots", 1);
+            attach(startFuture);
+        });
+    }
+
+    /**
+     * Registers the consumers of the instance on the current context.
+     */
+    private void attach(Future<Void> startFuture) {
+        replayScheduler = new ReplayScheduler(vertx, eventStore, config.getInteger(CONFIG_REPLAY_BUFFER_SIZE, ReplayScheduler.DEFAULT_BUFFER_SIZE));
+
+        MessageConsumer<RoundUpdate> updatesConsumer = vertx.eventBus().<RoundUpdate>consumer(REPLAY_UPDATES_BASE + gameId);
+        updatesConsumer.handler(this::handleUpdates);
+
+        MessageConsumer<Game> snapshotsConsumer = vertx.eventBus().<Game>consumer(REPLAY_SNAPSHOTS_BASE + gameId);
+        snapshotsConsumer.handler(this::handleSnapshots);
+
+        MessageConsumer<JsonObject> registerConsumer = vertx.eventBus().<JsonObject>consumer(REPLAY_REGISTER_BASE + gameId);
+        registerConsumer.handler(this::handleConsumerRegistration);
+
+        MessageConsumer<JsonObject> startConsumer = vertx.eventBus().<JsonObject>consumer(REPLAY_START_BASE + gameId);
+        startConsumer.handler(this::handleReplay);
+
+        MessageConsumer<Integer> stopConsumer = vertx.eventBus().<Integer>consumer(REPLAY_STOP_BASE + gameId);
+        stopConsumer.handler(this::handleReplayStop);
+
+        MessageConsumer<JsonObject> recoverConsumer = vertx.eventBus().<JsonObject>consumer(REPLAY_RECOVER_BASE + gameId);
+        recoverConsumer.handler(this::handleRecovery);
+
+        consumers = new MessageConsumer<?>[]{updatesConsumer, snapshotsConsumer, registerConsumer, startConsumer, stopConsumer, recoverConsumer};
+
+        when(
+                from(registerConsumer.completionHandlerObservable())
+                        .and(snapshotsConsumer.completionHandlerObservable())
+                        .and(updatesConsumer.completionHandlerObservable())
+                        .and(startConsumer.completionHandlerObservable())
+                        .and(stopConsumer.completionHandlerObservable())
+                        .and(recoverConsumer.completionHandlerObservable())
+                        .then((a, b, c, d, e, f) -> null)
+        ).toObservable().subscribe(
+                success -> {
+                    LOG.info("Started event store of game " + gameId);
+                    startFuture.complete();
+                },
+                failure -> {
+                    LOG.info("Failed starting event store of game " + gameId, failure);
+                    startFuture.fail(failure);
+                }
+        );
+    }
+
+    /**
+     * Kafka stores are opened asynchronously, they may have to wait for the metadata of their topic.
+     */
+    private void createEventStore(Handler<AsyncResult<EventStore>> resultHandler) throws IOException {
+        if(config.containsKey(CONFIG_FILE_STORE_DIR)) {
+            EventStore store = new FileEventStore(vertx, gameId, config.getString(CONFIG_FILE_STORE_DIR),
+                    config.getInteger(CONFIG_FILE_STORE_SEGMENT_SIZE), config.getBoolean(CONFIG_FILE_STORE_FSYNC, false));
+            LOG.info("Using "+FileEventStore.class.getName());
+            resultHandler.handle(Future.succeededFuture(withGroupCommit(store)));
+        }
+        else if(config.getBoolean(CONFIG_IN_MEM, true)) {
+            EventStore store = new InMemoryEventStore();
+            LOG.info("Using "+InMemoryEventStore.class.getName());
+            resultHandler.handle(Future.succeededFuture(withGroupCommit(store)));
+        }
+        else {
+            KafkaEventStore.open(vertx, gameId, config.getString(CONFIG_KAFKA_HOST), config.getInteger(CONFIG_KAFKA_PORT),
+                    config.getInteger(CONFIG_KAFKA_FETCH_SIZE, KafkaPrefetchReader.DEFAULT_FETCH_SIZE),
+                    config.getInteger(CONFIG_KAFKA_FETCH_THREADS, KafkaFetchPool.DEFAULT_THREADS),
+                    config.getString(CONFIG_KAFKA_TOPIC), opened -> {
+                        if (opened.failed()) {
+                            resultHandler.handle(Future.failedFuture(opened.cause()));
+                            return;
+                        }
+                        LOG.info("Using "+KafkaEventStore.class.getName());
+                        resultHandler.handle(Future.succeededFuture(withGroupCommit(opened.result())));
+                    });
+        }
+    }
+
+    private EventStore withGroupCommit(EventStore store) {
+        if(config.getLong(CONFIG_GROUP_COMMIT_WINDOW, 0l) > 0) {
+            store = new GroupCommitEventStore(vertx, store, config.getLong(CONFIG_GROUP_COMMIT_WINDOW),
+                    config.getInteger(CONFIG_GROUP_COMMIT_MAX_EVENTS, 64));
+            LOG.info("Using group commit with a window of "+config.getLong(CONFIG_GROUP_COMMIT_WINDOW)+"ms");
+        }
+        return store;
+    }
+
+    /**
+     * Stops handling events on the current context. The handler is called once all writes that are already under way
+     * completed, from then on the instance may be started on another context.
+     */
+    public void detach(Handler<Void> drained) {
+        if (consumers != null) {
+            for (MessageConsumer<?> consumer : consumers)
+                consumer.unregister();
+            consumers = null;
+        }
+        if (replayScheduler != null) {
+            replayScheduler.stopAll();
+            replayScheduler = null;
+        }
+        if (writesInFlight == 0)
+            drained.handle(null);
+        else
+            drainedHandler = drained;
+    }
+
+    /**
+     * Detaches and closes the {@link EventStore}.
+     */
+    public void close() {
+        detach(v -> {
+            if (eventStore != null)
+                eventStore.close();
+        });
+    }
+
+    private void writeStarted() {
+        writesInFlight++;
+    }
+
+    private void writeCompleted() {
+        if (--writesInFlight == 0 && drainedHandler != null) {
+            Handler<Void> handler = drainedHandler;
+            drainedHandler = null;
+            handler.handle(null);
+        }
+    }
+
+    /**
+     * Rebuilds the game from the newest snapshot and the updates stored after it, has to be called after
+     * {@link #start(Future)}. The handler gets null if nothing has been stored for the game yet.
+     */
+    public void recover(int numPlayers, Handler<AsyncResult<Game>> resultHandler) {
+        GameRecovery.recover(eventStore, gameId, numPlayers,
+                config.getInteger(CONFIG_RECOVERY_BATCH_SIZE, GameRecovery.DEFAULT_BATCH_SIZE), resultHandler);
+    }
+
+    private void handleRecovery(Message<JsonObject> msg) {
+        recover(msg.body().getInteger(NR_PLAYERS), result -> {
+            if (result.failed()) {
+                msg.fail(FAILURE_RECOVERING_GAME.intValue(), "Failed recovering game " + gameId);
+                LOG.error("Failed recovering game " + gameId, result.cause());
+            } else if (result.result() == null)
+                msg.fail(FAILURE_GAME_DOES_NOT_EXIST.intValue(), "Nothing stored for game " + gameId);
+            else
+                msg.reply(result.result());
+        });
+    }
+
+    private void handleSnapshots(Message<Game> msg) {
+        writeStarted();
+        long start = System.nanoTime();
+        eventStore.storeSnapshot(msg.body(), result -> {
+            snapshotDuration.record(System.nanoTime() - start);
+            if (result.succeeded()) {
+                //stores keeping the snapshots as objects don't write anything
+                if (result.result() > 0)
+                    snapshotSize.record(result.result());
+                msg.reply(true);
+                if (retention.isEnabled())
+                    eventStore.applyRetention(retention);
+            } else {
+                msg.fail(FAILURE_WRIIING_UPDATE.intValue(), "Failed writing Update to Event Store");
+                LOG.error("Failed writing Update to Event Store", result.cause());
+            }
+            writeCompleted();
+        });
+    }
+
+    private void handleConsumerRegistration(Message<JsonObject> msg) {
+        JsonObject body = msg.body();
+        String seekBy = body.containsKey(REPLAY_INDEX) ? REPLAY_INDEX : body.containsKey(REPLAY_ROUND) ? REPLAY_ROUND :
+                body.containsKey(REPLAY_TIME) ? REPLAY_TIME : null;
+        if(seekBy != null) {
+            spectatorIdToData.put(++spectatorCounter, new SpectatorData(seekBy, body.getLong(seekBy),
+                    body.getInteger(REPLAY_SPEED, ReplayScheduler.SPEED_REAL_TIME)));
+            msg.reply(spectatorCounter);
+        }
+        else msg.fail(FAILURE_MISSING_PARAMETER.intValue(), "Missing one of "+ REPLAY_INDEX+", "+REPLAY_ROUND+", "+REPLAY_TIME);
+    }
+
+    private void handleUpdates(Message<RoundUpdate> msg) {
+        writeStarted();
+        long start = System.nanoTime();
+        eventStore.storeEvent(msg.body(), result -> {
+            appendDuration.record(System.nanoTime() - start);
+            if (result.succeeded())
+                msg.reply(true);
+            else {
+                msg.fail(FAILURE_WRIIING_UPDATE.intValue(), "Failed writing Update to Event Store");
+                LOG.error("Failed writing Update to Event Store", result.cause());
+            }
+            writeCompleted();
+        });
+    }
+
+    /**
+     * Starts the replay of a registered spectator, the request fails if the spectator is unknown or there is no
+     * snapshot to start from.
+     */
+    private void handleReplay(Message<JsonObject> msg) {
+        Integer spectatorId = msg.body().getInteger(SPECTATOR_ID);
+        boolean binary = msg.body().getBoolean(REPLAY_BINARY, false);
+        SpectatorData data = spectatorIdToData.get(spectatorId);
+        if (data == null) {
+            msg.fail(FAILURE_UNKNOWN_SPECTATOR.intValue(), "No spectator "+spectatorId+" registered for game "+gameId);
+            return;
+        }
+        LOG.info("Starting to stream game "+gameId+" for spectator "+spectatorId);
+        ReplayScheduler scheduler = replayScheduler;
+        scheduler.stop(spectatorId);
+        Handler<AsyncResult<Game>> startReplay = result -> {
+            if (result.succeeded()) {
+                Game startSnapshot = result.result();
+                String address = Addresses.BROWSER_SPECTATOR_BASE + gameId + "." + spectatorId;
+                //binary spectators get the objects, encoded by the websocket using the encoding cached by the update
+                vertx.eventBus().send(address, binary ? startSnapshot : startSnapshot.toJson().encode());
+                //the scheduler starts after the given offset
+                long startOffset = eventStore.offsetAfterRound(startSnapshot.getRoundId()) - 1;
+                scheduler.start(spectatorId, startOffset, data.speed,
+                        event -> vertx.eventBus().send(address, binary ? event : event.toJsonString()));
+                msg.reply(true);
+            } else {
+                LOG.error("Unable to load snapshot", result.cause());
+                msg.fail(FAILURE_NO_SNAPSHOT.intValue(), "No snapshot to replay game "+gameId+" from");
+            }
+        };
+        switch (data.seekBy) {
+            case REPLAY_ROUND:
+                eventStore.loadSnapshotAtRound((int) data.seekValue, startReplay);
+                break;
+            case REPLAY_TIME:
+                eventStore.loadSnapshotAtTime(data.seekValue, startReplay);
+                break;
+            default:
+                eventStore.loadSnapshot((int) data.seekValue, startReplay);
+        }
+    }
+
+    /**
+     * Stops the replay of a spectator that went away, it may be started again with the same spectator id.
+     */
+    private void handleReplayStop(Message<Integer> msg) {
+        LOG.info("Stopping to stream game "+gameId+" for spectator "+msg.body());
+        replayScheduler.stop(msg.body());
+    }
+
+    private static class SpectatorData {
+        String seekBy;
+        long seekValue;
+        Integer speed;
+
+        public SpectatorData(String seekBy, long seekValue, Integer speed) {
+            this.seekBy = seekBy;
+            this.seekValue = seekValue;
+            this.speed = speed;
+        }
+
+    }
+}
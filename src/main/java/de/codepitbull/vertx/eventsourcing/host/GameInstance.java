@@ -0,0 +1,338 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.loop.InputQueue;
+import de.codepitbull.vertx.eventsourcing.loop.TickScheduler;
+import de.codepitbull.vertx.eventsourcing.loop.TokenBucket;
+import de.codepitbull.vertx.eventsourcing.maps.CollisionGrid;
+import de.codepitbull.vertx.eventsourcing.metrics.Gauge;
+import de.codepitbull.vertx.eventsourcing.metrics.Histogram;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.eventbus.Message;
+import io.vertx.rxjava.core.eventbus.MessageConsumer;
+import rx.observables.ConnectableObservable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.*;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+import static de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum.FAILURE_GAME_FULL;
+import static de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum.FAILURE_NO_SPAWN_TILE;
+import static de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum.FAILURE_UNKNOWN_MOVE;
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * The whole game logic of a single game, running on the context it has been started on.
+ * <p>
+ * An instance can be detached from its context and started again on another one, the game continues where it left
+ * off. Moves arriving while the game is detached are lost.
+ *
+ * @author Jochen Mader
+ */
+public class GameInstance {
+    private static final Logger LOG = LoggerFactory.getLogger(GameInstance.class);
+
+    public static final int DEFAULT_SNAPSHOT_CHECKPOINT_INTERVAL = 10;
+    public static final long SNAPSHOT_INTERVAL_MS = 2000;
+    /**
+     * The room players start in on the default map.
+     */
+    public static final int SPAWN_X = 3;
+    public static final int SPAWN_Y = 5;
+
+    private final Vertx vertx;
+    private final JsonObject config;
+    private final String gameId;
+    private final int checkpointInterval;
+
+    private Game game;
+
+    private List<Player> newPlayers = new ArrayList<>();
+
+    private final InputQueue inputs;
+
+    private final TokenBucket[] inputLimiters;
+
+    private final int inputRate;
+
+    private final int inputBurst;
+
+    private final InputQueue.MoveConsumer applyMove = this::applyMove;
+
+    private final CollisionGrid collisions;
+
+    private RoundUpdate.Builder round;
+
+    private int snapshotsSinceCheckpoint;
+
+    private boolean started;
+
+    private MessageConsumer<JsonObject> gameConsumer;
+
+    private MessageConsumer<Buffer> inputConsumer;
+
+    private TickScheduler.Registration tickRegistration;
+
+    private long snapshotTimerId = -1;
+
+    private final Histogram roundDuration;
+
+    private final Gauge activeGames;
+
+    private final Gauge activePlayers;
+
+    public GameInstance(Vertx vertx, JsonObject config) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.config = notNull(config, "config must be set");
+        this.gameId = notNull(config.getString(GAME_ID));
+        this.checkpointInterval = config.getInteger(CONFIG_SNAPSHOT_CHECKPOINT_INTERVAL, DEFAULT_SNAPSHOT_CHECKPOINT_INTERVAL);
+        this.inputs = new InputQueue(notNull(config.getInteger(NR_PLAYERS)));
+        this.inputLimiters = new TokenBucket[inputs.capacity()];
+        this.inputRate = config.getInteger(CONFIG_INPUT_RATE, TokenBucket.DEFAULT_RATE_PER_SECOND);
+        this.inputBurst = config.getInteger(CONFIG_INPUT_BURST, TokenBucket.DEFAULT_BURST);
+        this.collisions = CollisionGrid.forMap(vertx, config.getString(CONFIG_MAP, CollisionGrid.DEFAULT_MAP));
+        MetricsRegistry metrics = MetricsRegistry.get(vertx);
+        this.roundDuration = metrics.histogram(MetricsRegistry.ROUND_DURATION, "Time spent processing a round", MetricsRegistry.NANOS);
+        this.activeGames = metrics.gauge(MetricsRegistry.ACTIVE_GAMES, "Games running on this node");
+        this.activePlayers = metrics.gauge(MetricsRegistry.ACTIVE_PLAYERS, "Players of the games running on this node");
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Continues a game rebuilt from its event store, has to be called before {@link #start(Future)}.
+     */
+    public void restore(Game restored) {
+        isTrue(!started, "Game %s has already been started", gameId);
+        game = notNull(restored, "Game must not be null");
+    }
+
+    /**
+     * Starts handling the game on the current context. The first start creates the game unless it has been restored
+     * and publishes a full snapshot, so a later recovery only has to replay the updates from here on.
+     */
+    public void start(Future<Void> startFuture) {
+        EventCodecs.register(vertx);
+
+        boolean firstStart = !started;
+        started = true;
+        if (game == null) {
+            game = Game.builder()
+                    .gameId(gameId)
+                    .numPlayers(notNull(config.getInteger(NR_PLAYERS)))
+                    .roundId(0)
+                    .build();
+        }
+
+        gameConsumer = vertx.eventBus().<JsonObject>consumer(GAME_BASE + gameId);
+
+        ConnectableObservable<Message<JsonObject>> gameConsumerObservable = gameConsumer.toObservable().publish();
+
+        gameConsumerObservable.filter(msg -> ACTION_REG.equals(msg.body().getString(ACTION)))
+                .forEach(this::registerPlayer);
+
+        gameConsumerObservable.filter(msg -> ACTION_MOVE.equals(msg.body().getString(ACTION)))
+                .forEach(this::queueMove);
+
+        gameConsumerObservable.filter(msg -> ACTION_SNAPSHOT.equals(msg.body().getString(ACTION)))
+                .forEach(msg -> msg.reply(game.toJson()));
+
+        gameConsumerObservable.connect();
+
+        activeGames.increment();
+        activePlayers.add(game.currentNumPlayers());
+
+        //moves of the binary websockets, already validated and encoded by the http verticle
+        inputConsumer = vertx.eventBus().<Buffer>consumer(GAME_INPUT_BASE + gameId, msg -> {
+            int index = EventCodecs.playerIdOfMove(msg.body());
+            if (admitMove(index))
+                queueMove(index, EventCodecs.moveOf(msg.body()));
+        });
+
+        //moves are collected until the next tick of the game loop shared with the other games on this event loop
+        tickRegistration = TickScheduler.forCurrentEventLoop(vertx, config.getLong(CONFIG_TICK_PERIOD, TickScheduler.DEFAULT_PERIOD_MS))
+                .register(this::processRound);
+
+        //send initial worldstate, deltas are relative to a checkpoint taken by this instance
+        if (firstStart) {
+            snapshotsSinceCheckpoint = 0;
+            vertx.eventBus().publish(REPLAY_SNAPSHOTS_BASE + gameId, game.snapshot(true));
+        }
+
+        //send periodic worldstate snapshots, deltas in between full checkpoints and nothing while the game is idle
+        snapshotTimerId = vertx.setPeriodic(SNAPSHOT_INTERVAL_MS, time -> {
+            if (!game.hasChanges())
+                return;
+            boolean full = ++snapshotsSinceCheckpoint >= checkpointInterval;
+            if (full)
+                snapshotsSinceCheckpoint = 0;
+            vertx.eventBus().send(REPLAY_SNAPSHOTS_BASE + gameId, game.snapshot(full), new DeliveryOptions().setSendTimeout(30),
+                    result -> {
+                        if (result.failed()) {
+                            LOG.error("Failed storing Snapshot", result.cause());
+                            //following deltas would be based on a checkpoint that doesn't exist
+                            if (full)
+                                snapshotsSinceCheckpoint = checkpointInterval;
+                        }
+                    });
+        });
+
+        gameConsumer.completionHandlerObservable().subscribe(
+                success -> {
+                    LOG.info("Started game " + gameId);
+                    startFuture.complete();
+                },
+                failure -> {
+                    LOG.info("Failed starting game " + gameId, failure);
+                    startFuture.fail(failure);
+                }
+        );
+    }
+
+    /**
+     * Stops handling the game on the current context, the state is kept for a later {@link #start(Future)}.
+     */
+    public void detach() {
+        if (gameConsumer != null) {
+            gameConsumer.unregister();
+            gameConsumer = null;
+            activeGames.decrement();
+            activePlayers.add(-game.currentNumPlayers());
+        }
+        if (inputConsumer != null) {
+            inputConsumer.unregister();
+            inputConsumer = null;
+        }
+        if (tickRegistration != null) {
+            tickRegistration.cancel();
+            tickRegistration = null;
+        }
+        if (snapshotTimerId != -1) {
+            vertx.cancelTimer(snapshotTimerId);
+            snapshotTimerId = -1;
+        }
+    }
+
+    /**
+     * Called when a move has been received, the move is applied with the next tick. Only the last move of a player
+     * within a tick is applied. Unknown moves are rejected here, an exception would end the subscription of all moves.
+     * @param msg
+     */
+    public void queueMove(Message<JsonObject> msg) {
+        JsonObject body = msg.body();
+        Integer index = body.getInteger(PLAYER_ID);
+        if (index == null) {
+            LOG.debug("Ignoring move without player");
+            return;
+        }
+        String code = body.getString(ACTION_MOVE);
+        if (!Move.isCode(code)) {
+            LOG.debug("Ignoring unknown move " + code + " of player " + index);
+            msg.fail(FAILURE_UNKNOWN_MOVE.intValue(), "Unknown move " + code);
+            return;
+        }
+        if (admitMove(index))
+            queueMove(index, Move.fromCode(code));
+    }
+
+    /**
+     * Checks the player and its rate of moves before anything else of the move is looked at.
+     */
+    private boolean admitMove(int index) {
+        if (index < 0 || index >= game.currentNumPlayers()) {
+            LOG.debug("Ignoring move of unknown player " + index);
+            return false;
+        }
+        long now = System.nanoTime();
+        if (inputLimiters[index] == null)
+            inputLimiters[index] = new TokenBucket(inputRate, inputBurst, now);
+        if (!inputLimiters[index].tryAcquire(now)) {
+            LOG.debug("Rejected move of player " + index + ", " + inputLimiters[index].rejected() + " moves rejected so far");
+            return false;
+        }
+        return true;
+    }
+
+    private void queueMove(int index, Move move) {
+        if (!inputs.offer(index, move))
+            LOG.debug("Dropped move of player " + index + ", " + inputs.droppedInputs() + " moves dropped so far");
+    }
+
+    private void processRound(long tick) {
+        long start = System.nanoTime();
+        round = RoundUpdate.builder();
+        inputs.drain(applyMove);
+        RoundUpdate update = round
+                .roundId(game.incrementAndGetRoundId())
+                .newPlayers(newPlayers)
+                .build();
+        round = null;
+        newPlayers.clear();
+        vertx.eventBus().send(REPLAY_UPDATES_BASE + gameId, update,
+                result -> {
+                    //serialised once, for all browsers on this node
+                    if (result.succeeded())
+                        vertx.eventBus().publish(BROWSER_GAME_BASE + gameId, update);
+                    else {
+                        LOG.error("Failed storing " + update, result.cause());
+                    }
+                });
+        roundDuration.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Moves into walls are dropped, they don't become part of the round.
+     */
+    private void applyMove(int index, Move move) {
+        if (collisions.blocked(game.x(index) + move.dx(), game.y(index) + move.dy()))
+            return;
+        game.move(index, move);
+        round.move(game.playerId(index), move);
+    }
+
+    /**
+     * Called when an event for player registration has been received. Players spawn on the first free tile from
+     * {@link #SPAWN_X}/{@link #SPAWN_Y} on, registration fails if the map has none left.
+     * @param msg
+     */
+    public void registerPlayer(Message<JsonObject> msg) {
+        if (game.currentNumPlayers() < game.getNumPlayers()) {
+            int playerId = game.currentNumPlayers();
+            int tile = collisions.nextFreeTile(SPAWN_X, SPAWN_Y, game::occupied);
+            if (tile == -1) {
+                LOG.info("Failed Adding Player because there is no free tile left.");
+                msg.fail(FAILURE_NO_SPAWN_TILE.intValue(), "No free tile left!");
+                return;
+            }
+            Player newPlayer = Player.builder()
+                    .id(playerId)
+                    .name(msg.body().getString(PLAYER_NAME))
+                    .x(tile % collisions.width())
+                    .y(tile / collisions.width())
+                    .build();
+            game.addPlayer(newPlayer);
+            newPlayers.add(newPlayer);
+            activePlayers.increment();
+            LOG.info("Added Player "+newPlayer.getName()+" with id "+playerId);
+            msg.reply(playerId);
+        } else {
+            LOG.info("Failed Adding Player because game is full.");
+            msg.fail(FAILURE_GAME_FULL.intValue(), "Game is full!");
+        }
+    }
+}
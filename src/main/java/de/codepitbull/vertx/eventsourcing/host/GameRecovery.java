@@ -0,0 +1,119 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Rebuilds a game from its {@link EventStore}: the newest snapshot is loaded and all updates stored after it are
+ * replayed on it, so recovery takes at most one snapshot interval of updates. Games without a snapshot are replayed
+ * from the first update.
+ * <p>
+ * Updates are read in batches through {@link EventStore#readEvents(long, int, Handler)}, stores decode them off the
+ * event loop and only applying them to the game happens on it.
+ *
+ * @author Jochen Mader
+ */
+class GameRecovery {
+    private static final Logger LOG = LoggerFactory.getLogger(GameRecovery.class);
+
+    static final int DEFAULT_BATCH_SIZE = 512;
+
+    private final EventStore eventStore;
+    private final String gameId;
+    private final int numPlayers;
+    private final int batchSize;
+    private final Handler<AsyncResult<Game>> resultHandler;
+
+    private Game game;
+    private long position;
+    private long head;
+    private long startedAt;
+    private boolean replaying;
+    private boolean waitingForBatch;
+    private boolean done;
+
+    private GameRecovery(EventStore eventStore, String gameId, int numPlayers, int batchSize, Handler<AsyncResult<Game>> resultHandler) {
+        this.eventStore = eventStore;
+        this.gameId = gameId;
+        this.numPlayers = numPlayers;
+        this.batchSize = batchSize;
+        this.resultHandler = resultHandler;
+    }
+
+    /**
+     * The handler gets null if nothing has been stored for the game yet.
+     */
+    static void recover(EventStore eventStore, String gameId, int numPlayers, int batchSize, Handler<AsyncResult<Game>> resultHandler) {
+        new GameRecovery(eventStore, gameId, numPlayers, batchSize, resultHandler).start();
+    }
+
+    private void start() {
+        startedAt = System.nanoTime();
+        head = eventStore.headOffset();
+        eventStore.loadSnapshotAtRound(Integer.MAX_VALUE, result -> {
+            if (result.succeeded()) {
+                game = result.result();
+            } else if (head < 0) {
+                finish(Future.succeededFuture(null));
+                return;
+            } else {
+                LOG.info("No snapshot of game " + gameId + ", replaying all updates");
+                game = Game.builder().gameId(gameId).numPlayers(numPlayers).build();
+            }
+            position = eventStore.offsetAfterRound(game.getRoundId());
+            replayNext();
+        });
+    }
+
+    /**
+     * Stores may complete reads synchronously, so batches are requested in a loop until one completes asynchronously.
+     */
+    private void replayNext() {
+        replaying = true;
+        while (position <= head && !done) {
+            waitingForBatch = true;
+            eventStore.readEvents(position, batchSize, this::replay);
+            if (waitingForBatch) {
+                replaying = false;
+                return;
+            }
+        }
+        replaying = false;
+        if (!done) {
+            LOG.info("Recovered game " + gameId + " at round " + game.getRoundId() + " in "
+                    + (System.nanoTime() - startedAt) / 1000000 + "ms");
+            finish(Future.succeededFuture(game));
+        }
+    }
+
+    private void replay(AsyncResult<List<RoundUpdate>> result) {
+        waitingForBatch = false;
+        if (result.failed()) {
+            finish(Future.failedFuture(result.cause()));
+            return;
+        }
+        List<RoundUpdate> batch = result.result();
+        if (batch.isEmpty()) {
+            finish(Future.failedFuture("Update " + position + " of game " + gameId + " is missing"));
+            return;
+        }
+        for (RoundUpdate update : batch)
+            game.apply(update);
+        position += batch.size();
+        if (!replaying)
+            replayNext();
+    }
+
+    private void finish(AsyncResult<Game> result) {
+        done = true;
+        resultHandler.handle(result);
+    }
+}
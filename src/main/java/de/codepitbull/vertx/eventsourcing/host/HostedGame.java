@@ -0,0 +1,82 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.io.IOException;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.NR_PLAYERS;
+
+/**
+ * A game together with its event store, both running on the same context so updates never leave the event loop.
+ * Instances are handed from one host to another when games get rebalanced.
+ *
+ * @author Jochen Mader
+ */
+public class HostedGame implements Shareable {
+
+    private final Vertx vertx;
+    private final int numPlayers;
+    private final GameInstance game;
+    private final EventStoreInstance eventStore;
+    private boolean recovered;
+
+    public HostedGame(Vertx vertx, JsonObject config) {
+        this.vertx = vertx;
+        this.numPlayers = config.getInteger(NR_PLAYERS);
+        this.game = new GameInstance(vertx, config);
+        this.eventStore = new EventStoreInstance(vertx, config);
+    }
+
+    public String getGameId() {
+        return game.getGameId();
+    }
+
+    /**
+     * Starts the event store and then the game on the current context. On the first start the game is rebuilt from
+     * the event store, so games of a failed node or a restarted one continue where they left off.
+     */
+    public void start(Future<Void> startFuture) {
+        Future<Void> storeStarted = Future.future();
+        storeStarted.setHandler(result -> {
+            if (result.failed())
+                startFuture.fail(result.cause());
+            else if (recovered)
+                game.start(startFuture);
+            else
+                eventStore.recover(numPlayers, recovery -> {
+                    if (recovery.failed()) {
+                        startFuture.fail(recovery.cause());
+                        return;
+                    }
+                    recovered = true;
+                    if (recovery.result() != null)
+                        game.restore(recovery.result());
+                    game.start(startFuture);
+                });
+        });
+        try {
+            eventStore.start(storeStarted);
+        } catch (IOException e) {
+            storeStarted.fail(e);
+        }
+    }
+
+    /**
+     * Stops the game and its event store on the current context, the handler is called once the game may be started
+     * on another one.
+     */
+    public void detach(Handler<Void> drained) {
+        game.detach();
+        //updates the game sent before detaching are already queued for the event store
+        vertx.runOnContext(v -> eventStore.detach(drained));
+    }
+
+    public void close() {
+        game.detach();
+        vertx.runOnContext(v -> eventStore.close());
+    }
+}
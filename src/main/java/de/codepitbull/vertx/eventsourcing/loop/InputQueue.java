@@ -0,0 +1,92 @@
+package de.codepitbull.vertx.eventsourcing.loop;
+
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+
+import java.util.Arrays;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Moves received between two ticks of a game, at most one per player. A later move of a player replaces the pending
+ * one, so a tick costs O(players) no matter how many moves arrive. The queue is allocated once for a fixed number of
+ * players and emptied on every tick, moves of players beyond that number are dropped and counted.
+ *
+ * @author Jochen Mader
+ */
+public class InputQueue {
+
+    private static final byte NONE = -1;
+
+    private final byte[] pending;
+    private final int[] order;
+    private int size;
+    private long dropped;
+    private long coalesced;
+
+    public InputQueue(int players) {
+        isTrue(players > 0, "Number of players must be positive but was %d", players);
+        pending = new byte[players];
+        Arrays.fill(pending, NONE);
+        order = new int[players];
+    }
+
+    /**
+     * Replaces the pending move of the player, if there is one.
+     * @return false if the player is out of range and the move has been dropped
+     */
+    public boolean offer(int playerIndex, Move move) {
+        notNull(move, "Move must not be null");
+        if (playerIndex < 0 || playerIndex >= pending.length) {
+            dropped++;
+            return false;
+        }
+        if (pending[playerIndex] == NONE)
+            order[size++] = playerIndex;
+        else
+            coalesced++;
+        pending[playerIndex] = (byte) move.ordinal();
+        return true;
+    }
+
+    /**
+     * Hands the pending moves to the consumer, in the order the players first moved since the last drain, and empties
+     * the queue.
+     * @return number of moves drained
+     */
+    public int drain(MoveConsumer consumer) {
+        int drained = size;
+        for (int i = 0; i < drained; i++) {
+            int playerIndex = order[i];
+            Move move = Move.fromOrdinal(pending[playerIndex]);
+            pending[playerIndex] = NONE;
+            consumer.accept(playerIndex, move);
+        }
+        size = 0;
+        return drained;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return pending.length;
+    }
+
+    public long droppedInputs() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of moves replaced by a later move of the same player
+     */
+    public long coalescedInputs() {
+        return coalesced;
+    }
+
+    @FunctionalInterface
+    public interface MoveConsumer {
+        void accept(int playerIndex, Move move);
+    }
+}
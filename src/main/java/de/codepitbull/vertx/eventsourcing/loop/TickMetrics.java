@@ -0,0 +1,99 @@
+package de.codepitbull.vertx.eventsourcing.loop;
+
+import de.codepitbull.vertx.eventsourcing.metrics.Counter;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Counters of a {@link TickScheduler}. Only updated from the event loop of the scheduler.
+ * <p>
+ * Ticks, overruns and skipped ticks are also counted by counters of the {@link MetricsRegistry} labelled with the
+ * scheduler. These are shared by all schedulers that ran on the same event loop with the same period.
+ *
+ * @author Jochen Mader
+ */
+public class TickMetrics {
+
+    private long ticks;
+    private long overruns;
+    private long skippedTicks;
+    private long lastTickNanos;
+    private long maxTickNanos;
+    private long maxLagNanos;
+
+    private final Counter tickCount;
+    private final Counter overrunCount;
+    private final Counter skippedCount;
+
+    TickMetrics(MetricsRegistry registry, String scheduler) {
+        tickCount = registry.counter(MetricsRegistry.TICKS, "Ticks run by the tick schedulers", "scheduler", scheduler);
+        overrunCount = registry.counter(MetricsRegistry.TICK_OVERRUNS, "Ticks that took longer than their period",
+                "scheduler", scheduler);
+        skippedCount = registry.counter(MetricsRegistry.TICKS_SKIPPED, "Ticks dropped by schedulers falling behind",
+                "scheduler", scheduler);
+    }
+
+    /**
+     * @return true if the tick took longer than the period
+     */
+    boolean recordTick(long durationNanos, long lagNanos, long periodNanos) {
+        ticks++;
+        tickCount.increment();
+        lastTickNanos = durationNanos;
+        maxTickNanos = Math.max(maxTickNanos, durationNanos);
+        maxLagNanos = Math.max(maxLagNanos, lagNanos);
+        if (durationNanos <= periodNanos)
+            return false;
+        overruns++;
+        overrunCount.increment();
+        return true;
+    }
+
+    void recordSkipped(long skipped) {
+        skippedTicks += skipped;
+        skippedCount.add(skipped);
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Number of ticks that took longer than the period of the scheduler.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Number of ticks dropped because the scheduler fell too far behind.
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    /**
+     * Largest delay between the time a tick was due and the time it started.
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+                .put("ticks", ticks)
+                .put("overruns", overruns)
+                .put("skipped_ticks", skippedTicks)
+                .put("last_tick_nanos", lastTickNanos)
+                .put("max_tick_nanos", maxTickNanos)
+                .put("max_lag_nanos", maxLagNanos);
+    }
+}
@@ -0,0 +1,210 @@
+package de.codepitbull.vertx.eventsourcing.loop;
+
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import io.vertx.core.Context;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Drives all games of an event loop with a fixed timestep using a single timer.
+ * <p>
+ * Ticks are scheduled against absolute deadlines, so a late timer shortens the wait for the following tick instead of
+ * shifting all of them. A scheduler falling behind runs up to {@link #MAX_CATCH_UP_TICKS} ticks in a row and skips the
+ * rest. The timer belongs to the context of one of the registered games and is handed over to another one when that
+ * game leaves.
+ * <p>
+ * Overruns and skipped ticks are logged together with the {@link TickMetrics} of the scheduler.
+ *
+ * @author Jochen Mader
+ */
+public class TickScheduler implements Shareable {
+    private static final Logger LOG = LoggerFactory.getLogger(TickScheduler.class);
+
+    public static final long DEFAULT_PERIOD_MS = 200;
+    public static final int MAX_CATCH_UP_TICKS = 5;
+
+    private static final String SCHEDULERS_MAP = "tick.schedulers";
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    private final io.vertx.core.Vertx vertx;
+    private final long periodNanos;
+    private final String key;
+    private final TickMetrics metrics;
+
+    private Registration[] registrations = NO_REGISTRATIONS;
+    private Context timerContext;
+    private long timerId = -1;
+    private long nextTickAt;
+    private long tick;
+
+    TickScheduler(io.vertx.core.Vertx vertx, long periodMs, String key, MetricsRegistry registry) {
+        isTrue(periodMs > 0, "Tick period must be positive but was %d", periodMs);
+        this.vertx = vertx;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMs);
+        this.key = key;
+        this.metrics = new TickMetrics(registry, key);
+    }
+
+    /**
+     * The scheduler shared by all games on the event loop of the caller ticking with the given period.
+     */
+    public static TickScheduler forCurrentEventLoop(Vertx vertx, long periodMs) {
+        notNull(vertx, "vertx must be set");
+        isTrue(Context.isOnEventLoopThread(), "Tick schedulers must be used from an event loop");
+        io.vertx.core.Vertx coreVertx = (io.vertx.core.Vertx) vertx.getDelegate();
+        LocalMap<String, TickScheduler> schedulers = coreVertx.sharedData().getLocalMap(SCHEDULERS_MAP);
+        String key = Thread.currentThread().getName() + "/" + periodMs;
+        TickScheduler scheduler = schedulers.get(key);
+        if (scheduler == null) {
+            scheduler = new TickScheduler(coreVertx, periodMs, key, MetricsRegistry.get(vertx));
+            schedulers.put(key, scheduler);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Starts ticking the given handler, the first tick happens one period from now at the earliest.
+     * Has to be called from the event loop of this scheduler.
+     */
+    public Registration register(TickHandler handler) {
+        Registration registration = new Registration(this, notNull(handler, "handler must be set"),
+                vertx.getOrCreateContext());
+        Registration[] updated = Arrays.copyOf(registrations, registrations.length + 1);
+        updated[registrations.length] = registration;
+        registrations = updated;
+        if (timerId == -1) {
+            nextTickAt = System.nanoTime() + periodNanos;
+            scheduleNext();
+        }
+        return registration;
+    }
+
+    public TickMetrics metrics() {
+        return metrics;
+    }
+
+    public int registrations() {
+        return registrations.length;
+    }
+
+    private void unregister(Registration registration) {
+        int index = Arrays.asList(registrations).indexOf(registration);
+        if (index == -1)
+            return;
+        Registration[] updated = new Registration[registrations.length - 1];
+        System.arraycopy(registrations, 0, updated, 0, index);
+        System.arraycopy(registrations, index + 1, updated, index, updated.length - index);
+        registrations = updated.length == 0 ? NO_REGISTRATIONS : updated;
+
+        if (registrations.length == 0) {
+            cancelTimer();
+            vertx.sharedData().<String, TickScheduler>getLocalMap(SCHEDULERS_MAP).removeIfPresent(key, this);
+        } else if (registration.context == timerContext) {
+            //the timer would die with the context of the leaving game
+            cancelTimer();
+            registrations[0].context.runOnContext(v -> scheduleNext());
+        }
+    }
+
+    private void run() {
+        timerId = -1;
+        long now = System.nanoTime();
+        int ran = 0;
+        while (now - nextTickAt >= 0 && ran < MAX_CATCH_UP_TICKS && registrations.length > 0) {
+            runTick(now - nextTickAt);
+            nextTickAt += periodNanos;
+            ran++;
+            now = System.nanoTime();
+        }
+        if (registrations.length == 0)
+            return;
+        if (now - nextTickAt >= 0) {
+            long skipped = (now - nextTickAt) / periodNanos + 1;
+            nextTickAt += skipped * periodNanos;
+            metrics.recordSkipped(skipped);
+            LOG.warn("Tick scheduler " + key + " fell behind, skipped " + skipped + " ticks: " + metrics.toJson().encode());
+        }
+        scheduleNext();
+    }
+
+    private void runTick(long lagNanos) {
+        long start = System.nanoTime();
+        tick++;
+        for (Registration registration : registrations) {
+            if (!registration.active)
+                continue;
+            try {
+                registration.handler.tick(tick);
+            } catch (RuntimeException e) {
+                LOG.error("Failed ticking " + registration.handler, e);
+            }
+        }
+        long durationNanos = System.nanoTime() - start;
+        if (metrics.recordTick(durationNanos, lagNanos, periodNanos))
+            LOG.warn("Tick " + tick + " of scheduler " + key + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos)
+                    + "ms, longer than its period: " + metrics.toJson().encode());
+    }
+
+    private void scheduleNext() {
+        if (timerId != -1 || registrations.length == 0)
+            return;
+        long delayMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextTickAt - System.nanoTime() + 999_999));
+        timerContext = vertx.getOrCreateContext();
+        timerId = vertx.setTimer(delayMs, id -> run());
+    }
+
+    private void cancelTimer() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+            timerContext = null;
+        }
+    }
+
+    /**
+     * Called once per tick for every registered game.
+     */
+    @FunctionalInterface
+    public interface TickHandler {
+        void tick(long tick);
+    }
+
+    /**
+     * A handler registered with a {@link TickScheduler}.
+     */
+    public static class Registration {
+        private final TickScheduler scheduler;
+        private final TickHandler handler;
+        private final Context context;
+        private boolean active = true;
+
+        private Registration(TickScheduler scheduler, TickHandler handler, Context context) {
+            this.scheduler = scheduler;
+            this.handler = handler;
+            this.context = context;
+        }
+
+        /**
+         * Stops ticking the handler, has to be called from the event loop of the scheduler.
+         */
+        public void cancel() {
+            if (active) {
+                active = false;
+                scheduler.unregister(this);
+            }
+        }
+
+        public TickScheduler scheduler() {
+            return scheduler;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.codepitbull.vertx.eventsourcing.loop;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Limits the rate of the inputs of a single player. The bucket refills continuously up to its burst size and every
+ * input takes one token, inputs finding it empty are rejected. Not thread safe, it belongs to one event loop.
+ *
+ * @author Jochen Mader
+ */
+public class TokenBucket {
+
+    /** a player moves once per tick, leave room for jitter and for moves replaced before the tick */
+    public static final int DEFAULT_RATE_PER_SECOND = 10;
+    public static final int DEFAULT_BURST = 5;
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final double tokensPerNano;
+    private final int burst;
+    private double tokens;
+    private long lastRefill;
+    private long rejected;
+
+    /**
+     * @param now current time in nanoseconds, the bucket starts full
+     */
+    public TokenBucket(int ratePerSecond, int burst, long now) {
+        isTrue(ratePerSecond > 0, "Rate must be positive but was %d", ratePerSecond);
+        isTrue(burst > 0, "Burst must be positive but was %d", burst);
+        this.tokensPerNano = ratePerSecond / NANOS_PER_SECOND;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @param now current time in nanoseconds
+     * @return false if the input has to be rejected
+     */
+    public boolean tryAcquire(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+        if (tokens < 1) {
+            rejected++;
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    public long rejected() {
+        return rejected;
+    }
+}
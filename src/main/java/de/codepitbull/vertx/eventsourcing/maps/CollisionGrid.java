@@ -0,0 +1,144 @@
+package de.codepitbull.vertx.eventsourcing.maps;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.io.InputStream;
+import java.util.Scanner;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+import static org.apache.commons.lang3.Validate.validState;
+
+/**
+ * The tiles of a map players can't enter, packed into one bit per tile when the map is loaded. Like the browser, only
+ * the walls layer blocks, everything outside of the map is blocked as well.
+ * <p>
+ * Grids never change once built and are shared by all games of a Vert.x instance using the same map. Verticles load
+ * the grids of their maps with {@link #load(Vertx, String, Handler)} when they start, so games never read a map on the
+ * event loop.
+ *
+ * @author Jochen Mader
+ */
+public class CollisionGrid implements Shareable {
+
+    public static final String DEFAULT_MAP = "map_1";
+
+    private static final String MAPS = "/webroot/maps/";
+    private static final String GRIDS_MAP = "collision.grids";
+
+    private final int width;
+    private final int height;
+    private final long[] blocked;
+
+    CollisionGrid(int width, int height, long[] blocked) {
+        this.width = width;
+        this.height = height;
+        this.blocked = blocked;
+    }
+
+    /**
+     * Packs the walls of the given map.
+     */
+    public static CollisionGrid fromMap(MapReader reader) {
+        notNull(reader, "reader must be set");
+        int width = reader.width();
+        int height = reader.height();
+        JsonArray walls = notNull(reader.walls(), "Map has no walls layer");
+        isTrue(walls.size() == width * height, "Walls layer has %d tiles instead of %d", walls.size(), width * height);
+        long[] blocked = new long[(width * height + 63) >>> 6];
+        for (int tile = 0; tile < walls.size(); tile++)
+            if (walls.getInteger(tile) != 0)
+                blocked[tile >>> 6] |= 1L << tile;
+        return new CollisionGrid(width, height, blocked);
+    }
+
+    /**
+     * Reads the map with the given name from the classpath on a worker, unless its grid has been loaded before.
+     */
+    public static void load(Vertx vertx, String map, Handler<AsyncResult<CollisionGrid>> resultHandler) {
+        notNull(map, "map must be set");
+        LocalMap<String, CollisionGrid> grids = grids(vertx);
+        CollisionGrid loaded = grids.get(map);
+        if (loaded != null) {
+            resultHandler.handle(Future.succeededFuture(loaded));
+            return;
+        }
+        vertx.<CollisionGrid>executeBlocking(exe -> {
+            CollisionGrid grid = fromMap(read(map));
+            CollisionGrid existing = grids.putIfAbsent(map, grid);
+            exe.complete(existing != null ? existing : grid);
+        }, false, resultHandler);
+    }
+
+    /**
+     * The grid of the map with the given name, it has to be loaded with {@link #load(Vertx, String, Handler)} first.
+     */
+    public static CollisionGrid forMap(Vertx vertx, String map) {
+        notNull(map, "map must be set");
+        CollisionGrid grid = grids(vertx).get(map);
+        validState(grid != null, "Map %s has not been loaded", map);
+        return grid;
+    }
+
+    private static LocalMap<String, CollisionGrid> grids(Vertx vertx) {
+        notNull(vertx, "vertx must be set");
+        return ((io.vertx.core.Vertx) vertx.getDelegate()).sharedData().getLocalMap(GRIDS_MAP);
+    }
+
+    private static MapReader read(String map) {
+        InputStream in = CollisionGrid.class.getResourceAsStream(MAPS + map + ".json");
+        isTrue(in != null, "Unknown map %s", map);
+        try (Scanner scanner = new Scanner(in, "UTF-8")) {
+            return new MapReader(new JsonObject(scanner.useDelimiter("\\A").next()));
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @return true if the tile can't be entered
+     */
+    public boolean blocked(int x, int y) {
+        //negative coordinates compare as huge unsigned values, so this covers all four borders
+        if (Integer.compareUnsigned(x, width) >= 0 | Integer.compareUnsigned(y, height) >= 0)
+            return true;
+        int tile = y * width + x;
+        return (blocked[tile >>> 6] & 1L << tile) != 0;
+    }
+
+    /**
+     * Searches the tiles row by row, starting at the given one and wrapping around at the end of the map.
+     * @param taken tells tiles that can't be used although they aren't blocked, like those other players stand on
+     * @return the first tile that is neither blocked nor taken as {@code y * width + x}, -1 if there is none
+     */
+    public int nextFreeTile(int x, int y, TileFilter taken) {
+        notNull(taken, "taken must be set");
+        int tiles = width * height;
+        boolean inside = Integer.compareUnsigned(x, width) < 0 && Integer.compareUnsigned(y, height) < 0;
+        int start = inside ? y * width + x : 0;
+        for (int i = 0; i < tiles; i++) {
+            int tile = (start + i) % tiles;
+            if (!blocked(tile % width, tile / width) && !taken.test(tile % width, tile / width))
+                return tile;
+        }
+        return -1;
+    }
+
+    @FunctionalInterface
+    public interface TileFilter {
+        boolean test(int x, int y);
+    }
+}
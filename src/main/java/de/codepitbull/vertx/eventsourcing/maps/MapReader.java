@@ -10,7 +10,7 @@ import java.util.Map;
 import static org.apache.commons.lang3.Validate.notNull;
 
 /**
- * Reads a given map and provides the data as JSON-documents. Will be used for server side collision checking.
+ * Reads a given map and provides the data as JSON-documents, see {@link CollisionGrid} for server side collision checking.
  *
  * @author Jochen Mader
  */
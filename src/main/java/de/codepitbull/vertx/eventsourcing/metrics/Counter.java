@@ -0,0 +1,28 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * A value only going up, like the number of ticks run. May be updated from any thread.
+ *
+ * @author Jochen Mader
+ */
+public class Counter {
+
+    private final AtomicLong value = new AtomicLong();
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        isTrue(delta >= 0, "Counters can't go down");
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
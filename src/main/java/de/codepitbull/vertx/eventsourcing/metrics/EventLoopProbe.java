@@ -0,0 +1,99 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import io.vertx.core.Context;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Records how late timers fire on an event loop, the time the loop was blocked by other handlers.
+ * <p>
+ * All verticles of an event loop share one probe with a single timer. The timer belongs to the context of one of them
+ * and is handed over to another one when that verticle releases the probe.
+ *
+ * @author Jochen Mader
+ */
+public class EventLoopProbe implements Shareable {
+
+    private static final String PROBES_MAP = "metrics.probes";
+
+    private final io.vertx.core.Vertx vertx;
+    private final String key;
+    private final Histogram delays;
+    private final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(MetricsRegistry.EVENT_LOOP_PROBE_INTERVAL_MS);
+    private final List<Context> contexts = new ArrayList<>();
+
+    private Context timerContext;
+    private long timerId = -1;
+    private long expected;
+
+    private EventLoopProbe(io.vertx.core.Vertx vertx, String key, Histogram delays) {
+        this.vertx = vertx;
+        this.key = key;
+        this.delays = delays;
+    }
+
+    /**
+     * The probe of the event loop of the caller, running until all verticles that acquired it released it.
+     */
+    static EventLoopProbe acquire(Vertx vertx, MetricsRegistry registry) {
+        isTrue(Context.isOnEventLoopThread(), "Event loops can only be probed from an event loop");
+        io.vertx.core.Vertx coreVertx = (io.vertx.core.Vertx) vertx.getDelegate();
+        LocalMap<String, EventLoopProbe> probes = coreVertx.sharedData().getLocalMap(PROBES_MAP);
+        String key = Thread.currentThread().getName();
+        EventLoopProbe probe = probes.get(key);
+        if (probe == null) {
+            probe = new EventLoopProbe(coreVertx, key, registry.histogram(MetricsRegistry.EVENT_LOOP_DELAY,
+                    "Delay of timers on the event loops", MetricsRegistry.NANOS, "thread", key));
+            probes.put(key, probe);
+        }
+        probe.contexts.add(coreVertx.getOrCreateContext());
+        if (probe.timerId == -1)
+            probe.startTimer();
+        return probe;
+    }
+
+    /**
+     * Has to be called from the context that acquired the probe, usually when its verticle stops.
+     */
+    public void release() {
+        Context context = vertx.getOrCreateContext();
+        if (!contexts.remove(context))
+            return;
+        if (contexts.isEmpty()) {
+            cancelTimer();
+            vertx.sharedData().<String, EventLoopProbe>getLocalMap(PROBES_MAP).removeIfPresent(key, this);
+        } else if (context == timerContext) {
+            //the timer would die with the context of the leaving verticle
+            cancelTimer();
+            contexts.get(0).runOnContext(v -> {
+                if (timerId == -1 && !contexts.isEmpty())
+                    startTimer();
+            });
+        }
+    }
+
+    private void startTimer() {
+        timerContext = vertx.getOrCreateContext();
+        expected = System.nanoTime() + intervalNanos;
+        timerId = vertx.setPeriodic(MetricsRegistry.EVENT_LOOP_PROBE_INTERVAL_MS, id -> {
+            long now = System.nanoTime();
+            delays.record(Math.max(0, now - expected));
+            expected = now + intervalNanos;
+        });
+    }
+
+    private void cancelTimer() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+            timerContext = null;
+        }
+    }
+}
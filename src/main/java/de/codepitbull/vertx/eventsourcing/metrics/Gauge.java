@@ -0,0 +1,33 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value going up and down, like the number of running games. May be updated from any thread.
+ *
+ * @author Jochen Mader
+ */
+public class Gauge {
+
+    private final AtomicLong value = new AtomicLong();
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void decrement() {
+        value.decrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public void set(long newValue) {
+        value.set(newValue);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
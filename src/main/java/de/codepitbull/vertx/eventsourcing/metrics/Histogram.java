@@ -0,0 +1,86 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Distribution of non negative values in the style of an HDR histogram: buckets are exact below
+ * {@link #SUB_BUCKETS} and grow with the magnitude of the value above, so every value is kept with a relative error of
+ * at most 1/64 in a fixed amount of memory, no matter how many values are recorded.
+ * <p>
+ * Values may be recorded from any thread without locking. Reading while values are recorded gives a view that may be
+ * off by the values being recorded at that moment.
+ *
+ * @author Jochen Mader
+ */
+public class Histogram {
+
+    static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    //values up to Long.MAX_VALUE are shifted by at most this
+    private static final int MAX_SHIFT = 63 - (SUB_BUCKET_BITS - 1);
+    static final int BUCKETS = SUB_BUCKETS + MAX_SHIFT * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        isTrue(value >= 0, "Value must not be negative but was %d", value);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) ;
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the highest value equivalent to the value at the quantile, 0 if nothing has been recorded
+     */
+    public long valueAtQuantile(double quantile) {
+        isTrue(quantile >= 0 && quantile <= 1, "Quantile must be between 0 and 1 but was %f", quantile);
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestEquivalent(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,200 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * The metrics of all verticles of a Vert.x instance, written in the Prometheus text format by {@link #scrape()}.
+ * <p>
+ * Histograms are written as summaries with the quantiles of {@link #QUANTILES} plus a gauge holding the maximum.
+ * Durations are recorded in nanoseconds and written in seconds. Metrics are created on first use and may be updated
+ * from any thread.
+ *
+ * @author Jochen Mader
+ */
+public class MetricsRegistry implements Shareable {
+
+    public static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    public static final double NANOS = 1d / TimeUnit.SECONDS.toNanos(1);
+    public static final long EVENT_LOOP_PROBE_INTERVAL_MS = 100;
+
+    public static final String ROUND_DURATION = "game_round_duration_seconds";
+    public static final String STORE_APPEND_DURATION = "store_append_duration_seconds";
+    public static final String SNAPSHOT_DURATION = "store_snapshot_duration_seconds";
+    public static final String SNAPSHOT_SIZE = "store_snapshot_size_bytes";
+    public static final String SPECTATOR_LAG = "replay_spectator_lag_rounds";
+    public static final String EVENT_LOOP_DELAY = "vertx_event_loop_delay_seconds";
+    public static final String ACTIVE_GAMES = "games_active";
+    public static final String ACTIVE_PLAYERS = "players_active";
+    public static final String ACTIVE_SPECTATORS = "spectators_active";
+    public static final String TICKS = "game_ticks_total";
+    public static final String TICK_OVERRUNS = "game_tick_overruns_total";
+    public static final String TICKS_SKIPPED = "game_ticks_skipped_total";
+
+    private static final String REGISTRY_MAP = "metrics.registry";
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * The registry shared by everything running on the given Vert.x instance.
+     */
+    public static MetricsRegistry get(Vertx vertx) {
+        notNull(vertx, "vertx must be set");
+        LocalMap<String, MetricsRegistry> registries = ((io.vertx.core.Vertx) vertx.getDelegate()).sharedData().getLocalMap(REGISTRY_MAP);
+        MetricsRegistry registry = registries.get(REGISTRY_MAP);
+        if (registry == null) {
+            registry = new MetricsRegistry();
+            MetricsRegistry existing = registries.putIfAbsent(REGISTRY_MAP, registry);
+            if (existing != null)
+                registry = existing;
+        }
+        return registry;
+    }
+
+    /**
+     * @param unit the value of a recorded unit in the unit of the metric, {@link #NANOS} for durations
+     */
+    public Histogram histogram(String name, String help, double unit) {
+        return histogram(name, help, unit, null, null);
+    }
+
+    /**
+     * A histogram of a family whose members are told apart by a single label.
+     */
+    public Histogram histogram(String name, String help, double unit, String label, String labelValue) {
+        return (Histogram) family(name, help, Type.SUMMARY, unit).metric(label, labelValue);
+    }
+
+    public Gauge gauge(String name, String help) {
+        return gauge(name, help, null, null);
+    }
+
+    /**
+     * A gauge of a family whose members are told apart by a single label.
+     */
+    public Gauge gauge(String name, String help, String label, String labelValue) {
+        return (Gauge) family(name, help, Type.GAUGE, 1).metric(label, labelValue);
+    }
+
+    /**
+     * A counter of a family whose members are told apart by a single label.
+     */
+    public Counter counter(String name, String help, String label, String labelValue) {
+        return (Counter) family(name, help, Type.COUNTER, 1).metric(label, labelValue);
+    }
+
+    /**
+     * Records how late timers fire on the event loop of the caller, see {@link EventLoopProbe}. Verticles sharing an
+     * event loop share the probe, each has to release it when it stops.
+     */
+    public EventLoopProbe probeEventLoop(Vertx vertx) {
+        return EventLoopProbe.acquire(notNull(vertx, "vertx must be set"), this);
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format, version 0.0.4
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        new ConcurrentSkipListMap<>(families).values().forEach(family -> family.write(out));
+        return out.toString();
+    }
+
+    private Family family(String name, String help, Type type, double unit) {
+        notNull(name, "name must be set");
+        Family family = families.computeIfAbsent(name, key -> new Family(name, notNull(help, "help must be set"), type, unit));
+        isTrue(family.type == type, "Metric %s is a %s", name, family.type);
+        return family;
+    }
+
+    private enum Type {
+        SUMMARY, GAUGE, COUNTER
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final double unit;
+        final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, Type type, double unit) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.unit = unit;
+        }
+
+        Object metric(String label, String labelValue) {
+            String labels = label == null ? "" : label + "=\"" + escape(labelValue) + "\"";
+            return metrics.computeIfAbsent(labels, key -> newMetric());
+        }
+
+        private Object newMetric() {
+            switch (type) {
+                case SUMMARY:
+                    return new Histogram();
+                case COUNTER:
+                    return new Counter();
+                default:
+                    return new Gauge();
+            }
+        }
+
+        void write(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+                String labels = metric.getKey();
+                if (type == Type.GAUGE) {
+                    sample(out, name, labels, ((Gauge) metric.getValue()).get());
+                    continue;
+                }
+                if (type == Type.COUNTER) {
+                    sample(out, name, labels, ((Counter) metric.getValue()).get());
+                    continue;
+                }
+                Histogram histogram = (Histogram) metric.getValue();
+                for (double quantile : QUANTILES)
+                    sample(out, name, join(labels, "quantile=\"" + quantile + "\""), histogram.valueAtQuantile(quantile) * unit);
+                sample(out, name + "_sum", labels, histogram.sum() * unit);
+                sample(out, name + "_count", labels, histogram.count());
+            }
+            if (type == Type.SUMMARY) {
+                out.append("# TYPE ").append(name).append("_max gauge\n");
+                for (Map.Entry<String, Object> metric : metrics.entrySet())
+                    sample(out, name + "_max", metric.getKey(), ((Histogram) metric.getValue()).max() * unit);
+            }
+        }
+
+        private static void sample(StringBuilder out, String name, String labels, double value) {
+            out.append(name);
+            if (!labels.isEmpty())
+                out.append('{').append(labels).append('}');
+            out.append(' ');
+            if (value == Math.rint(value) && Math.abs(value) < 1e15)
+                out.append((long) value);
+            else
+                out.append(value);
+            out.append('\n');
+        }
+
+        private static String join(String labels, String label) {
+            return labels.isEmpty() ? label : labels + "," + label;
+        }
+
+        private static String escape(String value) {
+            return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package de.codepitbull.vertx.eventsourcing.projection;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Counts the moves of each player, indexed by player id.
+ *
+ * @author Jochen Mader
+ */
+public class MovesPerPlayer implements Projection<long[]> {
+
+    @Override
+    public long[] zero() {
+        return new long[0];
+    }
+
+    @Override
+    public long[] fold(long[] counts, Game game, RoundUpdate update) {
+        for (int i = 0; i < update.moveCount(); i++) {
+            int playerId = update.playerId(i);
+            if (playerId >= counts.length)
+                counts = Arrays.copyOf(counts, playerId + 1);
+            counts[playerId]++;
+        }
+        return counts;
+    }
+
+    @Override
+    public long[] merge(long[] left, long[] right) {
+        long[] merged = left.length >= right.length ? left : right;
+        long[] other = merged == left ? right : left;
+        for (int i = 0; i < other.length; i++)
+            merged[i] += other[i];
+        return merged;
+    }
+
+    @Override
+    public JsonObject toJson(long[] counts) {
+        JsonObject json = new JsonObject();
+        for (int playerId = 0; playerId < counts.length; playerId++)
+            json.put(String.valueOf(playerId), counts[playerId]);
+        return json;
+    }
+}
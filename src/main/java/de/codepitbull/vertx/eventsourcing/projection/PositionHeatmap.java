@@ -0,0 +1,66 @@
+package de.codepitbull.vertx.eventsourcing.projection;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Counts for every field of the map how many rounds players ended on it. Positions outside of the map are ignored.
+ *
+ * @author Jochen Mader
+ */
+public class PositionHeatmap implements Projection<long[]> {
+
+    private final int width;
+    private final int height;
+
+    public PositionHeatmap(int width, int height) {
+        isTrue(width > 0 && height > 0, "Map size must be positive but was %dx%d", width, height);
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public long[] zero() {
+        return new long[width * height];
+    }
+
+    @Override
+    public long[] fold(long[] heat, Game game, RoundUpdate update) {
+        for (int index = 0; index < game.currentNumPlayers(); index++) {
+            int x = game.x(index);
+            int y = game.y(index);
+            if (x >= 0 && x < width && y >= 0 && y < height)
+                heat[y * width + x]++;
+        }
+        return heat;
+    }
+
+    @Override
+    public long[] merge(long[] left, long[] right) {
+        for (int i = 0; i < left.length; i++)
+            left[i] += right[i];
+        return left;
+    }
+
+    /**
+     * @return the counts row by row
+     */
+    @Override
+    public JsonObject toJson(long[] heat) {
+        JsonArray rows = new JsonArray();
+        for (int y = 0; y < height; y++) {
+            JsonArray row = new JsonArray();
+            for (int x = 0; x < width; x++)
+                row.add(heat[y * width + x]);
+            rows.add(row);
+        }
+        return new JsonObject()
+                .put("width", width)
+                .put("height", height)
+                .put("rows", rows);
+    }
+}
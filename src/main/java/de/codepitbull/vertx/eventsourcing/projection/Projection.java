@@ -0,0 +1,36 @@
+package de.codepitbull.vertx.eventsourcing.projection;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * An aggregate computed over stored updates by the {@link ProjectionEngine}.
+ * <p>
+ * The log is split into chunks folded in parallel, each starting with {@link #zero()}. The partial results are merged
+ * in log order, so {@link #merge(Object, Object)} has to be associative. All methods are called from fork-join
+ * threads, only the accumulator passed in may be modified.
+ *
+ * @param <A> type of the accumulated result
+ * @author Jochen Mader
+ */
+public interface Projection<A> {
+
+    /**
+     * @return a new, empty accumulator
+     */
+    A zero();
+
+    /**
+     * Folds one update into the accumulator.
+     * @param game the state of the game after the update, must not be modified
+     */
+    A fold(A accumulator, Game game, RoundUpdate update);
+
+    /**
+     * Merges the results of two neighbouring chunks, the left one covers the older updates.
+     */
+    A merge(A left, A right);
+
+    JsonObject toJson(A result);
+}
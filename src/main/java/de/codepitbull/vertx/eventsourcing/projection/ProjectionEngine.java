@@ -0,0 +1,217 @@
+package de.codepitbull.vertx.eventsourcing.projection;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.Context;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Computes {@link Projection}s over the stored updates of one or more games without blocking the event loop.
+ * <p>
+ * The update logs are split into chunks of {@code chunkSize} updates. Each chunk is read with
+ * {@link EventStore#readEvents(long, int, Handler)} and starts from the newest snapshot before it, the updates between
+ * snapshot and chunk are replayed to get the state of the game. Chunks are folded on a {@link ForkJoinPool} and the
+ * partial results are merged pairwise on it as well. At most {@code chunksInFlight} chunks are held in memory, so logs
+ * of millions of updates can be scanned.
+ * <p>
+ * The stores are only accessed from the context {@link #run(List, Projection, Handler)} has been called on.
+ *
+ * @author Jochen Mader
+ */
+public class ProjectionEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(ProjectionEngine.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private final Vertx vertx;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int chunksInFlight;
+
+    public ProjectionEngine(Vertx vertx) {
+        this(vertx, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ProjectionEngine(Vertx vertx, ForkJoinPool pool, int chunkSize) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.pool = notNull(pool, "pool must be set");
+        isTrue(chunkSize > 0, "Chunk size must be positive but was %d", chunkSize);
+        this.chunkSize = chunkSize;
+        this.chunksInFlight = pool.getParallelism() * 2;
+    }
+
+    public <A> void run(EventStore store, Projection<A> projection, Handler<AsyncResult<A>> resultHandler) {
+        run(Collections.singletonList(store), projection, resultHandler);
+    }
+
+    /**
+     * Folds the updates of all given stores into one result.
+     */
+    public <A> void run(List<EventStore> stores, Projection<A> projection, Handler<AsyncResult<A>> resultHandler) {
+        new Run<>(vertx.getOrCreateContext(), stores, projection, resultHandler).start();
+    }
+
+    private static class Chunk {
+        final EventStore store;
+        final long fromOffset;
+        final int size;
+        final int position;
+
+        Chunk(EventStore store, long fromOffset, int size, int position) {
+            this.store = store;
+            this.fromOffset = fromOffset;
+            this.size = size;
+            this.position = position;
+        }
+    }
+
+    private class Run<A> {
+        private final Context context;
+        private final Projection<A> projection;
+        private final Handler<AsyncResult<A>> resultHandler;
+        private final Queue<Chunk> pending = new ArrayDeque<>();
+        private final Object[] partials;
+        private int running;
+        private int completed;
+        private boolean failed;
+
+        Run(Context context, List<EventStore> stores, Projection<A> projection, Handler<AsyncResult<A>> resultHandler) {
+            this.context = context;
+            this.projection = notNull(projection, "projection must be set");
+            this.resultHandler = notNull(resultHandler, "resultHandler must be set");
+            for (EventStore store : stores) {
+                //rounds start at 1, so this is the oldest update still stored
+                long first = store.offsetAfterRound(0);
+                for (long offset = first; offset <= store.headOffset(); offset += chunkSize)
+                    pending.add(new Chunk(store, offset, (int) Math.min(chunkSize, store.headOffset() - offset + 1), pending.size()));
+            }
+            partials = new Object[pending.size()];
+        }
+
+        void start() {
+            if (partials.length == 0)
+                resultHandler.handle(Future.succeededFuture(projection.zero()));
+            else
+                scheduleChunks();
+        }
+
+        private void scheduleChunks() {
+            while (!failed && running < chunksInFlight && !pending.isEmpty()) {
+                running++;
+                read(pending.poll());
+            }
+        }
+
+        private void read(Chunk chunk) {
+            chunk.store.readEvents(chunk.fromOffset, chunk.size, events -> {
+                if (events.failed()) {
+                    fail(events.cause());
+                    return;
+                }
+                int roundId = events.result().get(0).getRoundId();
+                chunk.store.loadSnapshotAtRound(roundId - 1, snapshot -> {
+                    if (snapshot.failed()) {
+                        fail(new IllegalStateException("No snapshot before round " + roundId, snapshot.cause()));
+                        return;
+                    }
+                    long warmupFrom = chunk.store.offsetAfterRound(snapshot.result().getRoundId());
+                    if (warmupFrom >= chunk.fromOffset)
+                        fold(chunk, snapshot.result(), Collections.<RoundUpdate>emptyList(), events.result());
+                    else
+                        chunk.store.readEvents(warmupFrom, (int) (chunk.fromOffset - warmupFrom), warmup -> {
+                            if (warmup.succeeded())
+                                fold(chunk, snapshot.result(), warmup.result(), events.result());
+                            else
+                                fail(warmup.cause());
+                        });
+                });
+            });
+        }
+
+        private void fold(Chunk chunk, Game game, List<RoundUpdate> warmup, List<RoundUpdate> events) {
+            pool.execute(() -> {
+                try {
+                    for (RoundUpdate update : warmup)
+                        game.apply(update);
+                    A accumulator = projection.zero();
+                    for (RoundUpdate update : events) {
+                        game.apply(update);
+                        accumulator = projection.fold(accumulator, game, update);
+                    }
+                    A partial = accumulator;
+                    context.runOnContext(v -> folded(chunk, partial));
+                } catch (RuntimeException e) {
+                    context.runOnContext(v -> fail(e));
+                }
+            });
+        }
+
+        private void folded(Chunk chunk, A partial) {
+            if (failed)
+                return;
+            partials[chunk.position] = partial;
+            running--;
+            if (++completed < partials.length) {
+                scheduleChunks();
+                return;
+            }
+            pool.execute(() -> {
+                try {
+                    A result = new Merge(0, partials.length).invoke();
+                    context.runOnContext(v -> resultHandler.handle(Future.succeededFuture(result)));
+                } catch (RuntimeException e) {
+                    context.runOnContext(v -> fail(e));
+                }
+            });
+        }
+
+        private void fail(Throwable cause) {
+            if (failed)
+                return;
+            failed = true;
+            LOG.error("Projection " + projection.getClass().getSimpleName() + " failed", cause);
+            resultHandler.handle(Future.failedFuture(cause));
+        }
+
+        /**
+         * Merges the partial results of a range of chunks, the halves are merged in parallel.
+         */
+        private class Merge extends RecursiveTask<A> {
+            private final int from;
+            private final int to;
+
+            Merge(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected A compute() {
+                if (to - from == 1)
+                    return (A) partials[from];
+                int middle = (from + to) >>> 1;
+                Merge right = new Merge(middle, to);
+                right.fork();
+                A left = new Merge(from, middle).compute();
+                return projection.merge(left, right.join());
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package de.codepitbull.vertx.eventsourcing.replay;
+
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.Handler;
+
+/**
+ * Position and pacing state of a single spectator replaying a game.
+ *
+ * @author Jochen Mader
+ */
+class ReplayCursor {
+    final Integer spectatorId;
+    final int speed;
+    final Handler<RoundUpdate> eventHandler;
+
+    /** offset of the last event handed to the spectator */
+    long position;
+    /** events the spectator may still receive in the current tick, only used for paced cursors */
+    int credits;
+    boolean fetching;
+    boolean parked;
+    /** waiting in the store for new events while parked */
+    Handler<Long> wakeUp;
+    boolean active = true;
+    /** served by the {@link SharedReplayBuffer} instead of a private consumer */
+    boolean shared;
+    boolean waitingForBuffer;
+    boolean consumerRunning;
+
+    ReplayCursor(Integer spectatorId, long position, int speed, Handler<RoundUpdate> eventHandler) {
+        this.spectatorId = spectatorId;
+        this.position = position;
+        this.speed = speed;
+        this.eventHandler = eventHandler;
+        this.credits = speed;
+    }
+
+    boolean paced() {
+        return speed != ReplayScheduler.SPEED_MAX;
+    }
+}
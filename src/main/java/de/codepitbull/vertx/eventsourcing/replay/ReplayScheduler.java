@@ -0,0 +1,184 @@
+package de.codepitbull.vertx.eventsourcing.replay;
+
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.metrics.Gauge;
+import de.codepitbull.vertx.eventsourcing.metrics.Histogram;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Pushes the events of an {@link EventStore} to all spectators of a game.
+ * <p>
+ * Spectators that caught up with the head of the log are parked in the store and get woken up once new events are
+ * appended. Events are read once into a {@link SharedReplayBuffer} and fanned out to every spectator positioned within
+ * its window, only spectators lagging behind the window use a private consumer of the store. Paced spectators receive
+ * credits from a single timer shared by all of them, the timer only runs while a paced spectator is actually waiting
+ * for credits. Spectators replaying as fast as possible fetch the next event as soon as the previous one has been
+ * handed over, so there is never more than one fetch in flight per spectator.
+ *
+ * @author Jochen Mader
+ */
+public class ReplayScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayScheduler.class);
+
+    public static final long ROUND_INTERVAL_MS = 200;
+    public static final int SPEED_MAX = 0;
+    public static final int SPEED_REAL_TIME = 1;
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    private final Vertx vertx;
+    private final EventStore eventStore;
+    private final Map<Integer, ReplayCursor> spectatorIdToCursorMap = new HashMap<>();
+    private final SharedReplayBuffer sharedBuffer;
+    private long timerId = -1;
+    private final Histogram spectatorLag;
+    private final Gauge activeSpectators;
+
+    public ReplayScheduler(Vertx vertx, EventStore eventStore, int bufferSize) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.eventStore = notNull(eventStore, "eventStore must be set");
+        this.sharedBuffer = new SharedReplayBuffer(vertx, eventStore, bufferSize, this::pump);
+        MetricsRegistry metrics = MetricsRegistry.get(vertx);
+        this.spectatorLag = metrics.histogram(MetricsRegistry.SPECTATOR_LAG, "Rounds a spectator is behind the head of the game when getting a round", 1);
+        this.activeSpectators = metrics.gauge(MetricsRegistry.ACTIVE_SPECTATORS, "Replays running on this node");
+    }
+
+    /**
+     * Starts pushing events to a spectator.
+     * @param spectatorId id of the spectator
+     * @param startOffset the first event pushed will be the one following this offset
+     * @param speed {@link #SPEED_MAX} or the number of events per round interval
+     * @param eventHandler receives the events
+     */
+    public void start(Integer spectatorId, long startOffset, int speed, Handler<RoundUpdate> eventHandler) {
+        isTrue(speed >= SPEED_MAX, "Invalid replay speed %d", speed);
+        stop(spectatorId);
+        ReplayCursor cursor = new ReplayCursor(spectatorId, startOffset, speed, eventHandler);
+        spectatorIdToCursorMap.put(spectatorId, cursor);
+        activeSpectators.increment();
+        pump(cursor);
+    }
+
+    public void stop(Integer spectatorId) {
+        ReplayCursor cursor = spectatorIdToCursorMap.remove(spectatorId);
+        if (cursor != null) {
+            activeSpectators.decrement();
+            cursor.active = false;
+            if (cursor.parked)
+                eventStore.cancelAwait(cursor.wakeUp);
+            sharedBuffer.detach(cursor);
+            stopConsumer(cursor);
+        }
+    }
+
+    public void stopAll() {
+        for (Integer spectatorId : spectatorIdToCursorMap.keySet().toArray(new Integer[0]))
+            stop(spectatorId);
+        sharedBuffer.close();
+        cancelTimer();
+    }
+
+    private void pump(ReplayCursor cursor) {
+        if (!cursor.active || cursor.fetching || cursor.parked || cursor.waitingForBuffer)
+            return;
+        if (cursor.position >= eventStore.headOffset()) {
+            cursor.parked = true;
+            cursor.wakeUp = head -> {
+                cursor.parked = false;
+                cursor.wakeUp = null;
+                pump(cursor);
+            };
+            eventStore.awaitEvent(cursor.position, cursor.wakeUp);
+            return;
+        }
+        if (cursor.paced() && cursor.credits == 0) {
+            startTimer();
+            return;
+        }
+        long next = cursor.position + 1;
+        if (!cursor.shared && sharedBuffer.attach(cursor))
+            stopConsumer(cursor);
+        if (cursor.shared) {
+            RoundUpdate event = sharedBuffer.get(next);
+            if (event != null) {
+                deliver(cursor, event);
+                return;
+            }
+            if (!sharedBuffer.behindWindow(next)) {
+                sharedBuffer.await(cursor);
+                return;
+            }
+            LOG.info("Spectator " + cursor.spectatorId + " fell behind the shared buffer, using a private consumer");
+            sharedBuffer.detach(cursor);
+        }
+        if (!cursor.consumerRunning) {
+            eventStore.startConsumerForSpectatorIdWithStartOffset(cursor.spectatorId, (int) cursor.position);
+            cursor.consumerRunning = true;
+        }
+        cursor.fetching = true;
+        eventStore.getNextEvent(cursor.spectatorId, result -> {
+            cursor.fetching = false;
+            if (!cursor.active)
+                return;
+            if (result.succeeded()) {
+                deliver(cursor, result.result());
+            } else {
+                LOG.error("Unable to load update for spectator " + cursor.spectatorId, result.cause());
+                vertx.setTimer(ROUND_INTERVAL_MS, id -> pump(cursor));
+            }
+        });
+    }
+
+    private void deliver(ReplayCursor cursor, RoundUpdate event) {
+        cursor.position++;
+        spectatorLag.record(Math.max(0, eventStore.headOffset() - cursor.position));
+        if (cursor.paced())
+            cursor.credits--;
+        cursor.eventHandler.handle(event);
+        //give other handlers on this event loop a chance before handing over the next event
+        vertx.runOnContext(v -> pump(cursor));
+    }
+
+    private void stopConsumer(ReplayCursor cursor) {
+        if (cursor.consumerRunning) {
+            eventStore.stopConsumerForSpectatorId(cursor.spectatorId);
+            cursor.consumerRunning = false;
+        }
+    }
+
+    private void tick() {
+        boolean waiting = false;
+        for (ReplayCursor cursor : spectatorIdToCursorMap.values().toArray(new ReplayCursor[0])) {
+            if (!cursor.paced())
+                continue;
+            cursor.credits = cursor.speed;
+            pump(cursor);
+            //everybody not parked is behind the head and will need credits again
+            waiting |= !cursor.parked;
+        }
+        if (!waiting)
+            cancelTimer();
+    }
+
+    private void startTimer() {
+        if (timerId == -1)
+            timerId = vertx.setPeriodic(ROUND_INTERVAL_MS, id -> tick());
+    }
+
+    private void cancelTimer() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+}
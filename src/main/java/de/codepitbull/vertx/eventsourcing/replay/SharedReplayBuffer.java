@@ -0,0 +1,140 @@
+package de.codepitbull.vertx.eventsourcing.replay;
+
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import io.vertx.core.Handler;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * A read-ahead cursor shared by all spectators of a game.
+ * <p>
+ * Events are read once from the {@link EventStore} into a bounded ring buffer covering the offsets [low, high].
+ * Spectators whose next event lies within the window (or directly after it) are attached and served from the buffer.
+ * The cursor only reads ahead when an attached spectator is waiting for the event after the window, the oldest event
+ * is dropped once the buffer is full. Spectators falling behind the window have to use a private cursor.
+ *
+ * @author Jochen Mader
+ */
+class SharedReplayBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedReplayBuffer.class);
+
+    /** spectator id used for the consumer reading ahead, spectator ids handed out by the verticle are positive */
+    static final Integer SHARED_CURSOR_ID = Integer.MIN_VALUE;
+
+    private final Vertx vertx;
+    private final EventStore eventStore;
+    private final RoundUpdate[] ring;
+    private final Handler<ReplayCursor> wakeUpHandler;
+
+    private long low = 0;
+    private long high = -1;
+    private boolean consumerRunning;
+    private boolean reading;
+    private int attached;
+    private List<ReplayCursor> waiting = new ArrayList<>();
+
+    SharedReplayBuffer(Vertx vertx, EventStore eventStore, int capacity, Handler<ReplayCursor> wakeUpHandler) {
+        isTrue(capacity > 0, "Capacity must be positive");
+        this.vertx = vertx;
+        this.eventStore = eventStore;
+        this.ring = new RoundUpdate[capacity];
+        this.wakeUpHandler = wakeUpHandler;
+    }
+
+    /**
+     * Tries to attach the cursor. If nobody is attached the window is moved to the position of the cursor.
+     * @return true if the cursor is now served by this buffer
+     */
+    boolean attach(ReplayCursor cursor) {
+        long next = cursor.position + 1;
+        if (attached == 0 && !reading && (!consumerRunning || !inWindow(next)))
+            reset(cursor.position);
+        if (!inWindow(next))
+            return false;
+        attached++;
+        cursor.shared = true;
+        return true;
+    }
+
+    void detach(ReplayCursor cursor) {
+        if (!cursor.shared)
+            return;
+        cursor.shared = false;
+        attached--;
+        if (waiting.remove(cursor))
+            cursor.waitingForBuffer = false;
+    }
+
+    /**
+     * @return the event with the given offset, null if it is not (or no longer) buffered
+     */
+    RoundUpdate get(long offset) {
+        if (offset < low || offset > high)
+            return null;
+        return ring[(int) (offset % ring.length)];
+    }
+
+    boolean behindWindow(long offset) {
+        return offset < low;
+    }
+
+    /**
+     * Registers the cursor for being woken up once the event following the window has been read.
+     */
+    void await(ReplayCursor cursor) {
+        if (!cursor.waitingForBuffer) {
+            cursor.waitingForBuffer = true;
+            waiting.add(cursor);
+        }
+        readAhead();
+    }
+
+    void close() {
+        if (consumerRunning)
+            eventStore.stopConsumerForSpectatorId(SHARED_CURSOR_ID);
+        consumerRunning = false;
+    }
+
+    private boolean inWindow(long offset) {
+        return offset >= low && offset <= high + 1;
+    }
+
+    private void readAhead() {
+        if (reading || high >= eventStore.headOffset())
+            return;
+        reading = true;
+        eventStore.getNextEvent(SHARED_CURSOR_ID, result -> {
+            reading = false;
+            if (result.failed()) {
+                LOG.error("Shared cursor failed to read event " + (high + 1), result.cause());
+                vertx.setTimer(ReplayScheduler.ROUND_INTERVAL_MS, id -> readAhead());
+                return;
+            }
+            high++;
+            ring[(int) (high % ring.length)] = result.result();
+            if (high - low >= ring.length)
+                low++;
+            List<ReplayCursor> wakeUp = waiting;
+            waiting = new ArrayList<>();
+            wakeUp.forEach(cursor -> {
+                cursor.waitingForBuffer = false;
+                wakeUpHandler.handle(cursor);
+            });
+        });
+    }
+
+    private void reset(long position) {
+        close();
+        eventStore.startConsumerForSpectatorIdWithStartOffset(SHARED_CURSOR_ID, (int) position);
+        consumerRunning = true;
+        low = position + 1;
+        high = position;
+    }
+}
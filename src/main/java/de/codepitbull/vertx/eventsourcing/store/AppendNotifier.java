@@ -0,0 +1,49 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import io.vertx.core.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of everybody waiting for new events in an {@link EventStore} and notifies them once events got appended.
+ * Each registered handler is called exactly once.
+ *
+ * @author Jochen Mader
+ */
+public class AppendNotifier {
+
+    private List<Handler<Long>> waiting = new ArrayList<>();
+
+    /**
+     * Calls the handler as soon as the head of the log is beyond the given offset.
+     * @param offset the last offset the caller already knows about
+     * @param headOffset the current head of the log
+     * @param handler called with the new head offset
+     */
+    public void await(long offset, long headOffset, Handler<Long> handler) {
+        if (headOffset > offset)
+            handler.handle(headOffset);
+        else
+            waiting.add(handler);
+    }
+
+    /**
+     * Removes a handler that hasn't been called yet, the caller is no longer interested in new events.
+     */
+    public void cancel(Handler<Long> handler) {
+        waiting.removeIf(waiter -> waiter == handler);
+    }
+
+    /**
+     * Has to be called by the store after events have been appended.
+     * @param headOffset offset of the newest event
+     */
+    public void appended(long headOffset) {
+        if (waiting.isEmpty())
+            return;
+        List<Handler<Long>> notify = waiting;
+        waiting = new ArrayList<>();
+        notify.forEach(handler -> handler.handle(headOffset));
+    }
+}
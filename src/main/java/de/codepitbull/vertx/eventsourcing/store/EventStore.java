@@ -1,28 +1,84 @@
 package de.codepitbull.vertx.eventsourcing.store;
 
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
-import io.vertx.rxjava.core.Future;
-import io.vertx.rxjava.core.eventbus.Message;
-import scala.Int;
 
-import java.util.Optional;
+import java.util.List;
 
 /**
  * A basic event store abstraction. Each method has to be implemented so that it doesn't block.
  */
 public interface EventStore {
 
-    void storeEvent(JsonObject event, Handler<AsyncResult<Void>> resultHandler);
+    void storeEvent(RoundUpdate event, Handler<AsyncResult<Void>> resultHandler);
 
-    void storeSnapshot(JsonObject event, Handler<AsyncResult<Void>> resultHandler);
+    /**
+     * Stores all given events as one batch. The handler is called once, after the whole batch has been written.
+     */
+    void storeEvents(List<RoundUpdate> events, Handler<AsyncResult<Void>> resultHandler);
 
-    void loadSnapshot(int index, Handler<AsyncResult<JsonObject>> resultHandler);
+    /**
+     * The handler receives the number of bytes written for the snapshot, 0 if the store keeps it as an object.
+     */
+    void storeSnapshot(Game snapshot, Handler<AsyncResult<Integer>> resultHandler);
 
-    void getNextEvent(Integer spectatorId, Handler<AsyncResult<JsonObject>> resultHandler);
+    /**
+     * Loads the snapshot with the given index as a full game, even if it has been stored as a delta.
+     */
+    void loadSnapshot(int index, Handler<AsyncResult<Game>> resultHandler);
+
+    /**
+     * Loads the newest snapshot taken at or before the given round as a full game.
+     */
+    void loadSnapshotAtRound(int roundId, Handler<AsyncResult<Game>> resultHandler);
+
+    /**
+     * Loads the newest snapshot stored at or before the given time (millis since the epoch) as a full game.
+     */
+    void loadSnapshotAtTime(long timestamp, Handler<AsyncResult<Game>> resultHandler);
+
+    /**
+     * @return offset of the first update of a round after the given one, {@link #headOffset()} + 1 if there is none yet
+     */
+    long offsetAfterRound(int roundId);
+
+    /**
+     * Reads up to maxEvents stored events starting with the given offset, in order. Stores decode the batch off the
+     * event loop where reading may take a while. Fails if the offset has been compacted or isn't stored yet.
+     */
+    void readEvents(long fromOffset, int maxEvents, Handler<AsyncResult<List<RoundUpdate>>> resultHandler);
+
+    void getNextEvent(Integer spectatorId, Handler<AsyncResult<RoundUpdate>> resultHandler);
 
     void startConsumerForSpectatorIdWithStartOffset(Integer spectatorId, Integer startOffset);
 
     void stopConsumerForSpectatorId(Integer spectatorId);
+
+    /**
+     * @return offset of the newest stored event, -1 if there is none
+     */
+    long headOffset();
+
+    /**
+     * Calls the handler once, as soon as an event with an offset greater than the given one has been stored.
+     */
+    void awaitEvent(long offset, Handler<Long> handler);
+
+    /**
+     * Removes a handler passed to {@link #awaitEvent(long, Handler)} that hasn't been called yet.
+     */
+    void cancelAwait(Handler<Long> handler);
+
+    /**
+     * Evicts all snapshots not retained by the given policy and drops the updates older than the oldest retained
+     * snapshot. Spectators still reading dropped updates fail to get their next event.
+     */
+    void applyRetention(SnapshotRetention retention);
+
+    /**
+     * Releases all resources held by this store.
+     */
+    void close();
 }
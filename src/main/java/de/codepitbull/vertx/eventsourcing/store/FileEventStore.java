@@ -0,0 +1,335 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.Vertx;
+import org.apache.commons.lang3.mutable.MutableLong;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.notEmpty;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * A durable event store writing updates and snapshots of a game to {@link SegmentedLog}s on the local disk.
+ * <p>
+ * Events are stored in the binary layout of {@link EventCodecs}, snapshots prefixed with the time they were stored.
+ * Appending is a copy into a memory-mapped segment so it survives a crash of the JVM. If fsync is enabled the reply
+ * is only sent after the segment has been forced to disk on a worker thread.
+ * <p>
+ * A game must only have one writer, even if its directory is shared by several nodes for failover. The store holds an
+ * exclusive lock on a file in the directory of the game while it is open, opening it a second time fails until the
+ * lock has been released. This relies on the file system honouring {@link FileChannel#tryLock()}.
+ */
+public class FileEventStore implements EventStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileEventStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final String LOCK_FILE = "lock";
+
+    private Vertx vertx;
+    private SegmentedLog updates;
+    private SegmentedLog snapshots;
+    private SnapshotIndex snapshotIndex = new SnapshotIndex();
+    private boolean fsync;
+    private Map<Integer, MutableLong> spectatorIdToOffsetMap = new HashMap<>();
+    private AppendNotifier appendNotifier = new AppendNotifier();
+    private long headOffset;
+    private FileChannel lockChannel;
+
+    /**
+     * @throws IOException also if the store is already opened by another writer
+     */
+    public FileEventStore(Vertx vertx, String gameId, String storeDir, Integer segmentSize, boolean fsync) throws IOException {
+        this.vertx = notNull(vertx, "vertx must be set");
+        notEmpty(gameId, "gameId must be set");
+        notEmpty(storeDir, "store_dir not set");
+        File gameDir = new File(storeDir, gameId);
+        int size = segmentSize != null ? segmentSize : DEFAULT_SEGMENT_SIZE;
+        lock(gameDir);
+        try {
+            updates = new SegmentedLog(new File(gameDir, "updates"), size);
+            snapshots = new SegmentedLog(new File(gameDir, "snapshots"), size);
+            for (long offset = snapshots.firstOffset(); offset < snapshots.nextOffset(); offset++) {
+                Buffer record = Buffer.buffer(snapshots.read(offset));
+                Game snapshot = decodeSnapshot(record);
+                snapshotIndex.add((int) offset, snapshot.getRoundId(), record.getLong(0), !snapshot.isDelta(), null);
+            }
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        this.fsync = fsync;
+        headOffset = updates.nextOffset() - 1;
+        LOG.info("Opened " + gameDir + " with " + updates.nextOffset() + " updates and " + snapshots.nextOffset() + " snapshots");
+    }
+
+    private void lock(File gameDir) throws IOException {
+        if (!gameDir.isDirectory() && !gameDir.mkdirs())
+            throw new IOException("Unable to create " + gameDir);
+        lockChannel = FileChannel.open(new File(gameDir, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            //held by this JVM
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Event store " + gameDir + " is locked by another writer");
+        }
+    }
+
+    @Override
+    public void storeEvent(RoundUpdate event, Handler<AsyncResult<Void>> resultHandler) {
+        append(updates, event.toBuffer(), resultHandler);
+    }
+
+    @Override
+    public void storeEvents(List<RoundUpdate> events, Handler<AsyncResult<Void>> resultHandler) {
+        try {
+            for (RoundUpdate event : events)
+                updates.append(event.toBuffer().getByteBuf().nioBuffer());
+        } catch (IOException | RuntimeException e) {
+            resultHandler.handle(Future.failedFuture(e));
+            return;
+        }
+        sync(updates, resultHandler);
+    }
+
+    @Override
+    public void storeSnapshot(Game snapshot, Handler<AsyncResult<Integer>> resultHandler) {
+        long now = System.currentTimeMillis();
+        byte[] record = Buffer.buffer().appendLong(now).appendBuffer(EventCodecs.encode(snapshot)).getBytes();
+        try {
+            long offset = snapshots.append(record);
+            snapshotIndex.add((int) offset, snapshot.getRoundId(), now, !snapshot.isDelta(), null);
+        } catch (IOException | RuntimeException e) {
+            resultHandler.handle(Future.failedFuture(e));
+            return;
+        }
+        sync(snapshots, result -> resultHandler.handle(result.succeeded() ? Future.succeededFuture(record.length)
+                : Future.failedFuture(result.cause())));
+    }
+
+    @Override
+    public void loadSnapshot(int index, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshotIndex.load(index, this::readSnapshot);
+        if (snapshot != null)
+            resultHandler.handle(Future.succeededFuture(snapshot));
+        else
+            resultHandler.handle(Future.failedFuture("No snapshot with index " + index));
+    }
+
+    @Override
+    public void loadSnapshotAtRound(int roundId, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshotIndex.loadAt(snapshotIndex.positionAtRound(roundId), this::readSnapshot);
+        if (snapshot != null)
+            resultHandler.handle(Future.succeededFuture(snapshot));
+        else
+            resultHandler.handle(Future.failedFuture("No snapshot at round " + roundId));
+    }
+
+    @Override
+    public void loadSnapshotAtTime(long timestamp, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshotIndex.loadAt(snapshotIndex.positionAtTime(timestamp), this::readSnapshot);
+        if (snapshot != null)
+            resultHandler.handle(Future.succeededFuture(snapshot));
+        else
+            resultHandler.handle(Future.failedFuture("No snapshot at time " + timestamp));
+    }
+
+    /**
+     * Binary search over the update log, reading the round of log2(n) updates.
+     */
+    @Override
+    public long offsetAfterRound(int roundId) {
+        long low = updates.firstOffset();
+        long high = headOffset + 1;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (EventCodecs.roundIdOf(Buffer.buffer(updates.read(mid))) <= roundId)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * The records are copied out of the log on the event loop, as the log is appended to and compacted there, and
+     * decoded on a worker, so reads of several games run in parallel.
+     */
+    @Override
+    public void readEvents(long fromOffset, int maxEvents, Handler<AsyncResult<List<RoundUpdate>>> resultHandler) {
+        if (fromOffset < updates.firstOffset()) {
+            resultHandler.handle(Future.failedFuture("Event " + fromOffset + " has been compacted"));
+            return;
+        }
+        if (fromOffset > headOffset) {
+            resultHandler.handle(Future.failedFuture("No event with offset " + fromOffset));
+            return;
+        }
+        long toOffset = Math.min(headOffset, fromOffset + maxEvents - 1);
+        List<byte[]> records = new ArrayList<>((int) (toOffset - fromOffset + 1));
+        for (long offset = fromOffset; offset <= toOffset; offset++)
+            records.add(updates.read(offset));
+        vertx.<List<RoundUpdate>>executeBlocking(exe -> {
+            List<RoundUpdate> events = new ArrayList<>(records.size());
+            for (byte[] record : records)
+                events.add(EventCodecs.decodeRoundUpdate(Buffer.buffer(record)));
+            exe.complete(events);
+        }, false, resultHandler);
+    }
+
+    @Override
+    public void getNextEvent(Integer spectatorId, Handler<AsyncResult<RoundUpdate>> resultHandler) {
+        MutableLong offset = spectatorIdToOffsetMap.get(spectatorId);
+        if (offset == null)
+            resultHandler.handle(Future.failedFuture("No spectator with id " + spectatorId + " registered"));
+        else if (offset.longValue() >= headOffset)
+            resultHandler.handle(Future.failedFuture("No event after offset " + offset + " for spectator " + spectatorId));
+        else if (offset.longValue() + 1 < updates.firstOffset())
+            resultHandler.handle(Future.failedFuture("Event " + (offset.longValue() + 1) + " has been compacted"));
+        else {
+            offset.increment();
+            resultHandler.handle(Future.succeededFuture(EventCodecs.decodeRoundUpdate(Buffer.buffer(updates.read(offset.longValue())))));
+        }
+    }
+
+    @Override
+    public void startConsumerForSpectatorIdWithStartOffset(Integer spectatorId, Integer startOffset) {
+        stopConsumerForSpectatorId(spectatorId);
+        spectatorIdToOffsetMap.put(spectatorId, new MutableLong(startOffset));
+    }
+
+    @Override
+    public void stopConsumerForSpectatorId(Integer spectatorId) {
+        spectatorIdToOffsetMap.remove(spectatorId);
+    }
+
+    @Override
+    public long headOffset() {
+        return headOffset;
+    }
+
+    @Override
+    public void awaitEvent(long offset, Handler<Long> handler) {
+        appendNotifier.await(offset, headOffset, handler);
+    }
+
+    @Override
+    public void cancelAwait(Handler<Long> handler) {
+        appendNotifier.cancel(handler);
+    }
+
+    /**
+     * Only whole segments are deleted, so some records older than the oldest retained snapshot may stay on disk.
+     * Segments are removed from the logs right away, their files are deleted on a worker.
+     */
+    @Override
+    public void applyRetention(SnapshotRetention retention) {
+        snapshotIndex.retain(retention, System.currentTimeMillis());
+        if (snapshotIndex.size() == 0)
+            return;
+        Closeable snapshotSegments = snapshots.detachBefore(snapshotIndex.index(0));
+        Closeable updateSegments = updates.detachBefore(offsetAfterRound(snapshotIndex.round(0)));
+        vertx.<Void>executeBlocking(exe -> {
+            try {
+                snapshotSegments.close();
+                updateSegments.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            exe.complete();
+        }, result -> {
+            if (result.failed())
+                LOG.error("Failed compacting event store", result.cause());
+        });
+    }
+
+    @Override
+    public void close() {
+        try {
+            updates.force();
+            snapshots.force();
+            updates.close();
+            snapshots.close();
+        } catch (IOException e) {
+            LOG.error("Failed closing event store", e);
+        } finally {
+            try {
+                //releases the lock
+                lockChannel.close();
+            } catch (IOException e) {
+                LOG.error("Failed releasing the lock of the event store", e);
+            }
+        }
+    }
+
+    private Game readSnapshot(int index) {
+        return decodeSnapshot(Buffer.buffer(snapshots.read(index)));
+    }
+
+    private static Game decodeSnapshot(Buffer record) {
+        return EventCodecs.decodeGame(record.slice(8, record.length()));
+    }
+
+    private void append(SegmentedLog log, Buffer record, Handler<AsyncResult<Void>> resultHandler) {
+        try {
+            log.append(record.getByteBuf().nioBuffer());
+        } catch (IOException | RuntimeException e) {
+            resultHandler.handle(Future.failedFuture(e));
+            return;
+        }
+        sync(log, resultHandler);
+    }
+
+    private void sync(SegmentedLog log, Handler<AsyncResult<Void>> resultHandler) {
+        long written = log.nextOffset() - 1;
+        if (fsync)
+            vertx.<Void>executeBlocking(exe -> {
+                log.force();
+                exe.complete();
+            }, result -> {
+                resultHandler.handle(result);
+                if (result.succeeded())
+                    published(log, written);
+            });
+        else {
+            resultHandler.handle(Future.succeededFuture());
+            published(log, written);
+        }
+    }
+
+    /**
+     * Updates become visible to spectators once they are durable.
+     */
+    private void published(SegmentedLog log, long written) {
+        if (log == updates && written > headOffset) {
+            headOffset = written;
+            appendNotifier.appended(headOffset);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Wraps another {@link EventStore} and coalesces calls to {@link #storeEvent(RoundUpdate, Handler)}.
+ * <p>
+ * Pending events are written as one batch via {@link EventStore#storeEvents(List, Handler)} as soon as either the
+ * commit window elapsed or the maximum batch size is reached. All pending result handlers are completed with the
+ * result of the batch. Everything else is passed through to the wrapped store.
+ *
+ * @author Jochen Mader
+ */
+public class GroupCommitEventStore implements EventStore {
+
+    private final Vertx vertx;
+    private final EventStore delegate;
+    private final long windowMs;
+    private final int maxEvents;
+
+    private List<RoundUpdate> pendingEvents = new ArrayList<>();
+    private List<Handler<AsyncResult<Void>>> pendingHandlers = new ArrayList<>();
+    private long timerId = -1;
+
+    public GroupCommitEventStore(Vertx vertx, EventStore delegate, long windowMs, int maxEvents) {
+        isTrue(windowMs > 0, "Commit window must be positive");
+        isTrue(maxEvents > 0, "Max events must be positive");
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.delegate = notNull(delegate, "Delegate must not be null");
+        this.windowMs = windowMs;
+        this.maxEvents = maxEvents;
+    }
+
+    @Override
+    public void storeEvent(RoundUpdate event, Handler<AsyncResult<Void>> resultHandler) {
+        pendingEvents.add(event);
+        pendingHandlers.add(resultHandler);
+        if (pendingEvents.size() >= maxEvents)
+            flush();
+        else if (timerId == -1)
+            timerId = vertx.setTimer(windowMs, id -> {
+                timerId = -1;
+                flush();
+            });
+    }
+
+    @Override
+    public void storeEvents(List<RoundUpdate> events, Handler<AsyncResult<Void>> resultHandler) {
+        flush();
+        delegate.storeEvents(events, resultHandler);
+    }
+
+    @Override
+    public void storeSnapshot(Game snapshot, Handler<AsyncResult<Integer>> resultHandler) {
+        delegate.storeSnapshot(snapshot, resultHandler);
+    }
+
+    @Override
+    public void loadSnapshot(int index, Handler<AsyncResult<Game>> resultHandler) {
+        delegate.loadSnapshot(index, resultHandler);
+    }
+
+    @Override
+    public void loadSnapshotAtRound(int roundId, Handler<AsyncResult<Game>> resultHandler) {
+        delegate.loadSnapshotAtRound(roundId, resultHandler);
+    }
+
+    @Override
+    public void loadSnapshotAtTime(long timestamp, Handler<AsyncResult<Game>> resultHandler) {
+        delegate.loadSnapshotAtTime(timestamp, resultHandler);
+    }
+
+    /**
+     * Pending events are not visible before they have been flushed.
+     */
+    @Override
+    public long offsetAfterRound(int roundId) {
+        return delegate.offsetAfterRound(roundId);
+    }
+
+    @Override
+    public void readEvents(long fromOffset, int maxEvents, Handler<AsyncResult<List<RoundUpdate>>> resultHandler) {
+        delegate.readEvents(fromOffset, maxEvents, resultHandler);
+    }
+
+    @Override
+    public void getNextEvent(Integer spectatorId, Handler<AsyncResult<RoundUpdate>> resultHandler) {
+        delegate.getNextEvent(spectatorId, resultHandler);
+    }
+
+    @Override
+    public void startConsumerForSpectatorIdWithStartOffset(Integer spectatorId, Integer startOffset) {
+        delegate.startConsumerForSpectatorIdWithStartOffset(spectatorId, startOffset);
+    }
+
+    @Override
+    public void stopConsumerForSpectatorId(Integer spectatorId) {
+        delegate.stopConsumerForSpectatorId(spectatorId);
+    }
+
+    @Override
+    public long headOffset() {
+        return delegate.headOffset();
+    }
+
+    @Override
+    public void awaitEvent(long offset, Handler<Long> handler) {
+        delegate.awaitEvent(offset, handler);
+    }
+
+    @Override
+    public void cancelAwait(Handler<Long> handler) {
+        delegate.cancelAwait(handler);
+    }
+
+    @Override
+    public void applyRetention(SnapshotRetention retention) {
+        delegate.applyRetention(retention);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        delegate.close();
+    }
+
+    /**
+     * Writes all pending events as one batch.
+     */
+    public void flush() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        if (pendingEvents.isEmpty())
+            return;
+        List<Handler<AsyncResult<Void>>> handlers = pendingHandlers;
+        List<RoundUpdate> batch = pendingEvents;
+        pendingEvents = new ArrayList<>(maxEvents);
+        pendingHandlers = new ArrayList<>(maxEvents);
+        delegate.storeEvents(batch, result -> handlers.forEach(handler -> handler.handle(result)));
+    }
+}
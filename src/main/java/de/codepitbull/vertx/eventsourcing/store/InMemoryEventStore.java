@@ -1,8 +1,9 @@
 package de.codepitbull.vertx.eventsourcing.store;
 
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
 import org.apache.commons.lang3.mutable.MutableInt;
 
 import java.util.ArrayList;
@@ -18,36 +19,98 @@ import static io.vertx.core.Future.succeededFuture;
  */
 public class InMemoryEventStore implements EventStore {
 
-    private List<JsonObject> snapshots = new ArrayList<>();
-    private List<JsonObject> updates = new ArrayList<>();
+    private SnapshotIndex snapshots = new SnapshotIndex();
+    private List<RoundUpdate> updates = new ArrayList<>();
+    private long firstOffset;
     private Map<Integer, MutableInt> spectatorIdToIndexMap = new HashMap<>();
+    private AppendNotifier appendNotifier = new AppendNotifier();
 
 
     @Override
-    public void storeEvent(JsonObject event, Handler<AsyncResult<Void>> resultHandler) {
+    public void storeEvent(RoundUpdate event, Handler<AsyncResult<Void>> resultHandler) {
         updates.add(event);
         resultHandler.handle(succeededFuture());
+        appendNotifier.appended(headOffset());
     }
 
     @Override
-    public void storeSnapshot(JsonObject event, Handler<AsyncResult<Void>> resultHandler) {
-        snapshots.add(event);
+    public void storeEvents(List<RoundUpdate> events, Handler<AsyncResult<Void>> resultHandler) {
+        updates.addAll(events);
         resultHandler.handle(succeededFuture());
+        appendNotifier.appended(headOffset());
     }
 
     @Override
-    public void loadSnapshot(int index, Handler<AsyncResult<JsonObject>> resultHandler) {
-        if (index < snapshots.size())
-            resultHandler.handle(succeededFuture(snapshots.get(index)));
+    public void storeSnapshot(Game snapshot, Handler<AsyncResult<Integer>> resultHandler) {
+        snapshots.add(snapshot.copy(), System.currentTimeMillis(), true);
+        resultHandler.handle(succeededFuture(0));
+    }
+
+    @Override
+    public void loadSnapshot(int index, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshots.load(index, snapshots::payload);
+        if (snapshot != null)
+            resultHandler.handle(succeededFuture(snapshot));
         else
             resultHandler.handle(failedFuture("No Snapshot " + index));
     }
 
     @Override
-    public void getNextEvent(Integer spectatorId, Handler<AsyncResult<JsonObject>> resultHandler) {
+    public void loadSnapshotAtRound(int roundId, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshots.loadAt(snapshots.positionAtRound(roundId), snapshots::payload);
+        if (snapshot != null)
+            resultHandler.handle(succeededFuture(snapshot));
+        else
+            resultHandler.handle(failedFuture("No Snapshot at round " + roundId));
+    }
+
+    @Override
+    public void loadSnapshotAtTime(long timestamp, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshots.loadAt(snapshots.positionAtTime(timestamp), snapshots::payload);
+        if (snapshot != null)
+            resultHandler.handle(succeededFuture(snapshot));
+        else
+            resultHandler.handle(failedFuture("No Snapshot at time " + timestamp));
+    }
+
+    @Override
+    public long offsetAfterRound(int roundId) {
+        int low = 0;
+        int high = updates.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (updates.get(mid).getRoundId() <= roundId)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return firstOffset + low;
+    }
+
+    @Override
+    public void readEvents(long fromOffset, int maxEvents, Handler<AsyncResult<List<RoundUpdate>>> resultHandler) {
+        if (fromOffset < firstOffset)
+            resultHandler.handle(failedFuture("Event " + fromOffset + " has been compacted"));
+        else if (fromOffset > headOffset())
+            resultHandler.handle(failedFuture("No event with offset " + fromOffset));
+        else {
+            int from = (int) (fromOffset - firstOffset);
+            resultHandler.handle(succeededFuture(new ArrayList<>(updates.subList(from, Math.min(updates.size(), from + maxEvents)))));
+        }
+    }
+
+    @Override
+    public void getNextEvent(Integer spectatorId, Handler<AsyncResult<RoundUpdate>> resultHandler) {
         if (spectatorIdToIndexMap.containsKey(spectatorId)) {
-            spectatorIdToIndexMap.get(spectatorId).increment();
-            resultHandler.handle(succeededFuture(updates.get(spectatorIdToIndexMap.get(spectatorId).getValue())));
+            MutableInt index = spectatorIdToIndexMap.get(spectatorId);
+            if (index.intValue() >= headOffset())
+                resultHandler.handle(failedFuture("No event after index " + index + " for spectator " + spectatorId));
+            else if (index.intValue() + 1 < firstOffset)
+                resultHandler.handle(failedFuture("Event " + (index.intValue() + 1) + " has been compacted"));
+            else {
+                index.increment();
+                resultHandler.handle(succeededFuture(updates.get((int) (index.intValue() - firstOffset))));
+            }
         } else
             resultHandler.handle(failedFuture("No spectator with id " + spectatorId + " registered"));
     }
@@ -63,4 +126,36 @@ public class InMemoryEventStore implements EventStore {
         spectatorIdToIndexMap.remove(spectatorId);
     }
 
+    @Override
+    public long headOffset() {
+        return firstOffset + updates.size() - 1;
+    }
+
+    @Override
+    public void awaitEvent(long offset, Handler<Long> handler) {
+        appendNotifier.await(offset, headOffset(), handler);
+    }
+
+    @Override
+    public void cancelAwait(Handler<Long> handler) {
+        appendNotifier.cancel(handler);
+    }
+
+    @Override
+    public void applyRetention(SnapshotRetention retention) {
+        snapshots.retain(retention, System.currentTimeMillis());
+        if (snapshots.size() > 0) {
+            long compactBelow = Math.min(snapshots.round(0), headOffset() + 1);
+            if (compactBelow > firstOffset) {
+                updates.subList(0, (int) (compactBelow - firstOffset)).clear();
+                firstOffset = compactBelow;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        spectatorIdToIndexMap.clear();
+    }
+
 }
@@ -1,94 +1,287 @@
 package de.codepitbull.vertx.eventsourcing.store;
 
-import de.codeptibull.vertx.kafka.simple.KafkaSimpleConsumer;
-import de.codeptibull.vertx.kafka.simple.SimpleConsumerProperties;
-import de.codeptibull.vertx.kafka.writer.KafkaWriter;
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
 import io.vertx.rxjava.core.Context;
 import io.vertx.rxjava.core.Vertx;
-import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
 
 /**
- * A Kafka based event store.
+ * A Kafka based event store. Events are written in the binary layout of {@link EventCodecs}.
+ * <p>
+ * Events are read through a {@link KafkaPrefetchReader} on the {@link KafkaFetchPool} shared by all stores, every
+ * spectator gets a cursor buffering the message set last fetched.
+ * <p>
+ * By default every game gets a topic of its own, named by its id. Given a shared topic, all games are written to its
+ * partitions instead, keyed and partitioned by their id, so the number of topics doesn't grow with the number of
+ * games. The events of a game are found through a {@link KafkaOffsetIndex} built from the acknowledged writes, so
+ * only events written through this instance can be read, even from a topic of its own. Stores on a shared topic are
+ * created with {@link #open(Vertx, String, String, Integer, int, int, String, Handler)}, which looks up the partitions
+ * of the topic on a worker.
  */
 public class KafkaEventStore implements EventStore{
 
-    private KafkaWriter writer;
-    private List<JsonObject> snapshots = new ArrayList<>();
-    private Map<Integer, KafkaSimpleConsumer> spectatorIdToConsumerMap = new HashMap<>();
-    private StringDeserializer stringDeserializer = new StringDeserializer();
+    private KafkaProducer<byte[], byte[]> producer;
+    private SnapshotIndex snapshots = new SnapshotIndex();
+    private Map<Integer, KafkaPrefetchReader.Cursor> spectatorIdToCursorMap = new HashMap<>();
     private String gameId;
     private Vertx vertx;
-    private String kafkaHost;
-    private Integer kafkaPort;
+    private KafkaFetchPool fetchPool;
+    private KafkaPrefetchReader reader;
+    private String topic;
+    private int partition;
+    private byte[] key;
+    private KafkaOffsetIndex offsetIndex = new KafkaOffsetIndex();
+    private long headOffset = -1;
+    private AppendNotifier appendNotifier = new AppendNotifier();
 
     public KafkaEventStore(Vertx vertx, String gameId, String kafkaHost, Integer kafkaPort) {
-        this.kafkaHost = notEmpty(kafkaHost, "kafka_host not set");
-        this.kafkaPort = notNull(kafkaPort, "kafka_host not set");
+        this(vertx, gameId, kafkaHost, kafkaPort, KafkaPrefetchReader.DEFAULT_FETCH_SIZE, KafkaFetchPool.DEFAULT_THREADS);
+    }
+
+    /**
+     * A store writing to a topic of its own.
+     * @param fetchSize    max number of bytes fetched per request
+     * @param fetchThreads size of the {@link KafkaFetchPool}, only used if there is none yet
+     */
+    public KafkaEventStore(Vertx vertx, String gameId, String kafkaHost, Integer kafkaPort, int fetchSize, int fetchThreads) {
+        this(vertx, gameId, kafkaHost, kafkaPort, fetchSize, fetchThreads, createProducer(kafkaHost, kafkaPort), null, 0);
+    }
+
+    private KafkaEventStore(Vertx vertx, String gameId, String kafkaHost, Integer kafkaPort, int fetchSize,
+                            int fetchThreads, KafkaProducer<byte[], byte[]> producer, String sharedTopic, int partition) {
         this.gameId = notEmpty(gameId, "gameId must be set");
-        writer = new KafkaWriter(kafkaHost+":"+kafkaPort);
-        this.vertx = vertx;
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.producer = producer;
+        this.partition = partition;
+        if (sharedTopic != null) {
+            topic = sharedTopic;
+            key = gameId.getBytes(StandardCharsets.UTF_8);
+        } else
+            topic = gameId;
+        fetchPool = KafkaFetchPool.acquire(vertx, fetchThreads);
+        reader = new KafkaPrefetchReader(vertx, fetchPool.executor(), kafkaHost, kafkaPort, topic, partition, fetchSize,
+                offsetIndex);
+    }
+
+    /**
+     * Creates a store, on a shared topic the producer waits for the metadata of the topic on a worker to find the
+     * partition of the game.
+     * @param sharedTopic topic shared by all games, null for a topic per game
+     */
+    public static void open(Vertx vertx, String gameId, String kafkaHost, Integer kafkaPort, int fetchSize, int fetchThreads,
+                            String sharedTopic, Handler<AsyncResult<KafkaEventStore>> resultHandler) {
+        notNull(vertx, "vertx must be set");
+        notEmpty(gameId, "gameId must be set");
+        if (sharedTopic == null) {
+            resultHandler.handle(Future.succeededFuture(new KafkaEventStore(vertx, gameId, kafkaHost, kafkaPort, fetchSize,
+                    fetchThreads)));
+            return;
+        }
+        vertx.<KafkaEventStore>executeBlocking(exe -> {
+            KafkaProducer<byte[], byte[]> producer = createProducer(kafkaHost, kafkaPort);
+            try {
+                int partition = partitionFor(gameId, producer.partitionsFor(sharedTopic).size());
+                exe.complete(new KafkaEventStore(vertx, gameId, kafkaHost, kafkaPort, fetchSize, fetchThreads, producer,
+                        sharedTopic, partition));
+            } catch (RuntimeException e) {
+                producer.close();
+                throw e;
+            }
+        }, false, resultHandler);
+    }
+
+    private static KafkaProducer<byte[], byte[]> createProducer(String kafkaHost, Integer kafkaPort) {
+        notEmpty(kafkaHost, "kafka_host not set");
+        notNull(kafkaPort, "kafka_port not set");
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaHost + ":" + kafkaPort);
+        return new KafkaProducer<>(props, new ByteArraySerializer(), new ByteArraySerializer());
+    }
+
+    static int partitionFor(String gameId, int partitions) {
+        return (gameId.hashCode() & Integer.MAX_VALUE) % partitions;
     }
 
     @Override
-    public void storeEvent(JsonObject event, Handler<AsyncResult<Void>> resultHandler) {
+    public void storeEvent(RoundUpdate event, Handler<AsyncResult<Void>> resultHandler) {
         Context ctx = vertx.getOrCreateContext();
-        writer.write(gameId, event.toString(),
-                succ ->
-                    ctx.runOnContext(v -> resultHandler.handle(Future.<Void>succeededFuture())),
-                fail ->
-                    ctx.runOnContext(v -> resultHandler.handle(Future.<Void>failedFuture(fail))));
-    };
+        producer.send(record(event), (metadata, fail) ->
+                ctx.runOnContext(v -> {
+                    if (fail != null)
+                        resultHandler.handle(Future.<Void>failedFuture(fail));
+                    else {
+                        acknowledged(metadata, event);
+                        resultHandler.handle(Future.<Void>succeededFuture());
+                    }
+                }));
+    }
 
     @Override
-    public void storeSnapshot(JsonObject event, Handler<AsyncResult<Void>> resultHandler) {
-        snapshots.add(event);
-        resultHandler.handle(Future.<Void>succeededFuture());
+    public void storeEvents(List<RoundUpdate> events, Handler<AsyncResult<Void>> resultHandler) {
+        if(events.isEmpty()) {
+            resultHandler.handle(Future.<Void>succeededFuture());
+            return;
+        }
+        Context ctx = vertx.getOrCreateContext();
+        MutableInt outstanding = new MutableInt(events.size());
+        MutableObject<Throwable> failure = new MutableObject<>();
+        //the producer batches the writes, the handler is called once all of them have been acknowledged or failed.
+        //Acknowledged events become visible right away, even if another event of the batch failed
+        events.forEach(event -> producer.send(record(event), (metadata, fail) ->
+                ctx.runOnContext(v -> {
+                    if (fail != null) {
+                        if (failure.getValue() == null)
+                            failure.setValue(fail);
+                    } else
+                        acknowledged(metadata, event);
+                    outstanding.decrement();
+                    if (outstanding.intValue() == 0)
+                        resultHandler.handle(failure.getValue() == null ? Future.<Void>succeededFuture()
+                                : Future.<Void>failedFuture(failure.getValue()));
+                })));
     }
 
     @Override
-    public void loadSnapshot(int index, Handler<AsyncResult<JsonObject>> resultHandler) {
-        if(index<snapshots.size())
-            resultHandler.handle(Future.succeededFuture(snapshots.get(index)));
+    public void storeSnapshot(Game snapshot, Handler<AsyncResult<Integer>> resultHandler) {
+        snapshots.add(snapshot.copy(), System.currentTimeMillis(), true);
+        resultHandler.handle(Future.succeededFuture(0));
+    }
+
+    @Override
+    public void loadSnapshot(int index, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshots.load(index, snapshots::payload);
+        if(snapshot != null)
+            resultHandler.handle(Future.succeededFuture(snapshot));
         else
             resultHandler.handle(Future.failedFuture("No snapshot with index "+index));
     }
 
     @Override
-    public void getNextEvent(Integer spectatorId, Handler<AsyncResult<JsonObject>> resultHandler) {
-        vertx.executeBlocking(
-                exe -> exe.complete(new JsonObject(stringDeserializer.deserialize(null, spectatorIdToConsumerMap.get(spectatorId).fetch().getRight()))),
-                resultHandler);
+    public void loadSnapshotAtRound(int roundId, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshots.loadAt(snapshots.positionAtRound(roundId), snapshots::payload);
+        if(snapshot != null)
+            resultHandler.handle(Future.succeededFuture(snapshot));
+        else
+            resultHandler.handle(Future.failedFuture("No snapshot at round "+roundId));
+    }
+
+    @Override
+    public void loadSnapshotAtTime(long timestamp, Handler<AsyncResult<Game>> resultHandler) {
+        Game snapshot = snapshots.loadAt(snapshots.positionAtTime(timestamp), snapshots::payload);
+        if(snapshot != null)
+            resultHandler.handle(Future.succeededFuture(snapshot));
+        else
+            resultHandler.handle(Future.failedFuture("No snapshot at time "+timestamp));
+    }
+
+    /**
+     * The topic can't be searched without fetching, so the rounds of the acknowledged events are searched instead.
+     */
+    @Override
+    public long offsetAfterRound(int roundId) {
+        return offsetIndex.offsetAfterRound(roundId);
+    }
+
+    /**
+     * The topic can't be read past the events written by this instance since the head isn't known otherwise.
+     */
+    @Override
+    public void readEvents(long fromOffset, int maxEvents, Handler<AsyncResult<List<RoundUpdate>>> resultHandler) {
+        if (fromOffset > headOffset) {
+            resultHandler.handle(Future.failedFuture("No event with offset " + fromOffset));
+            return;
+        }
+        reader.read(fromOffset, (int) Math.min(maxEvents, headOffset - fromOffset + 1), resultHandler);
+    }
+
+    @Override
+    public void getNextEvent(Integer spectatorId, Handler<AsyncResult<RoundUpdate>> resultHandler) {
+        KafkaPrefetchReader.Cursor cursor = spectatorIdToCursorMap.get(spectatorId);
+        if (cursor != null)
+            cursor.next(resultHandler);
+        else
+            resultHandler.handle(Future.failedFuture("No consumer for spectator " + spectatorId));
     }
 
     @Override
     public void startConsumerForSpectatorIdWithStartOffset(Integer spectatorId, Integer startOffset) {
         stopConsumerForSpectatorId(spectatorId);
-        List<String> brokers = new ArrayList<>();
-        brokers.add(kafkaHost);
-        spectatorIdToConsumerMap.put(spectatorId, new KafkaSimpleConsumer(new SimpleConsumerProperties.Builder()
-                .partition(0)
-                .port(kafkaPort)
-                .topic(gameId)
-                .addBrokers(brokers)
-                .offset(startOffset+1)
-                .build()));
+        spectatorIdToCursorMap.put(spectatorId, reader.cursor(startOffset + 1));
     }
 
     @Override
     public void stopConsumerForSpectatorId(Integer spectatorId) {
-        if(spectatorIdToConsumerMap.containsKey(spectatorId))
-            spectatorIdToConsumerMap.remove(spectatorId).close();
+        if(spectatorIdToCursorMap.containsKey(spectatorId))
+            spectatorIdToCursorMap.remove(spectatorId).close();
+    }
+
+    private ProducerRecord<byte[], byte[]> record(RoundUpdate event) {
+        //a topic per game is read from partition 0 only, however many partitions the broker creates topics with
+        return new ProducerRecord<>(topic, partition, key, event.toBuffer().getBytes());
+    }
+
+    /**
+     * The producer acknowledges the writes to a partition in order, so every acknowledged event gets the next offset
+     * and the index and the head always cover the same events. Failed events get no offset at all.
+     */
+    private void acknowledged(RecordMetadata metadata, RoundUpdate event) {
+        offsetIndex.append(metadata.offset(), event.getRoundId());
+        headOffset++;
+        appendNotifier.appended(headOffset);
+    }
+
+    /**
+     * Only events written through this instance are known, offsets start at 0 for a new game.
+     */
+    @Override
+    public long headOffset() {
+        return headOffset;
+    }
+
+    @Override
+    public void awaitEvent(long offset, Handler<Long> handler) {
+        appendNotifier.await(offset, headOffset, handler);
+    }
+
+    @Override
+    public void cancelAwait(Handler<Long> handler) {
+        appendNotifier.cancel(handler);
+    }
+
+    /**
+     * Only snapshots are evicted, the retention of updates is configured on the topic.
+     */
+    @Override
+    public void applyRetention(SnapshotRetention retention) {
+        snapshots.retain(retention, System.currentTimeMillis());
+    }
+
+    @Override
+    public void close() {
+        spectatorIdToCursorMap.values().forEach(KafkaPrefetchReader.Cursor::close);
+        spectatorIdToCursorMap.clear();
+        producer.close();
+        reader.close();
+        fetchPool.release(vertx);
     }
 }
@@ -0,0 +1,70 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * The threads fetching from Kafka, shared by all {@link KafkaEventStore}s of a Vert.x instance. Fetches block until
+ * the broker answers, running them here keeps them from taking the worker pool of Vert.x and bounds the number of
+ * fetches in flight no matter how many games are replayed. The pool is shut down when the last store releases it.
+ *
+ * @author Jochen Mader
+ */
+public class KafkaFetchPool implements Shareable {
+
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final String POOLS_MAP = "kafka.fetch.pools";
+
+    private final ExecutorService executor;
+    private int users;
+
+    private KafkaFetchPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "kafka-fetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param threads only used by the first caller, which creates the pool
+     */
+    public static KafkaFetchPool acquire(Vertx vertx, int threads) {
+        notNull(vertx, "vertx must be set");
+        isTrue(threads > 0, "Number of fetch threads must be positive but was %d", threads);
+        LocalMap<String, KafkaFetchPool> pools = ((io.vertx.core.Vertx) vertx.getDelegate()).sharedData().getLocalMap(POOLS_MAP);
+        synchronized (KafkaFetchPool.class) {
+            KafkaFetchPool pool = pools.get(POOLS_MAP);
+            if (pool == null) {
+                pool = new KafkaFetchPool(threads);
+                pools.put(POOLS_MAP, pool);
+            }
+            pool.users++;
+            return pool;
+        }
+    }
+
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    public void release(Vertx vertx) {
+        LocalMap<String, KafkaFetchPool> pools = ((io.vertx.core.Vertx) vertx.getDelegate()).sharedData().getLocalMap(POOLS_MAP);
+        synchronized (KafkaFetchPool.class) {
+            if (--users == 0) {
+                pools.removeIfPresent(POOLS_MAP, this);
+                executor.shutdown();
+            }
+        }
+    }
+}
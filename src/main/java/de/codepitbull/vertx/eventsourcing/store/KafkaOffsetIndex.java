@@ -0,0 +1,66 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import java.util.Arrays;
+
+/**
+ * The Kafka offsets and rounds of the events of one game, indexed by the offset of the event within the game. The
+ * partition may hold events of other games or events written before. Only written from the context of the store, but
+ * read by fetches on the {@link KafkaFetchPool}, so entries are published through the volatile size.
+ * <p>
+ * Kept in memory only, twelve bytes per event.
+ *
+ * @author Jochen Mader
+ */
+class KafkaOffsetIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile long[] kafkaOffsets = new long[INITIAL_CAPACITY];
+    private int[] rounds = new int[INITIAL_CAPACITY];
+    private volatile int size;
+
+    /**
+     * Adds the Kafka offset and the round of the next event, offsets have to be added in the order they were written
+     * in.
+     */
+    void append(long kafkaOffset, int roundId) {
+        long[] offsets = kafkaOffsets;
+        if (size == offsets.length) {
+            kafkaOffsets = offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            rounds = Arrays.copyOf(rounds, offsets.length);
+        }
+        offsets[size] = kafkaOffset;
+        rounds[size] = roundId;
+        size++;
+    }
+
+    /**
+     * @return the Kafka offset of the event with the given offset, -1 if there is no such event
+     */
+    long kafkaOffset(long offset) {
+        //the size has to be read first, the array read after it contains all entries below
+        int known = size;
+        return offset >= 0 && offset < known ? kafkaOffsets[(int) offset] : -1;
+    }
+
+    /**
+     * Binary search over the rounds of the indexed events, only called from the context of the store.
+     * @return the offset of the first event of a later round, the size if there is none
+     */
+    long offsetAfterRound(int roundId) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rounds[mid] <= roundId)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,241 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.rxjava.core.Context;
+import io.vertx.rxjava.core.Vertx;
+import kafka.api.FetchRequestBuilder;
+import kafka.common.ErrorMapping;
+import kafka.javaapi.FetchResponse;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.message.MessageAndOffset;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notEmpty;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Reads the events of a partition in message sets of up to {@link #fetchSize} bytes instead of one event per round
+ * trip to the broker. Fetches run on the given executor, their results are handed back on the context of the caller.
+ * <p>
+ * Replays read through a {@link Cursor}, which keeps the events of the last message set and fetches the next one in
+ * the background once it runs low, so most events are served from memory.
+ * <p>
+ * Offsets handed to the reader are those of the events of a single game. The {@link KafkaOffsetIndex} maps them to
+ * the offsets of the partition, fetches start at the indexed offset of the next event and skip the events of other
+ * games or events written before.
+ *
+ * @author Jochen Mader
+ */
+public class KafkaPrefetchReader {
+
+    public static final int DEFAULT_FETCH_SIZE = 64 * 1024;
+    /** a cursor holding fewer events starts fetching the next message set */
+    public static final int PREFETCH_LOW_WATER = 16;
+
+    private static final int SO_TIMEOUT_MS = 10000;
+
+    private final Vertx vertx;
+    private final ExecutorService executor;
+    private final SimpleConsumer consumer;
+    private final String topic;
+    private final int partition;
+    private final int fetchSize;
+    private final String clientId;
+    private final KafkaOffsetIndex index;
+
+    /**
+     * @param index the offsets of the events of the game on the partition
+     */
+    KafkaPrefetchReader(Vertx vertx, ExecutorService executor, String host, int port, String topic, int partition,
+                        int fetchSize, KafkaOffsetIndex index) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.executor = notNull(executor, "executor must be set");
+        this.topic = notEmpty(topic, "topic must be set");
+        isTrue(fetchSize > 0, "Fetch size must be positive but was %d", fetchSize);
+        this.partition = partition;
+        this.fetchSize = fetchSize;
+        this.index = notNull(index, "index must be set");
+        this.clientId = "eventsourcing-" + topic + "-" + partition;
+        this.consumer = new SimpleConsumer(notEmpty(host, "host must be set"), port, SO_TIMEOUT_MS, fetchSize, clientId);
+    }
+
+    /**
+     * @param offset offset of the first event returned by the cursor
+     */
+    public Cursor cursor(long offset) {
+        return new Cursor(offset);
+    }
+
+    /**
+     * Reads up to the given number of events, less if the partition ends before.
+     */
+    public void read(long fromOffset, int maxEvents, Handler<AsyncResult<List<RoundUpdate>>> resultHandler) {
+        submit(vertx.getOrCreateContext(), () -> {
+            Batch batch = new Batch(fromOffset, maxEvents);
+            int read;
+            do {
+                read = batch.events.size();
+                fetch(batch);
+            } while (batch.events.size() > read && batch.events.size() < maxEvents);
+            return batch.events;
+        }, resultHandler);
+    }
+
+    public void close() {
+        consumer.close();
+    }
+
+    private <T> void submit(Context ctx, Callable<T> task, Handler<AsyncResult<T>> resultHandler) {
+        try {
+            executor.execute(() -> {
+                AsyncResult<T> result;
+                try {
+                    result = Future.succeededFuture(task.call());
+                } catch (Exception e) {
+                    result = Future.failedFuture(e);
+                }
+                AsyncResult<T> done = result;
+                ctx.runOnContext(v -> resultHandler.handle(done));
+            });
+        } catch (RejectedExecutionException e) {
+            resultHandler.handle(Future.failedFuture(e));
+        }
+    }
+
+    /**
+     * Blocks until the broker answered and adds the events of the message set following {@link Batch#nextOffset}.
+     */
+    private void fetch(Batch batch) {
+        long kafkaOffset = kafkaOffset(batch.nextOffset);
+        //only events written through the store are indexed
+        if (kafkaOffset < 0)
+            return;
+        FetchResponse response = consumer.fetch(new FetchRequestBuilder()
+                .clientId(clientId)
+                .addFetch(topic, partition, kafkaOffset, fetchSize)
+                .build());
+        if (response.hasError())
+            throw new IllegalStateException("Failed fetching " + topic + "/" + partition + " at offset " + kafkaOffset,
+                    ErrorMapping.exceptionFor(response.errorCode(topic, partition)));
+        for (MessageAndOffset message : response.messageSet(topic, partition)) {
+            //compressed message sets may start before the requested offset, shared partitions hold other games
+            if (message.offset() != kafkaOffset)
+                continue;
+            if (batch.events.size() == batch.maxEvents)
+                return;
+            ByteBuffer payload = message.message().payload();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            batch.events.add(EventCodecs.decodeRoundUpdate(Buffer.buffer(bytes)));
+            kafkaOffset = kafkaOffset(++batch.nextOffset);
+            if (kafkaOffset < 0)
+                return;
+        }
+    }
+
+    private long kafkaOffset(long offset) {
+        return index.kafkaOffset(offset);
+    }
+
+    private static class Batch {
+        final List<RoundUpdate> events = new ArrayList<>();
+        final int maxEvents;
+        long nextOffset;
+
+        Batch(long nextOffset, int maxEvents) {
+            this.nextOffset = nextOffset;
+            this.maxEvents = maxEvents;
+        }
+    }
+
+    /**
+     * The events of a partition from an offset on, one at a time. Only to be used from the context it has been
+     * created on.
+     */
+    public class Cursor {
+        private final Context ctx = vertx.getOrCreateContext();
+        private final ArrayDeque<RoundUpdate> buffered = new ArrayDeque<>();
+        private long nextFetch;
+        private boolean fetching;
+        private boolean closed;
+        private Handler<AsyncResult<RoundUpdate>> waiting;
+
+        private Cursor(long offset) {
+            this.nextFetch = offset;
+        }
+
+        /**
+         * Hands over the next event, fails if it hasn't been written to the broker yet. Only one event may be
+         * requested at a time.
+         */
+        public void next(Handler<AsyncResult<RoundUpdate>> resultHandler) {
+            isTrue(waiting == null, "The previous event hasn't been handed over yet");
+            RoundUpdate event = buffered.poll();
+            if (event != null) {
+                prefetch();
+                resultHandler.handle(Future.succeededFuture(event));
+                return;
+            }
+            waiting = resultHandler;
+            prefetch();
+        }
+
+        public int buffered() {
+            return buffered.size();
+        }
+
+        public void close() {
+            closed = true;
+            buffered.clear();
+            waiting = null;
+        }
+
+        private void prefetch() {
+            if (fetching || closed || buffered.size() >= PREFETCH_LOW_WATER)
+                return;
+            fetching = true;
+            Batch batch = new Batch(nextFetch, Integer.MAX_VALUE);
+            submit(ctx, () -> {
+                fetch(batch);
+                return batch;
+            }, this::fetched);
+        }
+
+        private void fetched(AsyncResult<Batch> result) {
+            fetching = false;
+            if (closed)
+                return;
+            Handler<AsyncResult<RoundUpdate>> handler = waiting;
+            waiting = null;
+            if (result.failed()) {
+                if (handler != null)
+                    handler.handle(Future.failedFuture(result.cause()));
+                return;
+            }
+            buffered.addAll(result.result().events);
+            nextFetch = result.result().nextOffset;
+            if (handler != null) {
+                RoundUpdate event = buffered.poll();
+                if (event == null) {
+                    handler.handle(Future.failedFuture("No event at offset " + nextFetch + " yet"));
+                    return;
+                }
+                prefetch();
+                handler.handle(Future.succeededFuture(event));
+            }
+        }
+    }
+}
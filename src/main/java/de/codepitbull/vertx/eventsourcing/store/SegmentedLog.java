@@ -0,0 +1,262 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * An append-only log split into memory-mapped segment files.
+ * <p>
+ * Each record is written as [length][crc32][payload]. A segment is rolled as soon as the next record doesn't fit anymore,
+ * the file name of a segment is the offset of its first record. Every segment keeps a sparse in-memory index (one entry
+ * every {@link #INDEX_INTERVAL} records) so reading a record never has to skip more than a handful of other records.
+ * <p>
+ * The index is rebuilt from the segments when the log is opened, scanning stops at the first torn or corrupt record.
+ * <p>
+ * Instances are not thread safe. Appending, reading and detaching segments must all happen on the same thread, usually
+ * the event loop owning the store, as the segment list and the record counts are not published to other threads.
+ * {@link #read(long)} returns a copy of the record, so only decoding it may be moved to a worker. The only exceptions
+ * are {@link #force()} and closing the segments returned by {@link #detachBefore(long)}, which may be called from a
+ * worker thread.
+ *
+ * @author Jochen Mader
+ */
+public class SegmentedLog implements Closeable {
+
+    public static final int INDEX_INTERVAL = 32;
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".log";
+
+    private final File dir;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+    private volatile Segment active;
+
+    public SegmentedLog(File dir, int segmentSize) throws IOException {
+        this.dir = notNull(dir, "Directory must not be null");
+        isTrue(segmentSize > HEADER_SIZE, "Segment size too small");
+        this.segmentSize = segmentSize;
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        Arrays.sort(files);
+        for (File file : files)
+            segments.add(Segment.open(file, baseOffsetOf(file), segmentSize));
+        if (segments.isEmpty())
+            roll(0);
+        else
+            active = segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Appends the given record.
+     * @param record the payload to write
+     * @return the offset of the new record
+     */
+    public long append(byte[] record) throws IOException {
+        return append(ByteBuffer.wrap(record));
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer without copying them first, the position of the buffer is kept.
+     * @return the offset of the new record
+     */
+    public long append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        isTrue(length + HEADER_SIZE <= segmentSize, "Record of %d bytes exceeds segment size", length);
+        if (!active.fits(length))
+            roll(nextOffset());
+        return active.append(record);
+    }
+
+    /**
+     * Reads the record stored under the given offset.
+     * @return a copy of the record, which may be handed to other threads
+     */
+    public byte[] read(long offset) {
+        if (offset < firstOffset() || offset >= nextOffset())
+            throw new IndexOutOfBoundsException("No record with offset " + offset);
+        return segmentFor(offset).read(offset);
+    }
+
+    /**
+     * @return offset of the oldest record still in the log
+     */
+    public long firstOffset() {
+        return segments.get(0).baseOffset;
+    }
+
+    /**
+     * @return offset the next appended record will get
+     */
+    public long nextOffset() {
+        return active.nextOffset();
+    }
+
+    /**
+     * Removes all segments only containing records older than the given offset from the log. The active segment is
+     * never removed. Deleting the files is left to the caller, so it can happen off the event loop.
+     *
+     * @return closes and deletes the removed segments, may be called from a worker thread
+     */
+    public Closeable detachBefore(long offset) {
+        List<Segment> detached = new ArrayList<>();
+        while (segments.size() > 1 && segments.get(1).baseOffset <= offset)
+            detached.add(segments.remove(0));
+        return () -> {
+            for (Segment segment : detached) {
+                segment.close();
+                if (!segment.path.delete())
+                    throw new IOException("Unable to delete " + segment.path);
+            }
+        };
+    }
+
+    /**
+     * Flushes all written records to disk.
+     */
+    public void force() {
+        active.buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments)
+            segment.close();
+    }
+
+    private Segment segmentFor(long offset) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).baseOffset <= offset)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return segments.get(low);
+    }
+
+    private void roll(long baseOffset) throws IOException {
+        if (active != null)
+            active.buffer.force();
+        Segment segment = Segment.open(new File(dir, String.format("%020d", baseOffset) + SUFFIX), baseOffset, segmentSize);
+        segments.add(segment);
+        active = segment;
+    }
+
+    private static long baseOffsetOf(File file) {
+        return Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+    }
+
+    private static class Segment {
+        final long baseOffset;
+        final File path;
+        final RandomAccessFile file;
+        final MappedByteBuffer buffer;
+        int[] index = new int[16];
+        int count;
+
+        private Segment(long baseOffset, File path, RandomAccessFile file, MappedByteBuffer buffer) {
+            this.baseOffset = baseOffset;
+            this.path = path;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment open(File path, long baseOffset, int segmentSize) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(path, "rw");
+            int size = (int) Math.max(segmentSize, file.length());
+            Segment segment = new Segment(baseOffset, path, file, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segment.recover();
+            return segment;
+        }
+
+        long nextOffset() {
+            return baseOffset + count;
+        }
+
+        boolean fits(int length) {
+            return buffer.remaining() >= length + HEADER_SIZE;
+        }
+
+        long append(ByteBuffer record) {
+            int position = buffer.position();
+            int length = record.remaining();
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.position(position + HEADER_SIZE);
+            buffer.put(record.duplicate());
+            //the length is written last, a record only becomes visible once it is complete
+            buffer.putInt(position, length);
+            //terminate the log so leftovers of a torn write are never mistaken for a record
+            if (buffer.remaining() >= 4)
+                buffer.putInt(buffer.position(), 0);
+            indexRecord(position);
+            return baseOffset + count - 1;
+        }
+
+        byte[] read(long offset) {
+            int relative = (int) (offset - baseOffset);
+            int position = index[relative / INDEX_INTERVAL];
+            for (int skip = relative % INDEX_INTERVAL; skip > 0; skip--)
+                position += HEADER_SIZE + buffer.getInt(position);
+            byte[] record = new byte[buffer.getInt(position)];
+            payload(position, record.length).get(record);
+            return record;
+        }
+
+        void close() throws IOException {
+            file.close();
+        }
+
+        private void recover() {
+            int position = 0;
+            while (position + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + HEADER_SIZE + length > buffer.capacity() || !checksumMatches(position, length))
+                    break;
+                indexRecord(position);
+                position += HEADER_SIZE + length;
+            }
+            buffer.position(position);
+        }
+
+        private boolean checksumMatches(int position, int length) {
+            byte[] record = new byte[length];
+            payload(position, length).get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, length);
+            return (int) crc.getValue() == buffer.getInt(position + 4);
+        }
+
+        private ByteBuffer payload(int position, int length) {
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+            return payload;
+        }
+
+        private void indexRecord(int position) {
+            if (count % INDEX_INTERVAL == 0) {
+                int slot = count / INDEX_INTERVAL;
+                if (slot == index.length)
+                    index = Arrays.copyOf(index, index.length * 2);
+                index[slot] = position;
+            }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * The retained snapshots of a game, kept in primitive arrays ordered by snapshot index. The in-memory stores keep the
+ * snapshots themselves as payload, the file store only the metadata.
+ * <p>
+ * Rounds and timestamps grow with the index, so snapshots are looked up by index, round or time with a binary search.
+ *
+ * @author Jochen Mader
+ */
+class SnapshotIndex {
+
+    private int[] indexes = new int[16];
+    private int[] rounds = new int[16];
+    private long[] timestamps = new long[16];
+    private boolean[] full = new boolean[16];
+    private Game[] payloads = new Game[16];
+    private int count;
+    private int nextIndex;
+
+    /**
+     * Adds a snapshot under the next free index.
+     *
+     * @return the index of the snapshot
+     */
+    int add(Game snapshot, long timestamp, boolean keepPayload) {
+        int index = nextIndex;
+        add(index, snapshot.getRoundId(), timestamp, !snapshot.isDelta(), keepPayload ? snapshot : null);
+        return index;
+    }
+
+    void add(int index, int roundId, long timestamp, boolean isFull, Game payload) {
+        isTrue(index >= nextIndex, "Index %d already used", index);
+        if (count == indexes.length) {
+            int capacity = count * 2;
+            indexes = Arrays.copyOf(indexes, capacity);
+            rounds = Arrays.copyOf(rounds, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            full = Arrays.copyOf(full, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+        }
+        indexes[count] = index;
+        rounds[count] = roundId;
+        timestamps[count] = timestamp;
+        full[count] = isFull;
+        payloads[count++] = payload;
+        nextIndex = index + 1;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int index(int pos) {
+        return indexes[pos];
+    }
+
+    int round(int pos) {
+        return rounds[pos];
+    }
+
+    /**
+     * @return the position of the snapshot with the given index, -1 if it isn't retained
+     */
+    int positionOf(int index) {
+        int pos = Arrays.binarySearch(indexes, 0, count, index);
+        return pos >= 0 ? pos : -1;
+    }
+
+    /**
+     * @return the position of the newest snapshot taken at or before the given round, -1 if there is none
+     */
+    int positionAtRound(int roundId) {
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (rounds[mid] <= roundId) {
+                found = mid;
+                low = mid + 1;
+            } else
+                high = mid - 1;
+        }
+        return found;
+    }
+
+    /**
+     * @return the position of the newest snapshot stored at or before the given time, -1 if there is none
+     */
+    int positionAtTime(long timestamp) {
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                found = mid;
+                low = mid + 1;
+            } else
+                high = mid - 1;
+        }
+        return found;
+    }
+
+    /**
+     * @return the payload of the snapshot with the given index, null if there is none
+     */
+    Game payload(int index) {
+        int pos = positionOf(index);
+        return pos >= 0 ? payloads[pos] : null;
+    }
+
+    /**
+     * Loads the snapshot with the given index as a full game. A delta is applied to the full snapshot it is based on.
+     *
+     * @param reader reads the stored snapshot for an index
+     * @return the full game, null if the snapshot isn't retained
+     */
+    Game load(int index, IntFunction<Game> reader) {
+        return loadAt(positionOf(index), reader);
+    }
+
+    /**
+     * Loads the snapshot at the given position as a full game.
+     *
+     * @param reader reads the stored snapshot for an index
+     * @return the full game, null if the position is -1
+     */
+    Game loadAt(int pos, IntFunction<Game> reader) {
+        if (pos < 0)
+            return null;
+        int base = pos;
+        while (base >= 0 && !full[base])
+            base--;
+        if (base < 0)
+            return null;
+        Game game = reader.apply(indexes[base]).copy();
+        if (base != pos)
+            game.apply(reader.apply(indexes[pos]));
+        return game;
+    }
+
+    /**
+     * Evicts all snapshots not retained by the given policy.
+     *
+     * @return the number of evicted snapshots
+     */
+    int retain(SnapshotRetention retention, long now) {
+        boolean[] keep = retention.select(count, rounds, timestamps, full, now);
+        int kept = 0;
+        for (int pos = 0; pos < count; pos++) {
+            if (keep[pos]) {
+                indexes[kept] = indexes[pos];
+                rounds[kept] = rounds[pos];
+                timestamps[kept] = timestamps[pos];
+                full[kept] = full[pos];
+                payloads[kept++] = payloads[pos];
+            }
+        }
+        Arrays.fill(payloads, kept, count, null);
+        int evicted = count - kept;
+        count = kept;
+        return evicted;
+    }
+}
@@ -0,0 +1,99 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * Decides which snapshots of a game are retained.
+ * <p>
+ * The newest {@code keepLast} snapshots (at least one) are always retained. Older snapshots are retained if they are
+ * younger than {@code maxAgeMs} and are the first full snapshot within a span of {@code keepEveryRounds} rounds, a rule
+ * that isn't set doesn't restrict. If neither of the two is set all older snapshots are evicted. A full snapshot a
+ * retained delta is based on is always retained.
+ *
+ * @author Jochen Mader
+ */
+public class SnapshotRetention {
+
+    private final int keepLast;
+    private final int keepEveryRounds;
+    private final long maxAgeMs;
+
+    private SnapshotRetention(int keepLast, int keepEveryRounds, long maxAgeMs) {
+        this.keepLast = keepLast;
+        this.keepEveryRounds = keepEveryRounds;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return false if no rule is set and everything has to be retained
+     */
+    public boolean isEnabled() {
+        return keepLast > 0 || keepEveryRounds > 0 || maxAgeMs > 0;
+    }
+
+    /**
+     * @return for each of the first {@code count} snapshots whether it is retained
+     */
+    boolean[] select(int count, int[] rounds, long[] timestamps, boolean[] full, long now) {
+        boolean[] keep = new boolean[count];
+        int newest = Math.max(keepLast, 1);
+        boolean thinning = keepEveryRounds > 0 || maxAgeMs > 0;
+        long lastBucket = Long.MIN_VALUE;
+        for (int pos = 0; pos < count; pos++) {
+            if (pos >= count - newest)
+                keep[pos] = true;
+            else if (thinning) {
+                boolean young = maxAgeMs == 0 || now - timestamps[pos] <= maxAgeMs;
+                boolean sampled = keepEveryRounds == 0 || (full[pos] && rounds[pos] / keepEveryRounds != lastBucket);
+                keep[pos] = young && sampled;
+            }
+            if (keep[pos] && full[pos] && keepEveryRounds > 0)
+                lastBucket = rounds[pos] / keepEveryRounds;
+        }
+        //a delta can only be loaded together with the full snapshot it is based on
+        int base = -1;
+        for (int pos = 0; pos < count; pos++) {
+            if (full[pos])
+                base = pos;
+            else if (keep[pos]) {
+                if (base >= 0)
+                    keep[base] = true;
+                else
+                    keep[pos] = false;
+            }
+        }
+        return keep;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Integer keepLast = 0;
+        private Integer keepEveryRounds = 0;
+        private Long maxAgeMs = 0L;
+
+        public Builder keepLast(Integer keepLast) {
+            this.keepLast = keepLast;
+            return this;
+        }
+
+        public Builder keepEveryRounds(Integer keepEveryRounds) {
+            this.keepEveryRounds = keepEveryRounds;
+            return this;
+        }
+
+        public Builder maxAgeMs(Long maxAgeMs) {
+            this.maxAgeMs = maxAgeMs;
+            return this;
+        }
+
+        public SnapshotRetention build() {
+            isTrue(keepLast != null && keepLast >= 0, "KeepLast must not be negative");
+            isTrue(keepEveryRounds != null && keepEveryRounds >= 0, "KeepEveryRounds must not be negative");
+            isTrue(maxAgeMs != null && maxAgeMs >= 0, "MaxAgeMs must not be negative");
+            return new SnapshotRetention(keepLast, keepEveryRounds, maxAgeMs);
+        }
+    }
+}
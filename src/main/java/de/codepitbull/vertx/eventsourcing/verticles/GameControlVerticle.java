@@ -1,6 +1,14 @@
 package de.codepitbull.vertx.eventsourcing.verticles;
 
+import de.codepitbull.vertx.eventsourcing.host.ClusterView;
+import de.codepitbull.vertx.eventsourcing.host.ConsistentHashRing;
+import io.vertx.core.AsyncResult;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -9,33 +17,72 @@ import io.vertx.rxjava.core.AbstractVerticle;
 import io.vertx.rxjava.core.eventbus.Message;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static de.codepitbull.vertx.eventsourcing.constants.Addresses.*;
 import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
 import static de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum.*;
-import static de.codeptibull.vertx.kafka.writer.KafkaWriterVerticle.CONFIG_KAFKA_HOST;
 
 /**
  * This verticle takes care of managing game instances.
- * It is responsible for (und)deploying of {@link GameVerticle} and {@link EventStoreVerticle}
+ * It deploys one {@link GameHostVerticle} per event loop and places every game on one of them using consistent hashing
+ * on the game id. Games are moved to new hosts as they register.
+ * <p>
+ * In a clustered Vert.x the control verticles of all nodes exchange heartbeats with the games they run. New games are
+ * started on the node with the least players, games of nodes that stopped sending heartbeats are started again on one
+ * of the remaining nodes, continuing from their event store. This requires an event store all nodes can read, e.g.
+ * the file store on a shared directory.
  *
  * @author Jochen Mader
  */
 public class GameControlVerticle extends AbstractVerticle {
     private static final Logger LOG = LoggerFactory.getLogger(GameControlVerticle.class);
 
+    public static final long DEFAULT_NODE_HEARTBEAT_INTERVAL_MS = 1000;
+    public static final long DEFAULT_NODE_TIMEOUT_MS = 5000;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
     private Map<String, Integer> gameIdToNrOfPlayersMap = new HashMap<>();
-    private Map<String, String> gameIdToDeploymentIdMap = new HashMap<>();
+    private Map<String, String> gameIdToHostIdMap = new HashMap<>();
+    private Set<String> movingGames = new HashSet<>();
+    private Map<String, Integer> orphanedGames = new HashMap<>();
+    private Set<String> recoveringGames = new HashSet<>();
+    private ConsistentHashRing hosts = new ConsistentHashRing();
+    private ClusterView cluster = new ClusterView(nodeId);
 
     @Override
-    public void start() throws Exception {
+    public void start(Future<Void> startFuture) throws Exception {
         vertx.eventBus().localConsumer(GAMES_GET_ONE, this::getGame);
         vertx.eventBus().localConsumer(GAMES_CREATE, this::createGame);
         vertx.eventBus().localConsumer(GAMES_DELETE, this::deleteGame);
         vertx.eventBus().localConsumer(GAMES_LIST, this::listOfGames);
-        LOG.info("Deployed "+GameControlVerticle.class.getName());
+        vertx.eventBus().localConsumer(GAME_HOSTS_REGISTER, this::registerHost);
+        if (vertx.isClustered()) {
+            vertx.eventBus().<JsonObject>consumer(GAME_NODE_BASE + nodeId, this::handleNodeAction);
+            vertx.eventBus().<JsonObject>consumer(GAME_NODES_HEARTBEAT, this::handleHeartbeat);
+            long timeout = config().getLong(CONFIG_NODE_TIMEOUT, DEFAULT_NODE_TIMEOUT_MS);
+            vertx.setPeriodic(config().getLong(CONFIG_NODE_HEARTBEAT_INTERVAL, DEFAULT_NODE_HEARTBEAT_INTERVAL_MS), id -> {
+                publishHeartbeat();
+                orphanedGames.putAll(cluster.expire(System.currentTimeMillis(), timeout));
+                recoverGames();
+            });
+        }
+        vertx.deployVerticle(GameHostVerticle.class.getName(), new DeploymentOptions()
+                .setConfig(config())
+                .setInstances(config().getInteger(CONFIG_GAME_HOSTS, VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE)),
+                result -> {
+                    if (result.succeeded()) {
+                        LOG.info("Deployed " + GameControlVerticle.class.getName() + " with " + hosts.size() + " game hosts on node " + nodeId);
+                        startFuture.complete();
+                    } else {
+                        LOG.error("Unable to deploy " + GameHostVerticle.class.getName(), result.cause());
+                        startFuture.fail(result.cause());
+                    }
+                });
     }
 
     /**
@@ -43,77 +90,266 @@ public class GameControlVerticle extends AbstractVerticle {
      * @param req
      */
     public void getGame(Message<String> req) {
-        if(gameIdToNrOfPlayersMap.containsKey(req.body()))
+        Integer nrPlayers = gameIdToNrOfPlayersMap.containsKey(req.body()) ? gameIdToNrOfPlayersMap.get(req.body())
+                : cluster.games().get(req.body());
+        if(nrPlayers != null)
             req.reply(new JsonObject()
                     .put(GAME_ID, req.body())
-                    .put(NR_PLAYERS, gameIdToNrOfPlayersMap.get(req.body())));
+                    .put(NR_PLAYERS, nrPlayers));
         else
             req.fail(FAILURE_GAME_DOES_NOT_EXIST.intValue(), "Game doesn't exist");
     }
 
     /**
-     * Called to create a game. Will register the required {@link GameVerticle} and {@link EventStoreVerticle}
-     * to handle it.
+     * Called to create a game. The game is started on the node with the lowest load, there on the
+     * {@link GameHostVerticle} owning its id.
      * @param req
      */
     public void createGame(Message<Integer> req) {
-        String gameId = UUID.randomUUID().toString();
-        vertx.deployVerticle(EventStoreVerticle.class.getName(), new DeploymentOptions().setConfig(
-                config().copy()
+        Integer nrPlayers = req.body();
+        String targetNodeId = cluster.leastLoadedNode(localLoad());
+        if (nodeId.equals(targetNodeId)) {
+            String gameId = UUID.randomUUID().toString();
+            startGame(gameId, nrPlayers, result -> {
+                if (result.succeeded())
+                    req.reply(gameId);
+                else
+                    req.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), result.cause().getMessage());
+            });
+            return;
+        }
+        vertx.eventBus().<String>send(GAME_NODE_BASE + targetNodeId, new JsonObject()
+                        .put(ACTION, ACTION_START_GAME)
+                        .put(NR_PLAYERS, nrPlayers),
+                startResult -> {
+                    if (startResult.succeeded()) {
+                        String gameId = startResult.result().body();
+                        cluster.reserve(targetNodeId, gameId, nrPlayers);
+                        req.reply(gameId);
+                    } else {
+                        req.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), "Unable to start game on node " + targetNodeId);
+                        LOG.error("Unable to start game on node " + targetNodeId, startResult.cause());
+                    }
+                });
+    }
+
+    private void startGame(String gameId, Integer nrPlayers, Handler<AsyncResult<Void>> resultHandler) {
+        String hostId = hosts.nodeFor(gameId);
+        if (hostId == null) {
+            resultHandler.handle(Future.failedFuture("No game hosts available"));
+            return;
+        }
+        vertx.eventBus().send(GAME_HOST_BASE + hostId, new JsonObject()
+                        .put(ACTION, ACTION_START_GAME)
                         .put(GAME_ID, gameId)
-                ), replayDeploymentRes -> {
-                //deploy the actual game handling verticle
-                vertx.deployVerticle(GameVerticle.class.getName(), new DeploymentOptions().setConfig(
-                        new JsonObject()
-                                .put(GAME_ID, gameId)
-                                .put(NR_PLAYERS, req.body())),
-                        gameDeplyomentRes -> {
-                            if (gameDeplyomentRes.succeeded()) {
-                                gameIdToNrOfPlayersMap.put(gameId, req.body());
-                                gameIdToDeploymentIdMap.put(gameId, replayDeploymentRes.result());
-                                req.reply(gameId);
-                            } else {
-                                req.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), "Unable to deploy " + GameVerticle.class.getName());
-                                LOG.error("Unable to deploy " + GameVerticle.class.getName(), gameDeplyomentRes.cause());
-                            }
-                        });
-        });
+                        .put(NR_PLAYERS, nrPlayers),
+                startResult -> {
+                    if (startResult.succeeded()) {
+                        gameIdToNrOfPlayersMap.put(gameId, nrPlayers);
+                        gameIdToHostIdMap.put(gameId, hostId);
+                        resultHandler.handle(Future.succeededFuture());
+                    } else {
+                        LOG.error("Unable to start game on host " + hostId, startResult.cause());
+                        resultHandler.handle(Future.failedFuture("Unable to start game on host " + hostId));
+                    }
+                });
     }
 
     /**
-     * Handles deletion of a game and all associated undeployments.
-     * TODO: Not working, see commented code
+     * Handles deletion of a game, the game is stopped by its host. Games on other nodes are stopped there.
      * @param req
      */
-    public void deleteGame(Message<Integer> req) {
-        String deploymentId = gameIdToDeploymentIdMap.remove(req.body());
-        gameIdToNrOfPlayersMap.remove(req.body());
-        if(deploymentId == null) {
-            req.fail(FAILURE_UNABLE_TO_DELETE_NON_EXISTING_GAME.intValue(), "Unable to delete non exiting game.");
+    public void deleteGame(Message<String> req) {
+        String gameId = req.body();
+        String ownerNodeId = cluster.ownerOf(gameId);
+        if (gameIdToHostIdMap.containsKey(gameId) || ownerNodeId == null) {
+            stopGame(gameId, result -> {
+                if (result.succeeded())
+                    req.reply(true);
+                else
+                    req.fail(result.cause() instanceof ReplyException ? ((ReplyException) result.cause()).failureCode()
+                            : FAILURE_UNABLE_TO_DELETE_NON_EXISTING_GAME.intValue(), result.cause().getMessage());
+            });
+            return;
+        }
+        vertx.eventBus().send(GAME_NODE_BASE + ownerNodeId, new JsonObject()
+                        .put(ACTION, ACTION_STOP_GAME)
+                        .put(GAME_ID, gameId),
+                stopResult -> {
+                    if (stopResult.succeeded()) {
+                        cluster.removeGame(gameId);
+                        req.reply(true);
+                    } else {
+                        req.fail(FAILURE_UNABLE_TO_UNDEPLOY_GAME_VERTICLE.intValue(), "Unable to stop game on node " + ownerNodeId);
+                        LOG.error("Unable to stop game on node " + ownerNodeId, stopResult.cause());
+                    }
+                });
+    }
+
+    private void stopGame(String gameId, Handler<AsyncResult<Void>> resultHandler) {
+        String hostId = gameIdToHostIdMap.remove(gameId);
+        gameIdToNrOfPlayersMap.remove(gameId);
+        if(hostId == null) {
+            resultHandler.handle(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE,
+                    FAILURE_UNABLE_TO_DELETE_NON_EXISTING_GAME.intValue(), "Unable to delete non exiting game.")));
+        }
+        else if (movingGames.contains(gameId)) {
+            //stopped once the move is finished
+            resultHandler.handle(Future.succeededFuture());
         }
         else {
-// TODO: Fixed in 3.1: https://bugs.eclipse.org/bugs/show_bug.cgi?id=473778
-//            vertx.undeploy(deploymentId, res -> {
-//                    if(res.succeeded()) {
-//                        req.reply(true);
-//                    }
-//                    else {
-//                        req.fail(FAILURE_UNABLE_TO_UNDEPLOY_GAME_VERTICLE, "Unable to deploy "+GameVerticle.class.getName());
-//                        LOG.error("Unable to undeploy " + GameVerticle.class.getName(), res.cause());
-//                    }
-//                req.reply(true);
-//            });
-            req.reply(true);
+            vertx.eventBus().send(GAME_HOST_BASE + hostId, new JsonObject()
+                            .put(ACTION, ACTION_STOP_GAME)
+                            .put(GAME_ID, gameId),
+                    stopResult -> {
+                        if (stopResult.succeeded()) {
+                            resultHandler.handle(Future.succeededFuture());
+                        } else {
+                            LOG.error("Unable to stop game on host " + hostId, stopResult.cause());
+                            resultHandler.handle(Future.failedFuture(new ReplyException(ReplyFailure.RECIPIENT_FAILURE,
+                                    FAILURE_UNABLE_TO_UNDEPLOY_GAME_VERTICLE.intValue(), "Unable to stop game on host " + hostId)));
+                        }
+                    });
         }
     }
 
     /**
-     * Replies with the list if currently running games.
+     * Handles requests of other nodes to start or stop one of the games of this node.
+     * @param msg
+     */
+    private void handleNodeAction(Message<JsonObject> msg) {
+        String action = msg.body().getString(ACTION);
+        if (ACTION_START_GAME.equals(action)) {
+            String gameId = UUID.randomUUID().toString();
+            startGame(gameId, msg.body().getInteger(NR_PLAYERS), result -> {
+                if (result.succeeded())
+                    msg.reply(gameId);
+                else
+                    msg.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), result.cause().getMessage());
+            });
+        } else if (ACTION_STOP_GAME.equals(action)) {
+            stopGame(msg.body().getString(GAME_ID), result -> {
+                if (result.succeeded())
+                    msg.reply(true);
+                else
+                    msg.fail(FAILURE_UNABLE_TO_UNDEPLOY_GAME_VERTICLE.intValue(), result.cause().getMessage());
+            });
+        } else {
+            msg.fail(FAILURE_MISSING_PARAMETER.intValue(), "Unknown action " + action);
+        }
+    }
+
+    private long localLoad() {
+        long load = 0;
+        for (Integer nrPlayers : gameIdToNrOfPlayersMap.values())
+            load += nrPlayers;
+        return load;
+    }
+
+    private void publishHeartbeat() {
+        JsonObject games = new JsonObject();
+        gameIdToNrOfPlayersMap.forEach(games::put);
+        vertx.eventBus().publish(GAME_NODES_HEARTBEAT, new JsonObject()
+                .put(NODE_ID, nodeId)
+                .put(NODE_LOAD, localLoad())
+                .put(GAMES, games));
+    }
+
+    /**
+     * Updates the view of the cluster. A game reported by another node that also runs here has been recovered while
+     * its node was unreachable, the node with the larger id stops its copy.
+     * @param msg
+     */
+    private void handleHeartbeat(Message<JsonObject> msg) {
+        String remoteNodeId = msg.body().getString(NODE_ID);
+        if (nodeId.equals(remoteNodeId))
+            return;
+        JsonObject remoteGames = msg.body().getJsonObject(GAMES);
+        Map<String, Integer> games = new HashMap<>();
+        remoteGames.fieldNames().forEach(gameId -> games.put(gameId, remoteGames.getInteger(gameId)));
+        cluster.heartbeat(remoteNodeId, msg.body().getLong(NODE_LOAD), games, System.currentTimeMillis());
+        if (nodeId.compareTo(remoteNodeId) > 0)
+            games.keySet().stream()
+                    .filter(gameIdToHostIdMap::containsKey)
+                    .forEach(gameId -> {
+                        LOG.warn("Game " + gameId + " also runs on node " + remoteNodeId + ", stopping it here");
+                        stopGame(gameId, result -> {});
+                    });
+    }
+
+    /**
+     * Rebuilds the games of failed nodes this node is responsible for. A failed node may still be writing, its event
+     * store then refuses to open and the recovery is retried with the next heartbeat.
+     */
+    private void recoverGames() {
+        new HashMap<>(orphanedGames).forEach((gameId, nrPlayers) -> {
+            if (!nodeId.equals(cluster.recoveryNodeFor(gameId)) || gameIdToHostIdMap.containsKey(gameId)
+                    || cluster.games().containsKey(gameId)) {
+                orphanedGames.remove(gameId);
+                return;
+            }
+            if (!recoveringGames.add(gameId))
+                return;
+            LOG.info("Recovering game " + gameId + " of a failed node");
+            startGame(gameId, nrPlayers, result -> {
+                recoveringGames.remove(gameId);
+                if (result.succeeded())
+                    orphanedGames.remove(gameId);
+                else
+                    LOG.warn("Unable to recover game " + gameId + ", retrying: " + result.cause().getMessage());
+            });
+        });
+    }
+
+    /**
+     * Called when a {@link GameHostVerticle} started. Games now owned by the new host are moved over.
+     * @param req
+     */
+    public void registerHost(Message<String> req) {
+        hosts.addNode(req.body());
+        req.reply(true);
+        new HashSet<>(gameIdToHostIdMap.keySet()).forEach(this::rebalance);
+    }
+
+    private void rebalance(String gameId) {
+        String hostId = gameIdToHostIdMap.get(gameId);
+        String targetHostId = hosts.nodeFor(gameId);
+        if (hostId == null || hostId.equals(targetHostId) || movingGames.contains(gameId))
+            return;
+        movingGames.add(gameId);
+        vertx.eventBus().send(GAME_HOST_BASE + hostId, new JsonObject()
+                        .put(ACTION, ACTION_RELEASE_GAME)
+                        .put(GAME_ID, gameId)
+                        .put(HOST_ID, targetHostId),
+                moveResult -> {
+                    movingGames.remove(gameId);
+                    String currentHostId = moveResult.succeeded() ? targetHostId : hostId;
+                    if (!gameIdToHostIdMap.containsKey(gameId)) {
+                        //deleted while moving
+                        vertx.eventBus().send(GAME_HOST_BASE + currentHostId, new JsonObject()
+                                .put(ACTION, ACTION_STOP_GAME)
+                                .put(GAME_ID, gameId));
+                        return;
+                    }
+                    if (moveResult.failed()) {
+                        LOG.error("Unable to move game " + gameId + " to host " + targetHostId, moveResult.cause());
+                        return;
+                    }
+                    gameIdToHostIdMap.put(gameId, currentHostId);
+                    //more hosts might have registered in the meantime
+                    rebalance(gameId);
+                });
+    }
+
+    /**
+     * Replies with the list if currently running games, those of other nodes included.
      * @param req
      */
     public void listOfGames(Message<Integer> req) {
         JsonArray ret = new JsonArray();
-        gameIdToNrOfPlayersMap.entrySet().forEach(elem -> ret.add(
+        Map<String, Integer> games = cluster.games();
+        games.putAll(gameIdToNrOfPlayersMap);
+        games.entrySet().forEach(elem -> ret.add(
                 new JsonObject()
                         .put(GAME_ID, elem.getKey())
                         .put(NR_PLAYERS, elem.getValue())));
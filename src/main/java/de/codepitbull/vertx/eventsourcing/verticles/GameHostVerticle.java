@@ -0,0 +1,194 @@
+package de.codepitbull.vertx.eventsourcing.verticles;
+
+import de.codepitbull.vertx.eventsourcing.host.HostedGame;
+import de.codepitbull.vertx.eventsourcing.maps.CollisionGrid;
+import de.codepitbull.vertx.eventsourcing.metrics.EventLoopProbe;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.core.eventbus.Message;
+import io.vertx.rxjava.core.shareddata.LocalMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_HOSTS_REGISTER;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_HOST_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+import static de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum.*;
+
+/**
+ * Hosts a partition of the games, each instance of this verticle is bound to one event loop.
+ * Games and their event stores run on the context of the host, the {@link GameControlVerticle} decides which host
+ * owns a game and moves games between hosts when new ones register.
+ *
+ * @author Jochen Mader
+ */
+public class GameHostVerticle extends AbstractVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(GameHostVerticle.class);
+
+    private static final String HANDOVER_MAP = "game.handover";
+
+    private final String hostId = UUID.randomUUID().toString();
+
+    private final Map<String, HostedGame> games = new HashMap<>();
+
+    private EventLoopProbe probe;
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        probe = MetricsRegistry.get(vertx).probeEventLoop(vertx);
+        //all games of this host play on the same map
+        CollisionGrid.load(vertx, config().getString(CONFIG_MAP, CollisionGrid.DEFAULT_MAP), loaded -> {
+            if (loaded.failed()) {
+                LOG.error("Failed loading the map of game host " + hostId, loaded.cause());
+                startFuture.fail(loaded.cause());
+                return;
+            }
+            vertx.eventBus().<JsonObject>localConsumer(GAME_HOST_BASE + hostId, this::handleAction);
+            vertx.eventBus().send(GAME_HOSTS_REGISTER, hostId, result -> {
+                if (result.succeeded()) {
+                    LOG.info("Registered game host " + hostId);
+                    startFuture.complete();
+                } else {
+                    LOG.error("Failed registering game host " + hostId, result.cause());
+                    startFuture.fail(result.cause());
+                }
+            });
+        });
+    }
+
+    @Override
+    public void stop() throws Exception {
+        games.values().forEach(HostedGame::close);
+        games.clear();
+        if (probe != null)
+            probe.release();
+    }
+
+    private void handleAction(Message<JsonObject> msg) {
+        String action = msg.body().getString(ACTION);
+        switch (action) {
+            case ACTION_START_GAME:
+                startGame(msg);
+                break;
+            case ACTION_STOP_GAME:
+                stopGame(msg);
+                break;
+            case ACTION_RELEASE_GAME:
+                releaseGame(msg);
+                break;
+            case ACTION_ADOPT_GAME:
+                adoptGame(msg);
+                break;
+            default:
+                msg.fail(FAILURE_MISSING_PARAMETER.intValue(), "Unknown action " + action);
+        }
+    }
+
+    /**
+     * Starts a game on this host, games already stored in the event store continue where they left off.
+     * @param msg
+     */
+    public void startGame(Message<JsonObject> msg) {
+        String gameId = msg.body().getString(GAME_ID);
+        HostedGame game = new HostedGame(vertx, config().copy()
+                .put(GAME_ID, gameId)
+                .put(NR_PLAYERS, msg.body().getInteger(NR_PLAYERS)));
+        Future<Void> started = Future.future();
+        started.setHandler(result -> {
+            if (result.succeeded()) {
+                games.put(gameId, game);
+                msg.reply(true);
+            } else {
+                msg.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), "Unable to start game " + gameId);
+                LOG.error("Unable to start game " + gameId, result.cause());
+            }
+        });
+        game.start(started);
+    }
+
+    /**
+     * Stops a game and closes its event store.
+     * @param msg
+     */
+    public void stopGame(Message<JsonObject> msg) {
+        HostedGame game = games.remove(msg.body().getString(GAME_ID));
+        if (game == null) {
+            msg.fail(FAILURE_GAME_DOES_NOT_EXIST.intValue(), "Game doesn't exist");
+            return;
+        }
+        game.close();
+        msg.reply(true);
+    }
+
+    /**
+     * Hands a game over to the host given in the message. The game stays here if the other host fails to adopt it.
+     * @param msg
+     */
+    public void releaseGame(Message<JsonObject> msg) {
+        String gameId = msg.body().getString(GAME_ID);
+        String targetHostId = msg.body().getString(HOST_ID);
+        HostedGame game = games.remove(gameId);
+        if (game == null) {
+            msg.fail(FAILURE_GAME_DOES_NOT_EXIST.intValue(), "Game doesn't exist");
+            return;
+        }
+        game.detach(drained -> {
+            handovers().put(gameId, game);
+            vertx.eventBus().send(GAME_HOST_BASE + targetHostId, new JsonObject()
+                    .put(ACTION, ACTION_ADOPT_GAME)
+                    .put(GAME_ID, gameId), result -> {
+                if (result.succeeded()) {
+                    LOG.info("Moved game " + gameId + " from host " + hostId + " to " + targetHostId);
+                    msg.reply(true);
+                    return;
+                }
+                LOG.error("Host " + targetHostId + " failed adopting game " + gameId, result.cause());
+                handovers().remove(gameId);
+                Future<Void> restarted = Future.future();
+                restarted.setHandler(restart -> {
+                    if (restart.succeeded())
+                        games.put(gameId, game);
+                    else
+                        LOG.error("Unable to restart game " + gameId, restart.cause());
+                    msg.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), "Unable to move game " + gameId);
+                });
+                game.start(restarted);
+            });
+        });
+    }
+
+    /**
+     * Takes over a game released by another host.
+     * @param msg
+     */
+    public void adoptGame(Message<JsonObject> msg) {
+        String gameId = msg.body().getString(GAME_ID);
+        HostedGame game = handovers().remove(gameId);
+        if (game == null) {
+            msg.fail(FAILURE_GAME_DOES_NOT_EXIST.intValue(), "No game " + gameId + " to adopt");
+            return;
+        }
+        Future<Void> started = Future.future();
+        started.setHandler(result -> {
+            if (result.succeeded()) {
+                games.put(gameId, game);
+                msg.reply(true);
+            } else {
+                //give it back to the releasing host
+                handovers().put(gameId, game);
+                msg.fail(FAILURE_UNABLE_TO_DEPLOY_GAME_VERTICLE.intValue(), "Unable to adopt game " + gameId);
+            }
+        });
+        game.start(started);
+    }
+
+    private LocalMap<String, HostedGame> handovers() {
+        return vertx.sharedData().getLocalMap(HANDOVER_MAP);
+    }
+}
@@ -1,29 +1,42 @@
 package de.codepitbull.vertx.eventsourcing.verticles;
 
+import de.codepitbull.vertx.eventsourcing.broadcast.UpdateFanOut;
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
 import de.codepitbull.vertx.eventsourcing.constants.Addresses;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.loop.TokenBucket;
+import de.codepitbull.vertx.eventsourcing.metrics.EventLoopProbe;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import de.codepitbull.vertx.eventsourcing.web.PageRenderer;
+import de.codepitbull.vertx.eventsourcing.web.StaticAssets;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.handler.sockjs.BridgeOptions;
 import io.vertx.ext.web.handler.sockjs.PermittedOptions;
+import io.vertx.ext.web.handler.sockjs.SockJSSocket;
 import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.core.eventbus.MessageConsumer;
 import io.vertx.rxjava.ext.web.Router;
 import io.vertx.rxjava.ext.web.RoutingContext;
 import io.vertx.rxjava.ext.web.handler.BodyHandler;
 import io.vertx.rxjava.ext.web.handler.StaticHandler;
 import io.vertx.rxjava.ext.web.handler.sockjs.SockJSHandler;
-import io.vertx.rxjava.ext.web.templ.HandlebarsTemplateEngine;
-import io.vertx.rxjava.ext.web.templ.TemplateEngine;
+import org.apache.commons.lang3.mutable.MutableBoolean;
 
 import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
-import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAMES_CREATE;
-import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAMES_GET_ONE;
-import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.*;
 import static io.netty.handler.codec.http.HttpResponseStatus.*;
 import static io.vertx.core.http.HttpHeaders.LOCATION;
 import static io.vertx.core.http.HttpHeaders.TEXT_HTML;
+import static java.util.Arrays.asList;
 
 /**
  * This verticle provides the REST-API for the game, including the eventbus-bridge.
@@ -36,20 +49,62 @@ public class HttpVerticle extends AbstractVerticle {
     public static final String FORM_NR_OF_PLAYERS = "nr_of_players";
     public static final String FORM_PLAYER_NAME = "player_name";
     public static final String FORM_SPECTATOR_INDEX = "index";
+    public static final String FORM_SPECTATOR_ROUND = "round";
+    public static final String FORM_SPECTATOR_TIME = "time";
+    public static final String FORM_SPECTATOR_SPEED = "speed";
     public static final String URL_GAMEID = "gameid";
     public static final String URL_PLAYERID = "playerid";
     public static final String URL_SPECTATORID = "spectatorid";
 
-    private TemplateEngine engine = HandlebarsTemplateEngine.create();
+    public static final int DEFAULT_BROWSER_WRITE_QUEUE_SIZE = 64 * 1024;
 
+    public static final String STATIC_PREFIX = "/static/";
+
+    private PageRenderer pages;
+
+    private UpdateFanOut fanOut;
+
+    private int writeQueueSize;
+
+    private EventLoopProbe probe;
+
+    /**
+     * Templates are compiled and static files cached unless {@link de.codepitbull.vertx.eventsourcing.constants.Constants#CONFIG_DEV_MODE}
+     * is set, in dev mode both are read again on every request.
+     */
     @Override
     public void start(Future<Void> startFuture) throws Exception {
+        boolean devMode = config().getBoolean(CONFIG_DEV_MODE, false);
+        pages = new PageRenderer(devMode, config().getInteger(CONFIG_MAX_PAGES, PageRenderer.DEFAULT_MAX_PAGES));
+        pages.start(vertx, asList("creategame", "game", "player", "playgame", "spectator", "watchgame"), compiled -> {
+            if (compiled.succeeded())
+                startServer(devMode, startFuture);
+            else {
+                LOG.info("Failed compiling templates", compiled.cause());
+                startFuture.fail(compiled.cause());
+            }
+        });
+    }
+
+    private void startServer(boolean devMode, Future<Void> startFuture) {
         Router router = Router.router(vertx);
 
         initEventbus(router);
+        initUpdates(router);
+        initWebSockets(router);
 
         router.route().handler(BodyHandler.create());
-        router.route("/static/*").handler(StaticHandler.create().setFilesReadOnly(false).setCacheEntryTimeout(1).setMaxAgeSeconds(2));
+        if (devMode)
+            router.route(STATIC_PREFIX + "*").handler(StaticHandler.create().setFilesReadOnly(false).setCacheEntryTimeout(1).setMaxAgeSeconds(2));
+        else
+            router.get(STATIC_PREFIX + "*").handler(new StaticAssets(vertx, STATIC_PREFIX,
+                    config().getLong(CONFIG_STATIC_MAX_AGE, StaticAssets.DEFAULT_MAX_AGE_SECONDS))::handle);
+
+        MetricsRegistry metrics = MetricsRegistry.get(vertx);
+        probe = metrics.probeEventLoop(vertx);
+        router.get("/metrics").handler(ctx -> ctx.response()
+                .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+                .end(metrics.scrape()));
 
         String text_html = TEXT_HTML.toString();
 
@@ -88,7 +143,6 @@ public class HttpVerticle extends AbstractVerticle {
     private void initEventbus(Router router) {
         SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
         BridgeOptions options = new BridgeOptions()
-                .addOutboundPermitted(new PermittedOptions().setAddressRegex("browser.game..*"))
                 .addOutboundPermitted(new PermittedOptions().setAddressRegex("browser.replay..*"))
                 .addInboundPermitted(new PermittedOptions().setAddressRegex("game..*"))
                 .addInboundPermitted(new PermittedOptions().setAddressRegex("replay..*"));
@@ -96,13 +150,58 @@ public class HttpVerticle extends AbstractVerticle {
         router.route("/eventbus/*").handler(sockJSHandler);
     }
 
+    /**
+     * Game updates are not bridged, browsers get them from the {@link UpdateFanOut} by sending the id of the game.
+     * Players send their id as well and only get the updates of the players around them.
+     */
+    private void initUpdates(Router router) {
+        fanOut = new UpdateFanOut(vertx);
+        writeQueueSize = config().getInteger(CONFIG_BROWSER_WRITE_QUEUE_SIZE, DEFAULT_BROWSER_WRITE_QUEUE_SIZE);
+        SockJSHandler updatesHandler = SockJSHandler.create(vertx).socketHandler(socket -> {
+            SockJSSocket delegate = (SockJSSocket) socket.getDelegate();
+            delegate.setWriteQueueMaxSize(writeQueueSize);
+            String[] gameId = new String[1];
+            socket.handler(msg -> {
+                if (gameId[0] != null)
+                    fanOut.unsubscribe(gameId[0], delegate);
+                JsonObject subscription = new JsonObject(msg.toString());
+                gameId[0] = subscription.getString(GAME_ID);
+                if (gameId[0] != null)
+                    fanOut.subscribe(gameId[0], delegate, UpdateFanOut.Encoding.JSON,
+                            subscription.getInteger(PLAYER_ID, UpdateFanOut.NO_VIEWER));
+            });
+            socket.endHandler(end -> {
+                if (gameId[0] != null)
+                    fanOut.unsubscribe(gameId[0], delegate);
+            });
+        });
+        router.route("/updates/*").handler(updatesHandler);
+    }
+
+    /**
+     * Plain websockets speaking the binary layout of {@link EventCodecs} instead of JSON in eventbus envelopes. The
+     * server sends the state of the game followed by its updates, players send one byte per move holding
+     * {@link Move#ordinal()}.
+     */
+    private void initWebSockets(Router router) {
+        router.get("/ws/games/:gameid/players/:playerid").handler(this::joinGameAsPlayerOverWebSocket);
+        router.get("/ws/games/:gameid/spectators/:spectatorid").handler(this::joinGameAsSpectatorOverWebSocket);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        fanOut.close();
+        if (probe != null)
+            probe.release();
+    }
+
     public void getPlayers(RoutingContext ctx) {
         String gameId = ctx.request().getParam(URL_GAMEID);
         ctx.put(URL_GAMEID, gameId);
         vertx.eventBus().send(GAMES_GET_ONE, gameId,
                 res -> {
                     if (res.succeeded())
-                        engine.render(ctx, "templates/player.hbs", result -> ctx.response().end(result.result()));
+                        render(ctx, "player");
                     else
                         ctx.response().setStatusCode(NOT_FOUND.code());
                 }
@@ -125,7 +224,7 @@ public class HttpVerticle extends AbstractVerticle {
     }
 
     public void getGames(RoutingContext ctx) {
-        engine.render(ctx, "templates/creategame.hbs", result -> ctx.response().end(result.result()));
+        render(ctx, "creategame");
     }
 
     public void createGame(RoutingContext ctx) {
@@ -138,6 +237,67 @@ public class HttpVerticle extends AbstractVerticle {
         });
     }
 
+    public void joinGameAsPlayerOverWebSocket(RoutingContext ctx) {
+        String gameId = ctx.request().getParam(URL_GAMEID);
+        int playerId = Integer.parseInt(ctx.request().getParam(URL_PLAYERID));
+        ServerWebSocket socket = (ServerWebSocket) ctx.request().upgrade().getDelegate();
+        socket.setWriteQueueMaxSize(writeQueueSize);
+        fanOut.subscribe(gameId, socket, UpdateFanOut.Encoding.BINARY, playerId);
+        //excess moves are rejected here already, the game limits them again for all other clients
+        TokenBucket limiter = new TokenBucket(config().getInteger(CONFIG_INPUT_RATE, TokenBucket.DEFAULT_RATE_PER_SECOND),
+                config().getInteger(CONFIG_INPUT_BURST, TokenBucket.DEFAULT_BURST), System.nanoTime());
+        socket.handler(frame -> {
+            if (frame.length() == 1 && Move.isOrdinal(frame.getByte(0))) {
+                if (limiter.tryAcquire(System.nanoTime()))
+                    vertx.eventBus().send(GAME_INPUT_BASE + gameId, EventCodecs.encodeMove(playerId, Move.fromOrdinal(frame.getByte(0))));
+            } else {
+                LOG.info("Closing websocket of player " + playerId + " in game " + gameId + " after invalid move");
+                socket.close();
+            }
+        });
+        socket.closeHandler(closed -> fanOut.unsubscribe(gameId, socket));
+    }
+
+    /**
+     * Streams a replay registered before. A replay can't skip rounds, spectators not keeping up are disconnected.
+     * The replay is stopped as soon as the websocket is closed, the websocket is closed if the replay can't be started.
+     */
+    public void joinGameAsSpectatorOverWebSocket(RoutingContext ctx) {
+        String gameId = ctx.request().getParam(URL_GAMEID);
+        int spectatorId = Integer.parseInt(ctx.request().getParam(URL_SPECTATORID));
+        ServerWebSocket socket = (ServerWebSocket) ctx.request().upgrade().getDelegate();
+        socket.setWriteQueueMaxSize(writeQueueSize);
+        MessageConsumer<Object> consumer = vertx.eventBus().consumer(BROWSER_SPECTATOR_BASE + gameId + "." + spectatorId);
+        MutableBoolean stopped = new MutableBoolean();
+        consumer.handler(msg -> {
+            if (socket.writeQueueFull()) {
+                LOG.info("Closing websocket of spectator " + spectatorId + " in game " + gameId + ", it can't keep up");
+                stopReplay(gameId, spectatorId, consumer, stopped);
+                socket.close();
+            } else if (msg.body() instanceof RoundUpdate)
+                socket.write(((RoundUpdate) msg.body()).toBuffer());
+            else
+                socket.write(EventCodecs.encode((Game) msg.body()));
+        });
+        consumer.completionHandler(registered -> vertx.eventBus().send(REPLAY_START_BASE + gameId,
+                new JsonObject().put(SPECTATOR_ID, spectatorId).put(REPLAY_BINARY, true), started -> {
+                    if (started.failed()) {
+                        LOG.info("Closing websocket of spectator " + spectatorId + " in game " + gameId + ", "
+                                + started.cause().getMessage());
+                        socket.close();
+                    }
+                }));
+        socket.closeHandler(closed -> stopReplay(gameId, spectatorId, consumer, stopped));
+    }
+
+    private void stopReplay(String gameId, int spectatorId, MessageConsumer<Object> consumer, MutableBoolean stopped) {
+        if (stopped.booleanValue())
+            return;
+        stopped.setValue(true);
+        consumer.unregister();
+        vertx.eventBus().send(REPLAY_STOP_BASE + gameId, spectatorId);
+    }
+
     public void joinGameAsPlayer(RoutingContext ctx) {
         String gameId = ctx.request().getParam(URL_GAMEID);
         Integer playerid = Integer.parseInt(ctx.request().getParam(URL_PLAYERID));
@@ -146,7 +306,7 @@ public class HttpVerticle extends AbstractVerticle {
         vertx.eventBus().send(GAMES_GET_ONE, gameId,
                 res -> {
                     if (res.succeeded())
-                        engine.render(ctx, "templates/playgame.hbs", result -> ctx.response().end(result.result()));
+                        render(ctx, "playgame");
                     else
                         ctx.response().setStatusCode(NOT_FOUND.code());
                 }
@@ -155,7 +315,7 @@ public class HttpVerticle extends AbstractVerticle {
 
     public void deleteGame(RoutingContext ctx) {
         ctx.put(URL_GAMEID, Integer.parseInt(ctx.request().getParam(URL_GAMEID)));
-        engine.render(ctx, "templates/playgame.hbs", result -> ctx.response().end(result.result()));
+        render(ctx, "playgame");
     }
 
     public void getGame(RoutingContext ctx) {
@@ -164,7 +324,7 @@ public class HttpVerticle extends AbstractVerticle {
         vertx.eventBus().send(GAMES_GET_ONE, gameId,
                 res -> {
                     if (res.succeeded())
-                        engine.render(ctx, "templates/game.hbs", result -> ctx.response().end(result.result()));
+                        render(ctx, "game");
                     else
                         ctx.response().setStatusCode(NOT_FOUND.code());
                 }
@@ -177,7 +337,7 @@ public class HttpVerticle extends AbstractVerticle {
         vertx.eventBus().send(GAMES_GET_ONE, gameId,
                 res -> {
                     if (res.succeeded())
-                        engine.render(ctx, "templates/spectator.hbs", result -> ctx.response().end(result.result()));
+                        render(ctx, "spectator");
                     else
                         ctx.response().setStatusCode(NOT_FOUND.code());
                 }
@@ -187,8 +347,18 @@ public class HttpVerticle extends AbstractVerticle {
     public void createSpectator(RoutingContext ctx) {
         String gameId = ctx.request().getParam(URL_GAMEID);
         ctx.put(URL_GAMEID, gameId);
-        JsonObject req = new JsonObject()
-                .put(REPLAY_INDEX, Integer.parseInt(ctx.request().formAttributes().get(FORM_SPECTATOR_INDEX)));
+        JsonObject req = new JsonObject();
+        String round = ctx.request().formAttributes().get(FORM_SPECTATOR_ROUND);
+        String time = ctx.request().formAttributes().get(FORM_SPECTATOR_TIME);
+        if (round != null && !round.isEmpty())
+            req.put(REPLAY_ROUND, Integer.parseInt(round));
+        else if (time != null && !time.isEmpty())
+            req.put(REPLAY_TIME, Long.parseLong(time));
+        else
+            req.put(REPLAY_INDEX, Integer.parseInt(ctx.request().formAttributes().get(FORM_SPECTATOR_INDEX)));
+        String speed = ctx.request().formAttributes().get(FORM_SPECTATOR_SPEED);
+        if (speed != null)
+            req.put(REPLAY_SPEED, Integer.parseInt(speed));
 
         vertx.eventBus().send(Addresses.REPLAY_REGISTER_BASE + gameId, req, res -> {
             if (res.failed())
@@ -206,10 +376,23 @@ public class HttpVerticle extends AbstractVerticle {
         vertx.eventBus().<Integer>send(GAMES_GET_ONE, gameId,
                 res -> {
                     if (res.succeeded()) {
-                        engine.render(ctx, "templates/watchgame.hbs", result -> ctx.response().end(result.result()));
+                        render(ctx, "watchgame");
                     } else
                         ctx.response().setStatusCode(NOT_FOUND.code());
                 }
         );
     }
+
+    private void render(RoutingContext ctx, String template) {
+        Buffer page;
+        try {
+            page = pages.render(template, ((io.vertx.ext.web.RoutingContext) ctx.getDelegate()).data());
+        } catch (Exception e) {
+            LOG.error("Failed rendering " + template, e);
+            ctx.response().setStatusCode(INTERNAL_SERVER_ERROR.code()).end();
+            return;
+        }
+        HttpServerResponse response = (HttpServerResponse) ctx.response().getDelegate();
+        response.putHeader("Content-Type", "text/html;charset=UTF-8").end(page);
+    }
 }
@@ -0,0 +1,99 @@
+package de.codepitbull.vertx.eventsourcing.web;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.github.jknack.handlebars.io.ClassPathTemplateLoader;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.rxjava.core.Vertx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Renders the handlebars templates of the web interface.
+ * <p>
+ * All templates are compiled on a worker when the renderer is started. Rendered pages are kept, keyed by template and
+ * data, so the pages of a game are rendered once for all of its players. In dev mode templates are read and compiled
+ * on every request instead, so they can be edited while the server runs.
+ * <p>
+ * Only to be used from the context it has been started on.
+ *
+ * @author Jochen Mader
+ */
+public class PageRenderer {
+
+    public static final int DEFAULT_MAX_PAGES = 1024;
+
+    private final Handlebars handlebars = new Handlebars(new ClassPathTemplateLoader("/templates", ".hbs"));
+    private final boolean devMode;
+    private final Map<String, Template> templates = new HashMap<>();
+    private final Map<String, Buffer> pages;
+
+    public PageRenderer(boolean devMode, int maxPages) {
+        isTrue(maxPages > 0, "Max number of pages must be positive but was %d", maxPages);
+        this.devMode = devMode;
+        this.pages = new LinkedHashMap<String, Buffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Buffer> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Compiles the given templates, nothing is done in dev mode.
+     */
+    public void start(Vertx vertx, List<String> names, Handler<AsyncResult<Void>> resultHandler) {
+        notNull(names, "names must be set");
+        if (devMode) {
+            resultHandler.handle(Future.succeededFuture());
+            return;
+        }
+        vertx.<Map<String, Template>>executeBlocking(future -> {
+            Map<String, Template> compiled = new HashMap<>();
+            try {
+                for (String name : names)
+                    compiled.put(name, handlebars.compile(name));
+                future.complete(compiled);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, compiled -> {
+            if (compiled.succeeded()) {
+                templates.putAll(compiled.result());
+                resultHandler.handle(Future.succeededFuture());
+            } else
+                resultHandler.handle(Future.failedFuture(compiled.cause()));
+        });
+    }
+
+    /**
+     * @param name name of a template passed to {@link #start(Vertx, List, Handler)}
+     * @param data the values used by the template, they have to be immutable
+     */
+    public Buffer render(String name, Map<String, Object> data) throws IOException {
+        if (devMode)
+            return Buffer.buffer(handlebars.compile(name).apply(data));
+        String key = name + new TreeMap<>(data);
+        Buffer page = pages.get(key);
+        if (page == null) {
+            Template template = templates.get(name);
+            if (template == null)
+                throw new IllegalArgumentException("Unknown template " + name);
+            page = Buffer.buffer(template.apply(data));
+            pages.put(key, page);
+        }
+        return page;
+    }
+}
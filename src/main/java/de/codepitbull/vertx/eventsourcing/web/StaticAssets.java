@@ -0,0 +1,204 @@
+package de.codepitbull.vertx.eventsourcing.web;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.impl.MimeMapping;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * Serves the files below webroot from memory.
+ * <p>
+ * A file is read on a worker when it is first requested and kept for the lifetime of the process, shared by all
+ * verticles of the process. Compressible files are kept gzipped as well, a precompressed {@code <file>.gz} next to the
+ * file is used if there is one. Every file gets an ETag, so browsers revalidate with a 304 instead of fetching it
+ * again. Requests for files that don't exist are passed on and not cached, the cache is bounded by the size of
+ * webroot.
+ * <p>
+ * Only to be used from the context it has been created on.
+ *
+ * @author Jochen Mader
+ */
+public class StaticAssets {
+    private static final Logger LOG = LoggerFactory.getLogger(StaticAssets.class);
+
+    public static final String WEBROOT = "webroot";
+    public static final long DEFAULT_MAX_AGE_SECONDS = 3600;
+
+    private static final String ASSETS_MAP = "static.assets";
+    private static final String GZIP = "gzip";
+
+    private final Vertx vertx;
+    private final String prefix;
+    private final FileSystem fileSystem;
+    private final long maxAgeSeconds;
+    private final LocalMap<String, Asset> assets;
+    //requests waiting for a file being read
+    private final Map<String, List<RoutingContext>> loading = new HashMap<>();
+
+    /**
+     * @param prefix the path the handler is routed to, it is stripped from the path of a request to get the file
+     */
+    public StaticAssets(Vertx vertx, String prefix, long maxAgeSeconds) {
+        this.vertx = notNull(vertx, "vertx must be set");
+        this.prefix = notNull(prefix, "prefix must be set");
+        isTrue(maxAgeSeconds >= 0, "Max age must not be negative but was %d", maxAgeSeconds);
+        io.vertx.core.Vertx delegate = (io.vertx.core.Vertx) vertx.getDelegate();
+        this.fileSystem = delegate.fileSystem();
+        this.assets = delegate.sharedData().getLocalMap(ASSETS_MAP);
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public void handle(RoutingContext ctx) {
+        String path = ctx.normalisedPath();
+        if (!path.startsWith(prefix)) {
+            ctx.next();
+            return;
+        }
+        String file = path.substring(prefix.length());
+        if (file.isEmpty() || file.contains("..")) {
+            ctx.next();
+            return;
+        }
+        Asset asset = assets.get(file);
+        if (asset != null) {
+            send(ctx, asset);
+            return;
+        }
+        List<RoutingContext> waiting = loading.get(file);
+        if (waiting != null) {
+            waiting.add(ctx);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(ctx);
+        loading.put(file, waiting);
+        vertx.<Asset>executeBlocking(future -> {
+            try {
+                future.complete(load(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, false, loaded -> {
+            List<RoutingContext> requests = loading.remove(file);
+            if (loaded.failed()) {
+                LOG.error("Failed reading " + file, loaded.cause());
+                requests.forEach(request -> request.response().setStatusCode(INTERNAL_SERVER_ERROR.code()).end());
+            } else if (loaded.result() == null)
+                requests.forEach(RoutingContext::next);
+            else {
+                Asset existing = assets.putIfAbsent(file, loaded.result());
+                Asset toSend = existing == null ? loaded.result() : existing;
+                requests.forEach(request -> send(request, toSend));
+            }
+        });
+    }
+
+    private void send(RoutingContext ctx, Asset asset) {
+        HttpServerRequest request = (HttpServerRequest) ctx.request().getDelegate();
+        HttpServerResponse response = request.response();
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = asset.gzipped != null && acceptEncoding != null && acceptEncoding.contains(GZIP);
+        //the encodings differ in their bytes, so they can't share a strong ETag
+        String etag = gzip ? asset.gzippedEtag : asset.etag;
+        response.putHeader("ETag", etag)
+                .putHeader("Cache-Control", "public, max-age=" + maxAgeSeconds);
+        if (asset.gzipped != null)
+            response.putHeader("Vary", "Accept-Encoding");
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatusCode(NOT_MODIFIED.code()).end();
+            return;
+        }
+        response.putHeader("Content-Type", asset.contentType);
+        if (gzip)
+            response.putHeader("Content-Encoding", GZIP).end(asset.gzipped);
+        else
+            response.end(asset.content);
+    }
+
+    /**
+     * @return null if there is no such file
+     */
+    private Asset load(String file) throws IOException {
+        String path = WEBROOT + "/" + file;
+        if (!fileSystem.existsBlocking(path) || fileSystem.propsBlocking(path).isDirectory())
+            return null;
+        Buffer content = fileSystem.readFileBlocking(path);
+        String contentType = contentType(file);
+        Buffer gzipped = null;
+        if (fileSystem.existsBlocking(path + ".gz"))
+            gzipped = fileSystem.readFileBlocking(path + ".gz");
+        else if (compressible(contentType))
+            gzipped = gzip(content);
+        if (gzipped != null && gzipped.length() >= content.length())
+            gzipped = null;
+        return new Asset(content, gzipped, contentType, etag(content));
+    }
+
+    private static String contentType(String file) {
+        int dot = file.lastIndexOf('.');
+        String type = dot < 0 ? null : MimeMapping.getMimeTypeForExtension(file.substring(dot + 1));
+        if (type == null)
+            return "application/octet-stream";
+        return type.startsWith("text/") || type.equals("application/javascript") ? type + ";charset=UTF-8" : type;
+    }
+
+    private static boolean compressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json") || contentType.startsWith("image/svg+xml");
+    }
+
+    private static Buffer gzip(Buffer content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length() / 3);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content.getBytes());
+        }
+        return Buffer.buffer(out.toByteArray());
+    }
+
+    private static String etag(Buffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.getBytes());
+        return Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length());
+    }
+
+    /**
+     * A file as it is sent, never modified once created.
+     */
+    private static class Asset implements Shareable {
+        final Buffer content;
+        final Buffer gzipped;
+        final String contentType;
+        final String etag;
+        final String gzippedEtag;
+
+        Asset(Buffer content, Buffer gzipped, String contentType, String tag) {
+            this.content = content;
+            this.gzipped = gzipped;
+            this.contentType = contentType;
+            this.etag = "\"" + tag + "\"";
+            this.gzippedEtag = "\"" + tag + "-gz\"";
+        }
+    }
+}
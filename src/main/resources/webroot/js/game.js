@@ -1,4 +1,4 @@
-requirejs(["phaser", "vertxbus"], function(deps) {
+requirejs(["phaser", "vertxbus", "sockjs"], function(phaser, vertxbus, SockJS) {
     var STAND_F = "stand_f";
     var STAND_B = "stand_b";
     var STAND_L = "stand_l";
@@ -26,7 +26,9 @@ requirejs(["phaser", "vertxbus"], function(deps) {
         if(playerId == -1) {
             var spectatorId = parseInt(document.getElementById("spectatorid").value);
             console.log("Starting spectator on browser.replay."+gameId+"."+spectatorId);
-            eb.registerHandler("browser.replay."+gameId+"."+spectatorId, function(result) {
+            //the server sends encoded json so all spectators can share the encoding
+            eb.registerHandler("browser.replay."+gameId+"."+spectatorId, function(message) {
+                var result = JSON.parse(message);
                 if(result.type == "snapshot") {
                     gameDataInst = new gameData('map', gameId, playerId, result.players, result.round_id);
                     game = new Phaser.Game(800, 600, Phaser.AUTO, 'phaser-example', { preload: preload, create: create, update: update });
@@ -39,14 +41,28 @@ requirejs(["phaser", "vertxbus"], function(deps) {
         }
         else {
             console.log("Starting player "+playerId+" for game with id "+gameId);
-            eb.registerHandler("browser.game."+gameId, function(incoming) {
-                console.log(JSON.stringify(incoming))
-                update_queue.push(incoming)
-            });
-            eb.send("game."+gameId, {"action":"snp"}, function(result) {
-                gameDataInst = new gameData('map', gameId, playerId, result.players, result.round_id);
-                game = new Phaser.Game(800, 600, Phaser.AUTO, 'phaser-example', { preload: preload, create: create, update: update });
-            });
+            //the server starts with the state of the game and sends it again if we fell behind
+            var updates = new SockJS('http://localhost:8070/updates');
+            updates.onopen = function() {
+                //only the players around us are sent, others show up as new players when they come into view
+                updates.send(JSON.stringify({"game_id": gameId, "player_id": playerId}));
+            };
+            updates.onmessage = function(e) {
+                var incoming = JSON.parse(e.data);
+                if(incoming.type == "snapshot") {
+                    if(gameDataInst == null) {
+                        gameDataInst = new gameData('map', gameId, playerId, incoming.players, incoming.round_id);
+                        game = new Phaser.Game(800, 600, Phaser.AUTO, 'phaser-example', { preload: preload, create: create, update: update });
+                    }
+                    else {
+                        update_queue = [];
+                        gameDataInst.resync(incoming.players, incoming.round_id);
+                    }
+                }
+                else {
+                    update_queue.push(incoming)
+                }
+            };
         }
 
     };
@@ -70,14 +86,21 @@ requirejs(["phaser", "vertxbus"], function(deps) {
             //continue until we get current events
             if(update_val.round_id <= gameDataInst.roundId) {
                 console.log("SKIPPING "+JSON.stringify(update_val));
+                update_val = update_queue.shift();
                 continue;
             }
+            gameDataInst.roundId = update_val.round_id;
             update_val.actions.forEach(function(action) {
                 console.log("ADDING "+JSON.stringify(action));
                 if(action.action == "newp") {
-                    var pl = new character(action.player.player_id, action.player.x, action.player.y);
-                    pl.init();
-                    gameDataInst.players.set(pl.spriteId, pl);
+                    var known = gameDataInst.players.get(action.player.player_id);
+                    if(known != null)
+                        known.moveTo(action.player.x, action.player.y);
+                    else {
+                        var pl = new character(action.player.player_id, action.player.x, action.player.y);
+                        pl.init();
+                        gameDataInst.players.set(pl.spriteId, pl);
+                    }
                 }
             });
             update_val.players.forEach(function(playerAction) {
@@ -131,6 +154,21 @@ requirejs(["phaser", "vertxbus"], function(deps) {
             return me.players.get(me.playerId);
         };
 
+        this.resync = function(playerInfo, roundId) {
+            me.roundId = roundId;
+            playerInfo.forEach(function(entry) {
+                var pl = me.players.get(entry.player_id);
+                if(pl == null) {
+                    pl = new character(entry.player_id, entry.x, entry.y);
+                    me.players.set(entry.player_id, pl);
+                    if(me.map != null)
+                        pl.init();
+                }
+                else
+                    pl.moveTo(entry.x, entry.y);
+            });
+        };
+
         this.init = function() {
             me.map = game.add.tilemap(mapName);
             me.map.addTilesetImage('tiles', 'tiles_image');
@@ -158,9 +196,17 @@ requirejs(["phaser", "vertxbus"], function(deps) {
         this.moveUp = function() {me.posY -= 1; me.spriteInstance.y -= 20; me.spriteInstance.animations.play(ANIM_B, 5, true);};
         this.moveDown = function() {me.posY += 1; me.spriteInstance.y += 20; me.spriteInstance.animations.play(ANIM_F, 5, true);};
         this.standStill = function() {me.spriteInstance.animations.play(STAND_F, 5, true)};
+        this.moveTo = function(x, y) {
+            me.posX = x;
+            me.posY = y;
+            if(me.spriteInstance != null) {
+                me.spriteInstance.x = x*gameDataInst.map.tileWidth;
+                me.spriteInstance.y = y*gameDataInst.map.tileHeight;
+            }
+        };
 
         this.init = function() {
-            me.spriteInstance = sprite(entityId, x, y);
+            me.spriteInstance = sprite(entityId, me.posX, me.posY);
             me.spriteInstance.animations.play(STAND_F, 5, true);
         }
     }
@@ -0,0 +1,220 @@
+package de.codepitbull.vertx.eventsourcing.broadcast;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.BROWSER_GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class UpdateFanOutTest {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    private Game game;
+
+    private UpdateFanOut fanOut;
+
+    @Before
+    public void setUp() {
+        game = Game.builder().gameId("1").numPlayers(2).roundId(0)
+                .player(Player.builder().id(0).name("player1").x(3).y(5).build())
+                .build();
+        rule.vertx().eventBus().<JsonObject>consumer(GAME_BASE + "1", msg -> msg.reply(game.toJson()));
+        fanOut = new UpdateFanOut(new Vertx(rule.vertx()));
+    }
+
+    @Test
+    public void testUpdatesAreSerialisedOnceForAllSockets(TestContext ctx) {
+        Async async = ctx.async();
+        TestSocket first = new TestSocket();
+        TestSocket second = new TestSocket();
+        second.onWrite = written -> {
+            if (written.size() == 1) {
+                ctx.assertEquals(game.toJson(), new JsonObject(written.get(0).toString()));
+                publish(1, Move.LEFT);
+            } else {
+                ctx.assertEquals(0, new JsonObject(written.get(1).toString()).getJsonArray(PLAYERS).getJsonObject(0).getInteger(PLAYER_ID));
+                rule.vertx().runOnContext(v -> {
+                    ctx.assertTrue(first.written.get(1) == written.get(1));
+                    fanOut.unsubscribe("1", first);
+                    fanOut.unsubscribe("1", second);
+                    ctx.assertEquals(0, fanOut.subscribers("1"));
+                    async.complete();
+                });
+            }
+        };
+        fanOut.subscribe("1", first);
+        fanOut.subscribe("1", second);
+    }
+
+    @Test
+    public void testSlowSocketGetsLatestStateAfterDraining(TestContext ctx) {
+        Async async = ctx.async();
+        TestSocket fast = new TestSocket();
+        TestSocket slow = new TestSocket();
+        fast.onWrite = written -> {
+            if (written.size() == 1) {
+                slow.full = true;
+                for (int round = 1; round <= 3; round++)
+                    publish(round, Move.RIGHT);
+            } else if (written.size() == 4) {
+                rule.vertx().runOnContext(v -> {
+                    ctx.assertEquals(1, slow.written.size());
+                    ctx.assertEquals(3L, fanOut.droppedUpdates());
+                    slow.drain();
+                });
+            }
+        };
+        slow.onWrite = written -> {
+            if (written.size() == 1)
+                rule.vertx().runOnContext(v -> fanOut.subscribe("1", fast));
+            else {
+                JsonObject state = new JsonObject(written.get(1).toString());
+                ctx.assertEquals(SNAPSHOT, state.getString(MSG_TYPE));
+                ctx.assertEquals(3, state.getInteger(ROUND_ID));
+                ctx.assertEquals(6, state.getJsonArray(PLAYERS).getJsonObject(0).getInteger(POS_X));
+                async.complete();
+            }
+        };
+        fanOut.subscribe("1", slow);
+    }
+
+    @Test
+    public void testViewersOnlyGetPlayersAroundThem(TestContext ctx) {
+        Async async = ctx.async();
+        game = Game.builder().gameId("1").numPlayers(2).roundId(0)
+                .player(Player.builder().id(0).name("player1").x(3).y(5).build())
+                .player(Player.builder().id(1).name("player2").x(Game.VIEW_CELL_SIZE * 2 + 1).y(5).build())
+                .build();
+        TestSocket viewer = new TestSocket();
+        TestSocket all = new TestSocket();
+        viewer.onWrite = written -> {
+            JsonObject update = new JsonObject(written.get(written.size() - 1).toString());
+            switch (written.size()) {
+                case 1:
+                    rule.vertx().eventBus().publish(BROWSER_GAME_BASE + "1", RoundUpdate.builder().roundId(1)
+                            .move(0, Move.DOWN).move(1, Move.LEFT).build());
+                    break;
+                case 2:
+                    ctx.assertEquals(1, update.getJsonArray(PLAYERS).size());
+                    ctx.assertEquals(0, update.getJsonArray(PLAYERS).getJsonObject(0).getInteger(PLAYER_ID));
+                    ctx.assertTrue(update.getJsonArray(ACTIONS).isEmpty());
+                    publish(2, Move.UP);
+                    break;
+                case 3:
+                    ctx.assertEquals(1, update.getJsonArray(PLAYERS).size());
+                    rule.vertx().eventBus().publish(BROWSER_GAME_BASE + "1", RoundUpdate.builder().roundId(3)
+                            .move(1, Move.LEFT).build());
+                    break;
+                default:
+                    //the other player came into view
+                    ctx.assertTrue(update.getJsonArray(PLAYERS).isEmpty());
+                    JsonObject entered = update.getJsonArray(ACTIONS).getJsonObject(0).getJsonObject(PLAYER);
+                    ctx.assertEquals(1, entered.getInteger(PLAYER_ID));
+                    ctx.assertEquals(Game.VIEW_CELL_SIZE * 2 - 1, entered.getInteger(POS_X));
+                    rule.vertx().runOnContext(v -> {
+                        ctx.assertEquals(4, all.written.size());
+                        ctx.assertEquals(2, new JsonObject(all.written.get(1).toString()).getJsonArray(PLAYERS).size());
+                        async.complete();
+                    });
+            }
+        };
+        fanOut.subscribe("1", all);
+        fanOut.subscribe("1", viewer, UpdateFanOut.Encoding.JSON, 0);
+    }
+
+    @Test
+    public void testViewersOnlyGetStateOfPlayersAroundThem(TestContext ctx) {
+        Async async = ctx.async();
+        game = Game.builder().gameId("1").numPlayers(2).roundId(0)
+                .player(Player.builder().id(0).name("player1").x(3).y(5).build())
+                .player(Player.builder().id(1).name("player2").x(Game.VIEW_CELL_SIZE * 2).y(5).build())
+                .build();
+        TestSocket viewer = new TestSocket();
+        viewer.onWrite = written -> {
+            JsonObject state = new JsonObject(written.get(written.size() - 1).toString());
+            if (written.size() == 1) {
+                ctx.assertEquals(SNAPSHOT, state.getString(MSG_TYPE));
+                ctx.assertEquals(1, state.getJsonArray(PLAYERS).size());
+                ctx.assertEquals(0, state.getJsonArray(PLAYERS).getJsonObject(0).getInteger(PLAYER_ID));
+                //the other player is sent once it comes into view
+                rule.vertx().eventBus().publish(BROWSER_GAME_BASE + "1", RoundUpdate.builder().roundId(1)
+                        .move(1, Move.LEFT).build());
+            } else {
+                ctx.assertEquals(1, state.getJsonArray(ACTIONS).getJsonObject(0).getJsonObject(PLAYER).getInteger(PLAYER_ID));
+                async.complete();
+            }
+        };
+        fanOut.subscribe("1", viewer, UpdateFanOut.Encoding.JSON, 0);
+    }
+
+    private void publish(int round, Move move) {
+        rule.vertx().eventBus().publish(BROWSER_GAME_BASE + "1", RoundUpdate.builder().roundId(round).move(0, move).build());
+    }
+
+    private static class TestSocket implements WriteStream<Buffer> {
+        final List<Buffer> written = new ArrayList<>();
+        Handler<List<Buffer>> onWrite = written -> {};
+        Handler<Void> drainHandler;
+        boolean full;
+
+        void drain() {
+            full = false;
+            if (drainHandler != null)
+                drainHandler.handle(null);
+        }
+
+        @Override
+        public WriteStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public WriteStream<Buffer> write(Buffer data) {
+            written.add(data);
+            onWrite.handle(written);
+            return this;
+        }
+
+        @Override
+        public WriteStream<Buffer> setWriteQueueMaxSize(int maxSize) {
+            return this;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return full;
+        }
+
+        @Override
+        public WriteStream<Buffer> drainHandler(Handler<Void> handler) {
+            drainHandler = handler;
+            return this;
+        }
+    }
+}
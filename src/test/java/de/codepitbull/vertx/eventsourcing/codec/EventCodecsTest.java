@@ -0,0 +1,55 @@
+package de.codepitbull.vertx.eventsourcing.codec;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Jochen Mader
+ */
+public class EventCodecsTest {
+
+    @Test
+    public void testRoundUpdateRoundTrip() {
+        RoundUpdate update = RoundUpdate.builder()
+                .roundId(42)
+                .move(0, Move.LEFT)
+                .move(1, Move.DOWN)
+                .newPlayer(Player.builder().id(1).name("pläyer2").x(4).y(5).build())
+                .build();
+        assertEquals(update.toJson(), EventCodecs.decodeRoundUpdate(EventCodecs.encode(update)).toJson());
+    }
+
+    @Test
+    public void testGameRoundTripFromWire() {
+        Game game = Game.builder()
+                .gameId("game-1")
+                .numPlayers(2)
+                .roundId(7)
+                .player(Player.builder().id(0).name("player1").x(3).y(5).build())
+                .build();
+        //the eventbus hands the codec a buffer with the message header in front
+        Buffer wire = Buffer.buffer().appendInt(0xCAFE);
+        new GameCodec().encodeToWire(wire, game);
+        assertEquals(game.toJson(), new GameCodec().decodeFromWire(4, wire).toJson());
+    }
+
+    @Test
+    public void testRoundUpdateIsEncodedOnceForAllReceivers() {
+        RoundUpdate update = RoundUpdate.builder().roundId(3).move(0, Move.UP).build();
+        Buffer wire = Buffer.buffer().appendInt(0xCAFE);
+        new RoundUpdateCodec().encodeToWire(wire, update);
+        new RoundUpdateCodec().encodeToWire(wire, update);
+        assertSame(update.toBuffer(), update.toBuffer());
+        assertEquals(update.toBuffer(), wire.slice(4 + update.toBuffer().length(), wire.length()));
+        assertSame(update.toJsonBuffer(), update.toJsonBuffer());
+        assertEquals(update.toJson(), new JsonObject(update.toJsonBuffer().toString()));
+    }
+}
@@ -0,0 +1,48 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+public class ClusterViewTest {
+
+    @Test
+    public void testLeastLoadedNode() {
+        ClusterView view = new ClusterView("b");
+        view.heartbeat("a", 4, Collections.singletonMap("game1", 4), 0);
+        view.heartbeat("c", 2, Collections.singletonMap("game2", 2), 0);
+        assertEquals("c", view.leastLoadedNode(3));
+        assertEquals("b", view.leastLoadedNode(1));
+        //ties go to the smaller node id
+        assertEquals("b", view.leastLoadedNode(2));
+        view.reserve("c", "game3", 4);
+        assertEquals("a", view.leastLoadedNode(6));
+        assertEquals("c", view.ownerOf("game3"));
+        assertEquals(3, view.games().size());
+    }
+
+    @Test
+    public void testExpiredNodesReleaseTheirGames() {
+        ClusterView view = new ClusterView("a");
+        Map<String, Integer> games = new HashMap<>();
+        for (int i = 0; i < 100; i++)
+            games.put("game" + i, 2);
+        view.heartbeat("b", 200, games, 0);
+        view.heartbeat("c", 0, Collections.emptyMap(), 900);
+        assertTrue(view.expire(1000, 500).keySet().equals(games.keySet()));
+        assertEquals(Collections.singletonList("c"), view.remoteNodes());
+        assertNull(view.ownerOf("game1"));
+        //the remaining nodes share the recovery
+        long recoveredHere = games.keySet().stream().filter(gameId -> "a".equals(view.recoveryNodeFor(gameId))).count();
+        assertTrue(recoveredHere > 0 && recoveredHere < 100);
+        assertTrue(view.expire(1000, 500).isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Jochen Mader
+ */
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 10000;
+
+    @Test
+    public void testKeysSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        assertNull(ring.nodeFor("game"));
+        for (int i = 0; i < 4; i++)
+            ring.addNode("host" + i);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++)
+            counts.merge(ring.nodeFor("game" + i), 1, Integer::sum);
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue("Unbalanced ring: " + counts, count > KEYS / 8 && count < KEYS / 2));
+    }
+
+    @Test
+    public void testAddingNodeOnlyMovesKeysToIt() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (int i = 0; i < 4; i++)
+            ring.addNode("host" + i);
+        String[] before = new String[KEYS];
+        for (int i = 0; i < KEYS; i++)
+            before[i] = ring.nodeFor("game" + i);
+
+        ring.addNode("host4");
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = ring.nodeFor("game" + i);
+            if (!owner.equals(before[i])) {
+                assertEquals("host4", owner);
+                moved++;
+            }
+        }
+        assertTrue("Moved " + moved, moved > KEYS / 10 && moved < KEYS / 3);
+
+        ring.removeNode("host4");
+        for (int i = 0; i < KEYS; i++)
+            assertEquals(before[i], ring.nodeFor("game" + i));
+    }
+}
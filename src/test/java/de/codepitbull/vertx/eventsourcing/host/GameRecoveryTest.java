@@ -0,0 +1,94 @@
+package de.codepitbull.vertx.eventsourcing.host;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import de.codepitbull.vertx.eventsourcing.store.FileEventStore;
+import de.codepitbull.vertx.eventsourcing.store.InMemoryEventStore;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class GameRecoveryTest {
+    public static final String GAME_ID = "1";
+    public static final int ROUNDS = 1000;
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNothingStored(TestContext ctx) {
+        GameRecovery.recover(new InMemoryEventStore(), GAME_ID, 2, 10, ctx.asyncAssertSuccess(ctx::assertNull));
+    }
+
+    @Test
+    public void testRecoverWithoutSnapshot(TestContext ctx) {
+        EventStore store = new InMemoryEventStore();
+        Game expected = play(store, 1, 10);
+        GameRecovery.recover(store, GAME_ID, 2, 3, ctx.asyncAssertSuccess(game ->
+                ctx.assertEquals(expected.toJson(), game.toJson())));
+    }
+
+    @Test
+    public void testRecoverFromSnapshotInBatches(TestContext ctx) throws IOException {
+        EventStore store = new FileEventStore(new Vertx(rule.vertx()), GAME_ID, folder.getRoot().getAbsolutePath(), null, false);
+        Game expected = play(store, 1, ROUNDS / 2);
+        store.storeSnapshot(expected.snapshot(true), ctx.asyncAssertSuccess());
+        expected = play(store, expected, ROUNDS / 2 + 1, ROUNDS);
+        Game last = expected;
+        GameRecovery.recover(store, GAME_ID, 2, 64, ctx.asyncAssertSuccess(game -> {
+            ctx.assertEquals(ROUNDS, game.getRoundId());
+            ctx.assertEquals(last.toJson(), game.toJson());
+            store.close();
+        }));
+    }
+
+    private Game play(EventStore store, int fromRound, int toRound) {
+        return play(store, Game.builder().gameId(GAME_ID).numPlayers(2).build(), fromRound, toRound);
+    }
+
+    /**
+     * Plays the given rounds like the game loop does and stores the updates.
+     */
+    private Game play(EventStore store, Game game, int fromRound, int toRound) {
+        Move[] moves = Move.values();
+        List<RoundUpdate> updates = new ArrayList<>();
+        for (int round = fromRound; round <= toRound; round++) {
+            RoundUpdate.Builder update = RoundUpdate.builder().roundId(round);
+            List<Player> newPlayers = new ArrayList<>();
+            if (game.currentNumPlayers() < game.getNumPlayers() && round % 3 == 1) {
+                Player player = Player.builder().id(game.currentNumPlayers()).name("player" + round).x(5).y(5).build();
+                game.addPlayer(player);
+                newPlayers.add(player);
+            }
+            for (int index = 0; index < game.currentNumPlayers(); index++) {
+                Move move = moves[(round + index) % moves.length];
+                game.move(index, move);
+                update.move(game.playerId(index), move);
+            }
+            game.incrementAndGetRoundId();
+            updates.add(update.newPlayers(newPlayers).build());
+        }
+        store.storeEvents(updates, result -> {});
+        return game;
+    }
+}
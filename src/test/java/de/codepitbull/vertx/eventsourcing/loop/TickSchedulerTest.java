@@ -0,0 +1,107 @@
+package de.codepitbull.vertx.eventsourcing.loop;
+
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.metrics.MetricsRegistry;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class TickSchedulerTest {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void testGamesShareOneScheduler(TestContext ctx) {
+        Async async = ctx.async();
+        Vertx vertx = new Vertx(rule.vertx());
+        TickScheduler scheduler = TickScheduler.forCurrentEventLoop(vertx, 20);
+        ctx.assertTrue(scheduler == TickScheduler.forCurrentEventLoop(vertx, 20));
+        ctx.assertFalse(scheduler == TickScheduler.forCurrentEventLoop(vertx, 30));
+
+        List<Long> first = new ArrayList<>();
+        List<Long> second = new ArrayList<>();
+        scheduler.register(first::add);
+        TickScheduler.Registration cancelled = scheduler.register(tick -> ctx.fail("Cancelled handler got ticked"));
+        scheduler.register(tick -> {
+            if (tick == 6) {
+                ctx.assertEquals(first.subList(0, 5), second);
+                //metrics are recorded once all games have been ticked, catch up ticks may follow without a break
+                ctx.assertEquals(5L, scheduler.metrics().getTicks());
+                ctx.assertTrue(MetricsRegistry.get(vertx).scrape()
+                        .contains("game_ticks_total{scheduler=\"" + Thread.currentThread().getName() + "/20\"} 5\n"));
+                async.complete();
+            }
+            second.add(tick);
+        });
+        ctx.assertEquals(3, scheduler.registrations());
+        cancelled.cancel();
+        cancelled.cancel();
+        ctx.assertEquals(2, scheduler.registrations());
+    }
+
+    @Test
+    public void testLastCancelReleasesScheduler(TestContext ctx) {
+        Async async = ctx.async();
+        Vertx vertx = new Vertx(rule.vertx());
+        TickScheduler scheduler = TickScheduler.forCurrentEventLoop(vertx, 10);
+        List<Long> ticks = new ArrayList<>();
+        TickScheduler.Registration[] registration = new TickScheduler.Registration[1];
+        registration[0] = scheduler.register(tick -> {
+            ticks.add(tick);
+            registration[0].cancel();
+        });
+        vertx.setTimer(100, id -> {
+            ctx.assertEquals(1, ticks.size());
+            ctx.assertEquals(0, scheduler.registrations());
+            ctx.assertFalse(scheduler == TickScheduler.forCurrentEventLoop(vertx, 10));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testInputQueueKeepsLastMovePerPlayer(TestContext ctx) {
+        InputQueue queue = new InputQueue(2);
+        ctx.assertTrue(queue.offer(1, Move.LEFT));
+        ctx.assertTrue(queue.offer(0, Move.DOWN));
+        ctx.assertTrue(queue.offer(1, Move.UP));
+        ctx.assertFalse(queue.offer(2, Move.UP));
+        ctx.assertEquals(1L, queue.coalescedInputs());
+        ctx.assertEquals(1L, queue.droppedInputs());
+
+        List<String> drained = new ArrayList<>();
+        ctx.assertEquals(2, queue.drain((index, move) -> drained.add(index + move.code())));
+        ctx.assertEquals("[1u, 0d]", drained.toString());
+        ctx.assertEquals(0, queue.size());
+        ctx.assertTrue(queue.offer(1, Move.RIGHT));
+        ctx.assertEquals(1L, queue.coalescedInputs());
+    }
+
+    @Test
+    public void testTokenBucketLimitsRate(TestContext ctx) {
+        long second = 1_000_000_000L;
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        ctx.assertTrue(bucket.tryAcquire(0));
+        ctx.assertTrue(bucket.tryAcquire(0));
+        ctx.assertFalse(bucket.tryAcquire(second / 20));
+        ctx.assertTrue(bucket.tryAcquire(second / 10));
+        ctx.assertFalse(bucket.tryAcquire(second / 10));
+        //never more than the burst, however long the player has been idle
+        ctx.assertTrue(bucket.tryAcquire(10 * second));
+        ctx.assertTrue(bucket.tryAcquire(10 * second));
+        ctx.assertFalse(bucket.tryAcquire(10 * second));
+        ctx.assertEquals(3L, bucket.rejected());
+    }
+}
@@ -0,0 +1,52 @@
+package de.codepitbull.vertx.eventsourcing.maps;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Jochen Mader
+ */
+public class CollisionGridTest {
+
+    @Test
+    public void testGridMatchesWallsOfMap() throws Exception {
+        MapReader reader = new MapReader(new JsonObject(IOUtils.toString(MapReader.class.getResourceAsStream("/webroot/maps/map_1.json"))));
+        CollisionGrid grid = CollisionGrid.fromMap(reader);
+        JsonArray walls = reader.walls();
+        for (int y = 0; y < reader.height(); y++)
+            for (int x = 0; x < reader.width(); x++)
+                assertEquals("Tile " + x + "/" + y, walls.getInteger(y * reader.width() + x) != 0, grid.blocked(x, y));
+        //the room players start in
+        assertFalse(grid.blocked(3, 5));
+        assertTrue(grid.blocked(2, 5));
+    }
+
+    @Test
+    public void testNextFreeTileSkipsBlockedAndTakenTiles() {
+        //x . .
+        //. x .
+        CollisionGrid grid = new CollisionGrid(3, 2, new long[]{1L | 1L << 4});
+        assertEquals(1, grid.nextFreeTile(0, 0, (x, y) -> false));
+        assertEquals(2, grid.nextFreeTile(1, 0, (x, y) -> x == 1 && y == 0));
+        //wraps around at the end of the map
+        assertEquals(1, grid.nextFreeTile(2, 1, (x, y) -> y == 1));
+        assertEquals(1, grid.nextFreeTile(-1, 7, (x, y) -> false));
+        assertEquals(-1, grid.nextFreeTile(0, 0, (x, y) -> true));
+    }
+
+    @Test
+    public void testOutsideOfMapIsBlocked() {
+        CollisionGrid grid = new CollisionGrid(3, 2, new long[1]);
+        assertFalse(grid.blocked(0, 0));
+        assertFalse(grid.blocked(2, 1));
+        assertTrue(grid.blocked(-1, 0));
+        assertTrue(grid.blocked(0, -1));
+        assertTrue(grid.blocked(3, 0));
+        assertTrue(grid.blocked(0, 2));
+        assertTrue(grid.blocked(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,40 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class EventLoopProbeTest {
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void testVerticlesOfOneLoopShareAProbe(TestContext ctx) {
+        Async async = ctx.async();
+        Vertx vertx = new Vertx(rule.vertx());
+        MetricsRegistry registry = MetricsRegistry.get(vertx);
+        EventLoopProbe probe = registry.probeEventLoop(vertx);
+        ctx.assertTrue(probe == registry.probeEventLoop(vertx));
+        String count = "vertx_event_loop_delay_seconds_count{thread=\"" + Thread.currentThread().getName() + "\"} ";
+        vertx.setTimer(5 * MetricsRegistry.EVENT_LOOP_PROBE_INTERVAL_MS / 2, id -> {
+            //a single timer records the delays
+            ctx.assertTrue(registry.scrape().contains(count + "2\n"));
+            probe.release();
+            ctx.assertTrue(probe == registry.probeEventLoop(vertx));
+            probe.release();
+            probe.release();
+            ctx.assertFalse(probe == registry.probeEventLoop(vertx));
+            async.complete();
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package de.codepitbull.vertx.eventsourcing.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Jochen Mader
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void testHistogramKeepsQuantilesWithinPrecision() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 100_000; value++)
+            histogram.record(value * 1000);
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000_000L, histogram.max());
+        for (double quantile : MetricsRegistry.QUANTILES) {
+            double expected = quantile * 100_000_000L;
+            double error = Math.abs(histogram.valueAtQuantile(quantile) - expected) / expected;
+            assertTrue("Quantile " + quantile + " is off by " + error, error <= 1d / 64);
+        }
+        assertEquals(0, new Histogram().valueAtQuantile(0.99));
+        assertEquals(Long.MAX_VALUE, Histogram.highestEquivalent(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testScrapeWritesPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram(MetricsRegistry.STORE_APPEND_DURATION, "Append time", MetricsRegistry.NANOS, "store", "FileEventStore")
+                .record(2_000_000);
+        registry.gauge(MetricsRegistry.ACTIVE_GAMES, "Games").add(3);
+        registry.counter(MetricsRegistry.TICKS, "Ticks", "scheduler", "loop-1").add(7);
+
+        String text = registry.scrape();
+        assertTrue(text, text.contains("# TYPE games_active gauge\ngames_active 3\n"));
+        assertTrue(text, text.contains("# TYPE game_ticks_total counter\ngame_ticks_total{scheduler=\"loop-1\"} 7\n"));
+        assertTrue(text, text.contains("# TYPE store_append_duration_seconds summary\n"));
+        assertTrue(text, text.contains("store_append_duration_seconds{store=\"FileEventStore\",quantile=\"0.99\"} 0.002"));
+        assertTrue(text, text.contains("store_append_duration_seconds_count{store=\"FileEventStore\"} 1\n"));
+        assertTrue(text, text.indexOf("games_active") < text.indexOf("store_append"));
+    }
+}
@@ -0,0 +1,166 @@
+package de.codepitbull.vertx.eventsourcing.projection;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.EventStore;
+import de.codepitbull.vertx.eventsourcing.store.FileEventStore;
+import de.codepitbull.vertx.eventsourcing.store.InMemoryEventStore;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class ProjectionEngineTest {
+    public static final int ROUNDS = 20000;
+    public static final int SNAPSHOT_INTERVAL = 100;
+    public static final int MAP_SIZE = 16;
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private int finished;
+
+    @Test
+    public void testChunksGiveSameResultAsSequentialFold(TestContext ctx) throws IOException {
+        EventStore store = new FileEventStore(new Vertx(rule.vertx()), "1", folder.getRoot().getAbsolutePath(), null, false);
+        PositionHeatmap heatmap = new PositionHeatmap(MAP_SIZE, MAP_SIZE);
+        long[] expected = play(store, heatmap);
+        ctx.assertTrue(Arrays.stream(expected).sum() > ROUNDS);
+        new ProjectionEngine(new Vertx(rule.vertx()), new ForkJoinPool(4), 999).run(store, heatmap,
+                ctx.asyncAssertSuccess(heat -> {
+                    ctx.assertTrue(Arrays.equals(expected, heat));
+                    ctx.assertEquals(heatmap.toJson(expected), heatmap.toJson(heat));
+                    store.close();
+                }));
+    }
+
+    @Test
+    public void testProjectionOverSeveralGames(TestContext ctx) {
+        List<EventStore> stores = new ArrayList<>();
+        long[] expected = new long[0];
+        MovesPerPlayer moves = new MovesPerPlayer();
+        for (int i = 0; i < 3; i++) {
+            EventStore store = new InMemoryEventStore();
+            expected = moves.merge(expected, play(store, moves));
+            stores.add(store);
+        }
+        stores.add(new InMemoryEventStore());
+        long[] all = expected;
+        ctx.assertEquals(2, all.length);
+        new ProjectionEngine(new Vertx(rule.vertx()), new ForkJoinPool(2), 1000).run(stores, moves,
+                ctx.asyncAssertSuccess(counts -> ctx.assertTrue(Arrays.equals(all, counts))));
+    }
+
+    @Test
+    public void testProjectionWhileGameIsRunning(TestContext ctx) throws IOException {
+        Async async = ctx.async();
+        EventStore store = new FileEventStore(new Vertx(rule.vertx()), "1", folder.getRoot().getAbsolutePath(), 4096, false);
+        PositionHeatmap heatmap = new PositionHeatmap(MAP_SIZE, MAP_SIZE);
+        Game game = start(store);
+        long[] expected = play(store, game, heatmap, heatmap.zero(), 1, ROUNDS / 2);
+        long headOffset = store.headOffset();
+        //keep appending and rolling segments while the chunks are read
+        MutableInt round = new MutableInt(ROUNDS / 2);
+        rule.vertx().setPeriodic(1, id -> {
+            int from = round.intValue() + 1;
+            round.add(SNAPSHOT_INTERVAL / 2);
+            play(store, game, heatmap, heatmap.zero(), from, round.intValue());
+            if (round.intValue() >= ROUNDS) {
+                rule.vertx().cancelTimer(id);
+                finished(ctx, store, async);
+            }
+        });
+        new ProjectionEngine(new Vertx(rule.vertx()), new ForkJoinPool(4), 999).run(store, heatmap,
+                ctx.asyncAssertSuccess(heat -> {
+                    //only the updates stored when the projection started are folded
+                    ctx.assertTrue(store.headOffset() > headOffset);
+                    ctx.assertTrue(Arrays.equals(expected, heat));
+                    finished(ctx, store, async);
+                }));
+    }
+
+    /**
+     * Completes the test once both the game and the projection are done.
+     */
+    private void finished(TestContext ctx, EventStore store, Async async) {
+        if (++finished < 2)
+            return;
+        ctx.assertTrue(new File(folder.getRoot(), "1/updates").list().length > 10);
+        store.close();
+        async.complete();
+    }
+
+    /**
+     * Plays a game like the game loop does, storing updates and periodic snapshots.
+     * @return the result of folding all updates in order
+     */
+    private <A> A play(EventStore store, Projection<A> projection) {
+        return play(store, start(store), projection, projection.zero(), 1, ROUNDS);
+    }
+
+    private Game start(EventStore store) {
+        Game game = Game.builder().gameId("1").numPlayers(2).build();
+        store.storeSnapshot(game.snapshot(true), result -> {});
+        return game;
+    }
+
+    /**
+     * Plays the given rounds, folding them into {@code expected}.
+     */
+    private <A> A play(EventStore store, Game game, Projection<A> projection, A expected, int fromRound, int toRound) {
+        List<RoundUpdate> updates = new ArrayList<>();
+        for (int round = fromRound; round <= toRound; round++) {
+            RoundUpdate.Builder update = RoundUpdate.builder().roundId(round);
+            if (round == 1 || round == ROUNDS / 3) {
+                Player player = Player.builder().id(game.currentNumPlayers()).name("player" + round).x(8).y(8).build();
+                game.addPlayer(player);
+                update.newPlayer(player);
+            }
+            for (int index = 0; index < game.currentNumPlayers(); index++) {
+                //wander around the middle of the map
+                boolean horizontal = (round + index) % 2 == 0;
+                boolean away = round % 3 == 0;
+                Move move = horizontal ? (game.x(index) < MAP_SIZE / 2 ^ away ? Move.RIGHT : Move.LEFT)
+                        : (game.y(index) < MAP_SIZE / 2 ^ away ? Move.DOWN : Move.UP);
+                game.move(index, move);
+                update.move(game.playerId(index), move);
+            }
+            game.incrementAndGetRoundId();
+            RoundUpdate built = update.build();
+            updates.add(built);
+            expected = projection.fold(expected, game, built);
+            if (round % SNAPSHOT_INTERVAL == 0 && round < toRound) {
+                store.storeEvents(updates, result -> {});
+                updates.clear();
+                store.storeSnapshot(game.snapshot(true), result -> {});
+            }
+        }
+        store.storeEvents(updates, result -> {});
+        if (toRound % SNAPSHOT_INTERVAL == 0)
+            store.storeSnapshot(game.snapshot(true), result -> {});
+        return expected;
+    }
+}
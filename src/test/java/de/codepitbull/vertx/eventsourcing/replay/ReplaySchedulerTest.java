@@ -0,0 +1,150 @@
+package de.codepitbull.vertx.eventsourcing.replay;
+
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import de.codepitbull.vertx.eventsourcing.store.InMemoryEventStore;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.IntStream.range;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class ReplaySchedulerTest {
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void testPushAppendedEvents(TestContext ctx) {
+        Async async = ctx.async();
+        InMemoryEventStore store = new InMemoryEventStore();
+        range(0, 3).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        List<Integer> received = new ArrayList<>();
+        ReplayScheduler scheduler = new ReplayScheduler(new Vertx(rule.vertx()), store, ReplayScheduler.DEFAULT_BUFFER_SIZE);
+        scheduler.start(1, 0, ReplayScheduler.SPEED_MAX, event -> {
+            received.add(event.getRoundId());
+            if (received.size() == 2)
+                //the spectator caught up and has to be woken up by the append
+                store.storeEvent(update(3), ctx.asyncAssertSuccess());
+            if (received.size() == 3) {
+                ctx.assertEquals(1, received.get(0));
+                ctx.assertEquals(3, received.get(2));
+                scheduler.stopAll();
+                async.complete();
+            }
+        });
+    }
+
+    @Test
+    public void testRealTimePacing(TestContext ctx) {
+        Async async = ctx.async();
+        InMemoryEventStore store = new InMemoryEventStore();
+        range(0, 10).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        List<Integer> received = new ArrayList<>();
+        ReplayScheduler scheduler = new ReplayScheduler(new Vertx(rule.vertx()), store, ReplayScheduler.DEFAULT_BUFFER_SIZE);
+        scheduler.start(1, -1, ReplayScheduler.SPEED_REAL_TIME, event -> received.add(event.getRoundId()));
+        rule.vertx().setTimer(ReplayScheduler.ROUND_INTERVAL_MS / 2, id -> {
+            ctx.assertEquals(1, received.size());
+            scheduler.stopAll();
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testSpectatorsShareReads(TestContext ctx) {
+        Async async = ctx.async();
+        FetchCountingEventStore store = new FetchCountingEventStore();
+        range(0, 10).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        ReplayScheduler scheduler = new ReplayScheduler(new Vertx(rule.vertx()), store, ReplayScheduler.DEFAULT_BUFFER_SIZE);
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+        scheduler.start(1, -1, ReplayScheduler.SPEED_MAX, event -> first.add(event.getRoundId()));
+        scheduler.start(2, -1, ReplayScheduler.SPEED_MAX, event -> {
+            second.add(event.getRoundId());
+            if (second.size() == 10) {
+                ctx.assertEquals(9, second.get(9));
+                ctx.assertEquals(10, store.fetches.get(SharedReplayBuffer.SHARED_CURSOR_ID));
+                ctx.assertFalse(store.fetches.containsKey(1));
+                ctx.assertFalse(store.fetches.containsKey(2));
+                scheduler.stopAll();
+                async.complete();
+            }
+        });
+    }
+
+    @Test
+    public void testLaggingSpectatorUsesPrivateConsumer(TestContext ctx) {
+        Async async = ctx.async();
+        FetchCountingEventStore store = new FetchCountingEventStore();
+        range(0, 20).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        ReplayScheduler scheduler = new ReplayScheduler(new Vertx(rule.vertx()), store, 4);
+        List<Integer> received = new ArrayList<>();
+        scheduler.start(1, 9, ReplayScheduler.SPEED_MAX, event -> {});
+        //starts far behind the window of the shared buffer
+        scheduler.start(2, -1, ReplayScheduler.SPEED_MAX, event -> {
+            received.add(event.getRoundId());
+            if (received.size() == 20) {
+                ctx.assertEquals(0, received.get(0));
+                ctx.assertEquals(19, received.get(19));
+                ctx.assertTrue(store.fetches.containsKey(2));
+                scheduler.stopAll();
+                async.complete();
+            }
+        });
+    }
+
+    @Test
+    public void testStoppedSpectatorLeavesTheStore(TestContext ctx) {
+        FetchCountingEventStore store = new FetchCountingEventStore();
+        ReplayScheduler scheduler = new ReplayScheduler(new Vertx(rule.vertx()), store, ReplayScheduler.DEFAULT_BUFFER_SIZE);
+        //nothing stored yet, the spectator gets parked
+        scheduler.start(1, -1, ReplayScheduler.SPEED_MAX, event -> ctx.fail("Stopped spectator got an event"));
+        ctx.assertEquals(1, store.awaiting.size());
+        scheduler.stop(1);
+        ctx.assertTrue(store.awaiting.isEmpty());
+        store.storeEvent(update(0), ctx.asyncAssertSuccess());
+        scheduler.stopAll();
+    }
+
+    private static class FetchCountingEventStore extends InMemoryEventStore {
+        Map<Integer, Integer> fetches = new HashMap<>();
+        List<Handler<Long>> awaiting = new ArrayList<>();
+
+        @Override
+        public void awaitEvent(long offset, Handler<Long> handler) {
+            awaiting.add(handler);
+            super.awaitEvent(offset, handler);
+        }
+
+        @Override
+        public void cancelAwait(Handler<Long> handler) {
+            awaiting.remove(handler);
+            super.cancelAwait(handler);
+        }
+
+        @Override
+        public void getNextEvent(Integer spectatorId, Handler<AsyncResult<RoundUpdate>> resultHandler) {
+            fetches.merge(spectatorId, 1, Integer::sum);
+            super.getNextEvent(spectatorId, resultHandler);
+        }
+    }
+
+    private static RoundUpdate update(int roundId) {
+        return RoundUpdate.builder().roundId(roundId).build();
+    }
+}
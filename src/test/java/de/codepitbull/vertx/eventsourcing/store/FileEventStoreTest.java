@@ -0,0 +1,201 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+import static java.util.stream.IntStream.range;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class FileEventStoreTest {
+    public static final String DEFAULT_GAME_ID = "1";
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndReplay(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(null, false);
+        range(0, 10).forEach(val -> store.storeSnapshot(snapshot(2 + val), ctx.asyncAssertSuccess()));
+        range(0, 20).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+
+        store.loadSnapshot(4, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(6, snapshot.getRoundId())));
+        store.loadSnapshot(10, ctx.asyncAssertFailure());
+
+        store.startConsumerForSpectatorIdWithStartOffset(1, 6);
+        store.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(7, event.getRoundId())));
+        store.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(8, event.getRoundId())));
+        store.getNextEvent(2, ctx.asyncAssertFailure());
+        store.close();
+    }
+
+    @Test
+    public void testReopen(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(null, false);
+        range(0, 5).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        store.storeSnapshot(snapshot(0), ctx.asyncAssertSuccess());
+        store.close();
+
+        FileEventStore reopened = createStore(null, false);
+        reopened.storeEvent(update(5), ctx.asyncAssertSuccess());
+        reopened.loadSnapshot(0, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(0, snapshot.getRoundId())));
+        reopened.startConsumerForSpectatorIdWithStartOffset(1, 3);
+        reopened.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(4, event.getRoundId())));
+        reopened.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(5, event.getRoundId())));
+        reopened.getNextEvent(1, ctx.asyncAssertFailure());
+        reopened.close();
+    }
+
+    @Test
+    public void testSecondWriterIsFenced(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(null, false);
+        try {
+            createStore(null, false);
+            ctx.fail("Opened a store that is already open");
+        } catch (IOException e) {
+            ctx.assertTrue(e.getMessage().contains("locked"));
+        }
+        store.close();
+        createStore(null, false).close();
+    }
+
+    @Test
+    public void testSegmentRolling(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(256, false);
+        range(0, 200).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        store.close();
+
+        ctx.assertTrue(new File(folder.getRoot(), DEFAULT_GAME_ID + "/updates").list().length > 1);
+        FileEventStore reopened = createStore(256, false);
+        reopened.startConsumerForSpectatorIdWithStartOffset(1, -1);
+        range(0, 200).forEach(val ->
+                reopened.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(val, event.getRoundId()))));
+        reopened.close();
+    }
+
+    @Test
+    public void testSeekByRoundAndTime(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(256, false);
+        //rounds start at 1, the update of round r has offset r - 1
+        range(1, 101).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        range(0, 10).forEach(val -> store.storeSnapshot(snapshot(val * 10), ctx.asyncAssertSuccess()));
+
+        store.loadSnapshotAtRound(47, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(40, snapshot.getRoundId())));
+        store.loadSnapshotAtRound(90, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(90, snapshot.getRoundId())));
+        store.loadSnapshotAtRound(-1, ctx.asyncAssertFailure());
+        store.loadSnapshotAtTime(System.currentTimeMillis(), ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(90, snapshot.getRoundId())));
+        store.loadSnapshotAtTime(0, ctx.asyncAssertFailure());
+
+        ctx.assertEquals(40L, store.offsetAfterRound(40));
+        ctx.assertEquals(0L, store.offsetAfterRound(0));
+        ctx.assertEquals(100L, store.offsetAfterRound(100));
+        store.close();
+    }
+
+    @Test
+    public void testLoadDeltaSnapshot(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(null, false);
+        Game game = Game.builder().gameId("game").numPlayers(3).build();
+        game.addPlayer(Player.builder().id(0).name("player1").x(3).y(5).build());
+        game.addPlayer(Player.builder().id(1).name("player2").x(4).y(5).build());
+        store.storeSnapshot(game.snapshot(true), ctx.asyncAssertSuccess());
+
+        game.incrementAndGetRoundId();
+        game.move(0, Move.LEFT);
+        Game delta = game.snapshot(false);
+        ctx.assertTrue(delta.isDelta());
+        ctx.assertEquals(1, delta.currentNumPlayers());
+        store.storeSnapshot(delta, ctx.asyncAssertSuccess());
+
+        ctx.assertFalse(game.hasChanges());
+        game.incrementAndGetRoundId();
+        game.addPlayer(Player.builder().id(2).name("player3").x(5).y(5).build());
+        store.storeSnapshot(game.snapshot(false), ctx.asyncAssertSuccess());
+
+        JsonObject expected = game.toJson();
+        store.loadSnapshot(2, ctx.asyncAssertSuccess(snapshot -> {
+            ctx.assertFalse(snapshot.isDelta());
+            ctx.assertEquals(expected, snapshot.toJson());
+        }));
+        store.close();
+    }
+
+    @Test
+    public void testRetentionDeletesSegments(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(256, false);
+        range(0, 200).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        range(0, 20).forEach(val -> store.storeSnapshot(snapshot(val * 10), ctx.asyncAssertSuccess()));
+        File updatesDir = new File(folder.getRoot(), DEFAULT_GAME_ID + "/updates");
+        int segments = updatesDir.list().length;
+
+        store.applyRetention(SnapshotRetention.builder().keepLast(2).build());
+
+        store.loadSnapshot(17, ctx.asyncAssertFailure());
+        store.loadSnapshot(18, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(180, snapshot.getRoundId())));
+        store.startConsumerForSpectatorIdWithStartOffset(1, 180);
+        store.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(181, event.getRoundId())));
+        //files are deleted by an ordered blocking task of the same context
+        rule.vertx().executeBlocking(exe -> exe.complete(), ctx.asyncAssertSuccess(v -> {
+            ctx.assertTrue(updatesDir.list().length < segments);
+            store.close();
+        }));
+    }
+
+    @Test
+    public void testRetentionKeepsUpdatesAfterTheSnapshotRound(TestContext ctx) throws IOException {
+        FileEventStore store = createStore(256, false);
+        //rounds run ahead of the offsets
+        range(0, 200).forEach(val -> store.storeEvent(update(val * 2), ctx.asyncAssertSuccess()));
+        range(0, 10).forEach(val -> store.storeSnapshot(snapshot(val * 10), ctx.asyncAssertSuccess()));
+
+        store.applyRetention(SnapshotRetention.builder().keepLast(1).build());
+
+        store.startConsumerForSpectatorIdWithStartOffset(1, (int) store.offsetAfterRound(90) - 1);
+        store.getNextEvent(1, ctx.asyncAssertSuccess(event -> ctx.assertEquals(92, event.getRoundId())));
+        store.close();
+    }
+
+    @Test
+    public void testFsync(TestContext ctx) throws IOException {
+        Async async = ctx.async();
+        FileEventStore store = createStore(null, true);
+        store.storeEvent(update(0), result -> {
+            ctx.assertTrue(result.succeeded());
+            store.close();
+            async.complete();
+        });
+    }
+
+    private FileEventStore createStore(Integer segmentSize, boolean fsync) throws IOException {
+        return new FileEventStore(new Vertx(rule.vertx()), DEFAULT_GAME_ID, folder.getRoot().getAbsolutePath(), segmentSize, fsync);
+    }
+
+    private static RoundUpdate update(int roundId) {
+        return RoundUpdate.builder().roundId(roundId).build();
+    }
+
+    private static Game snapshot(int roundId) {
+        return Game.builder().gameId("game").numPlayers(2).roundId(roundId).build();
+    }
+}
@@ -0,0 +1,72 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.IntStream.range;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class GroupCommitEventStoreTest {
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Test
+    public void testFlushOnMaxEvents(TestContext ctx) {
+        BatchRecordingEventStore delegate = new BatchRecordingEventStore();
+        GroupCommitEventStore store = new GroupCommitEventStore(new Vertx(rule.vertx()), delegate, 10000, 4);
+        range(0, 4).forEach(val -> {
+            Async async = ctx.async();
+            store.storeEvent(update(val), result -> {
+                ctx.assertTrue(result.succeeded());
+                ctx.assertEquals(1, delegate.batchSizes.size());
+                ctx.assertEquals(4, delegate.batchSizes.get(0));
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testFlushOnWindow(TestContext ctx) {
+        BatchRecordingEventStore delegate = new BatchRecordingEventStore();
+        GroupCommitEventStore store = new GroupCommitEventStore(new Vertx(rule.vertx()), delegate, 20, 64);
+        range(0, 3).forEach(val -> {
+            Async async = ctx.async();
+            store.storeEvent(update(val), result -> {
+                ctx.assertTrue(result.succeeded());
+                ctx.assertEquals(3, delegate.batchSizes.get(0));
+                async.complete();
+            });
+        });
+        ctx.assertTrue(delegate.batchSizes.isEmpty());
+    }
+
+    private static class BatchRecordingEventStore extends InMemoryEventStore {
+        List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public void storeEvents(List<RoundUpdate> events, Handler<AsyncResult<Void>> resultHandler) {
+            batchSizes.add(events.size());
+            super.storeEvents(events, resultHandler);
+        }
+    }
+
+    private static RoundUpdate update(int roundId) {
+        return RoundUpdate.builder().roundId(roundId).build();
+    }
+}
@@ -0,0 +1,180 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServer;
+import kafka.utils.MockTime;
+import kafka.utils.TestUtils;
+import kafka.zk.EmbeddedZookeeper;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+
+/**
+ * Runs against a broker started in process.
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class KafkaEventStoreTest {
+
+    private static EmbeddedZookeeper zookeeper;
+    private static KafkaServer broker;
+    private static int brokerPort;
+    private static int topics;
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @BeforeClass
+    public static void startBroker() {
+        String zookeeperConnect = "127.0.0.1:" + TestUtils.choosePort();
+        zookeeper = new EmbeddedZookeeper(zookeeperConnect);
+        brokerPort = TestUtils.choosePort();
+        Properties props = TestUtils.createBrokerConfig(0, brokerPort, false);
+        props.put("zookeeper.connect", zookeeperConnect);
+        props.put("num.partitions", "4");
+        broker = TestUtils.createServer(new KafkaConfig(props), new MockTime());
+    }
+
+    @AfterClass
+    public static void stopBroker() {
+        broker.shutdown();
+        zookeeper.shutdown();
+    }
+
+    @Test
+    public void testReplayFromPrefetchBuffer(TestContext ctx) {
+        KafkaEventStore store = createStore(256);
+        Async async = ctx.async();
+        store.storeEvents(updates(0, 100), ctx.asyncAssertSuccess(v -> {
+            store.startConsumerForSpectatorIdWithStartOffset(1, 9);
+            replay(ctx, store, 10, 100, () -> store.getNextEvent(1, ctx.asyncAssertFailure(fail -> {
+                store.close();
+                async.complete();
+            })));
+        }));
+    }
+
+    @Test
+    public void testReadEvents(TestContext ctx) {
+        KafkaEventStore store = createStore(KafkaPrefetchReader.DEFAULT_FETCH_SIZE);
+        Async async = ctx.async();
+        store.storeEvents(updates(0, 50), ctx.asyncAssertSuccess(v ->
+                store.readEvents(10, 20, ctx.asyncAssertSuccess(events -> {
+                    ctx.assertEquals(10L, store.offsetAfterRound(9));
+                    ctx.assertEquals(50L, store.offsetAfterRound(49));
+                    ctx.assertEquals(20, events.size());
+                    ctx.assertEquals(10, events.get(0).getRoundId());
+                    ctx.assertEquals(29, events.get(19).getRoundId());
+                    //not past the head
+                    store.readEvents(45, 20, ctx.asyncAssertSuccess(tail -> {
+                        ctx.assertEquals(5, tail.size());
+                        store.readEvents(50, 20, ctx.asyncAssertFailure(fail -> {
+                            store.close();
+                            async.complete();
+                        }));
+                    }));
+                }))));
+    }
+
+    @Test
+    public void testGamesSharingAPartition(TestContext ctx) {
+        String gameA = "game-a";
+        String gameB = range(0, 100).mapToObj(val -> "game-b" + val)
+                .filter(id -> KafkaEventStore.partitionFor(id, 4) == KafkaEventStore.partitionFor(gameA, 4))
+                .findFirst().get();
+        Async async = ctx.async();
+        openSharedStore(gameA, ctx.asyncAssertSuccess(storeA -> openSharedStore(gameB, ctx.asyncAssertSuccess(storeB ->
+                //interleave the writes of both games on the partition
+                storeA.storeEvents(updates(0, 10), ctx.asyncAssertSuccess(a1 ->
+                storeB.storeEvents(updates(100, 110), ctx.asyncAssertSuccess(b1 ->
+                        storeA.storeEvents(updates(10, 20), ctx.asyncAssertSuccess(a2 -> {
+                            ctx.assertEquals(19L, storeA.headOffset());
+                            ctx.assertEquals(9L, storeB.headOffset());
+                            storeA.startConsumerForSpectatorIdWithStartOffset(1, 4);
+                            replay(ctx, storeA, 5, 20, () -> storeA.getNextEvent(1, ctx.asyncAssertFailure(fail ->
+                                    storeB.readEvents(2, 20, ctx.asyncAssertSuccess(events -> {
+                                        ctx.assertEquals(8, events.size());
+                                        ctx.assertEquals(102, events.get(0).getRoundId());
+                                        ctx.assertEquals(109, events.get(7).getRoundId());
+                                        storeA.close();
+                                        storeB.close();
+                                        async.complete();
+                                    })))));
+                        }))))))))));
+    }
+
+    @Test
+    public void testFailedEventOfABatchGetsNoOffset(TestContext ctx) {
+        List<RoundUpdate> updates = updates(0, 6);
+        //exceeds the max request size of the producer
+        updates.set(3, tooLarge(3));
+        Async async = ctx.async();
+        openSharedStore("game-failing", ctx.asyncAssertSuccess(store ->
+                store.storeEvents(updates, ctx.asyncAssertFailure(fail -> {
+                    ctx.assertEquals(4L, store.headOffset());
+                    //round 3 was never stored, the rounds following it moved up
+                    ctx.assertEquals(3L, store.offsetAfterRound(2));
+                    ctx.assertEquals(3L, store.offsetAfterRound(3));
+                    ctx.assertEquals(4L, store.offsetAfterRound(4));
+                    store.storeEvents(updates(6, 8), ctx.asyncAssertSuccess(v ->
+                            store.readEvents(2, 10, ctx.asyncAssertSuccess(events -> {
+                                ctx.assertEquals(Arrays.asList(2, 4, 5, 6, 7),
+                                        events.stream().map(RoundUpdate::getRoundId).collect(toList()));
+                                store.close();
+                                async.complete();
+                            }))));
+                }))));
+    }
+
+    private static RoundUpdate tooLarge(int roundId) {
+        String name = StringUtils.repeat('x', 60000);
+        RoundUpdate.Builder update = RoundUpdate.builder().roundId(roundId);
+        for (int id = 0; id < 20; id++)
+            update.newPlayer(Player.builder().id(id).name(name).x(0).y(0).build());
+        return update.build();
+    }
+
+    private void replay(TestContext ctx, KafkaEventStore store, int roundId, int end, Runnable done) {
+        if (roundId == end) {
+            done.run();
+            return;
+        }
+        store.getNextEvent(1, ctx.asyncAssertSuccess(event -> {
+            ctx.assertEquals(roundId, event.getRoundId());
+            replay(ctx, store, roundId + 1, end, done);
+        }));
+    }
+
+    private KafkaEventStore createStore(int fetchSize) {
+        return new KafkaEventStore(new Vertx(rule.vertx()), "kafka-store-test-" + topics++, "localhost", brokerPort,
+                fetchSize, 2);
+    }
+
+    private void openSharedStore(String gameId, Handler<AsyncResult<KafkaEventStore>> resultHandler) {
+        KafkaEventStore.open(new Vertx(rule.vertx()), gameId, "localhost", brokerPort, 256, 2, "games", resultHandler);
+    }
+
+    private static List<RoundUpdate> updates(int from, int to) {
+        return range(from, to).mapToObj(roundId -> RoundUpdate.builder().roundId(roundId).build()).collect(toList());
+    }
+}
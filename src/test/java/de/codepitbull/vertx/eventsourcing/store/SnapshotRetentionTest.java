@@ -0,0 +1,80 @@
+package de.codepitbull.vertx.eventsourcing.store;
+
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static java.util.stream.IntStream.range;
+
+/**
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class SnapshotRetentionTest {
+
+    @Test
+    public void testKeepLastCompactsUpdates(TestContext ctx) {
+        InMemoryEventStore store = new InMemoryEventStore();
+        range(0, 30).forEach(val -> store.storeEvent(update(val), ctx.asyncAssertSuccess()));
+        range(0, 10).forEach(val -> store.storeSnapshot(snapshot(val * 3), ctx.asyncAssertSuccess()));
+
+        store.applyRetention(SnapshotRetention.builder().keepLast(3).build());
+
+        store.loadSnapshot(6, ctx.asyncAssertFailure());
+        store.loadSnapshot(7, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(21, snapshot.getRoundId())));
+        ctx.assertEquals(29L, store.headOffset());
+
+        store.startConsumerForSpectatorIdWithStartOffset(1, 19);
+        store.getNextEvent(1, ctx.asyncAssertFailure());
+        store.startConsumerForSpectatorIdWithStartOffset(2, 20);
+        store.getNextEvent(2, ctx.asyncAssertSuccess(event -> ctx.assertEquals(21, event.getRoundId())));
+    }
+
+    @Test
+    public void testKeepEveryRoundsWithinMaxAge(TestContext ctx) {
+        InMemoryEventStore store = new InMemoryEventStore();
+        range(0, 10).forEach(val -> store.storeSnapshot(snapshot(val * 5), ctx.asyncAssertSuccess()));
+
+        store.applyRetention(SnapshotRetention.builder().keepLast(1).keepEveryRounds(20).maxAgeMs(60000l).build());
+
+        //rounds 0, 20, 40 start a span of 20 rounds, 45 is the newest
+        range(0, 10).forEach(index -> {
+            if (index == 0 || index == 4 || index == 8 || index == 9)
+                store.loadSnapshot(index, ctx.asyncAssertSuccess());
+            else
+                store.loadSnapshot(index, ctx.asyncAssertFailure());
+        });
+    }
+
+    @Test
+    public void testDeltaKeepsItsBase(TestContext ctx) {
+        InMemoryEventStore store = new InMemoryEventStore();
+        Game game = Game.builder().gameId("game").numPlayers(1).build();
+        game.addPlayer(Player.builder().id(0).name("player1").x(3).y(5).build());
+        store.storeSnapshot(game.snapshot(true), ctx.asyncAssertSuccess());
+        range(0, 5).forEach(val -> {
+            game.incrementAndGetRoundId();
+            game.move(0, Move.RIGHT);
+            store.storeSnapshot(game.snapshot(false), ctx.asyncAssertSuccess());
+        });
+
+        store.applyRetention(SnapshotRetention.builder().keepLast(1).build());
+
+        store.loadSnapshot(0, ctx.asyncAssertSuccess());
+        store.loadSnapshot(3, ctx.asyncAssertFailure());
+        store.loadSnapshot(5, ctx.asyncAssertSuccess(snapshot -> ctx.assertEquals(8, snapshot.x(0))));
+    }
+
+    private static RoundUpdate update(int roundId) {
+        return RoundUpdate.builder().roundId(roundId).build();
+    }
+
+    private static Game snapshot(int roundId) {
+        return Game.builder().gameId("game").numPlayers(2).roundId(roundId).build();
+    }
+}
@@ -0,0 +1,124 @@
+package de.codepitbull.vertx.eventsourcing.verticles;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.*;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+
+/**
+ * Runs two clustered nodes in one JVM sharing a file event store directory.
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class ClusteredGameControlVerticleTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx nodeA;
+    private Vertx nodeB;
+
+    @Before
+    public void setUp(TestContext ctx) {
+        Async async = ctx.async();
+        JsonObject config = new JsonObject()
+                .put(CONFIG_GAME_HOSTS, 1)
+                .put(CONFIG_TICK_PERIOD, 20l)
+                .put(CONFIG_NODE_HEARTBEAT_INTERVAL, 50l)
+                .put(CONFIG_NODE_TIMEOUT, 300l)
+                .put(CONFIG_FILE_STORE_DIR, folder.getRoot().getAbsolutePath());
+        startNode(ctx, config, a -> {
+            nodeA = a;
+            startNode(ctx, config, b -> {
+                nodeB = b;
+                //wait for the nodes to see each other
+                nodeA.setTimer(200, id -> async.complete());
+            });
+        });
+    }
+
+    private void startNode(TestContext ctx, JsonObject config, Handler<Vertx> started) {
+        Vertx.clusteredVertx(new VertxOptions()
+                .setClusterManager(new LocalClusterManager())
+                .setClusterHost("localhost"), ctx.asyncAssertSuccess(vertx ->
+                vertx.deployVerticle(GameControlVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                        ctx.asyncAssertSuccess(id -> started.handle(vertx)))));
+    }
+
+    @After
+    public void tearDown(TestContext ctx) {
+        Async async = ctx.async();
+        nodeA.close(ctx.asyncAssertSuccess(v -> {
+            LocalClusterManager.reset();
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testGamesAreVisibleOnAllNodes(TestContext ctx) {
+        Async async = ctx.async();
+        nodeA.eventBus().<String>send(GAMES_CREATE, 4, ctx.asyncAssertSuccess(first ->
+                nodeA.eventBus().<String>send(GAMES_CREATE, 4, ctx.asyncAssertSuccess(second ->
+                        //the next heartbeats tell node B about the game started on node A
+                        nodeA.setTimer(150, id ->
+                                nodeB.eventBus().<JsonArray>send(GAMES_LIST, 0, ctx.asyncAssertSuccess(list -> {
+                                    ctx.assertEquals(2, list.body().size());
+                                    nodeB.eventBus().<Boolean>send(GAMES_DELETE, first.body(), ctx.asyncAssertSuccess(deleted ->
+                                            nodeB.eventBus().<Boolean>send(GAMES_DELETE, second.body(), ctx.asyncAssertSuccess(deletedToo ->
+                                                    nodeB.close(ctx.asyncAssertSuccess(v -> async.complete()))))));
+                                })))))));
+    }
+
+    @Test
+    public void testGamesOfFailedNodeAreRecovered(TestContext ctx) {
+        Async async = ctx.async();
+        List<String> gameIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+            nodeA.eventBus().<String>send(GAMES_CREATE, 2, ctx.asyncAssertSuccess(created -> {
+                String gameId = created.body();
+                nodeA.eventBus().<Integer>send(GAME_BASE + gameId, new JsonObject()
+                        .put(ACTION, ACTION_REG)
+                        .put(PLAYER_NAME, "player1"), ctx.asyncAssertSuccess(registered -> {
+                    gameIds.add(gameId);
+                    if (gameIds.size() == 2)
+                        //let the registrations reach the event stores before node B goes away
+                        nodeA.setTimer(200, id -> nodeB.close(ctx.asyncAssertSuccess(v -> {
+                            List<String> verified = new ArrayList<>();
+                            gameIds.forEach(recoveredGameId -> awaitPlayer(ctx, recoveredGameId, verified, async));
+                        })));
+                }));
+            }));
+    }
+
+    private void awaitPlayer(TestContext ctx, String gameId, List<String> verified, Async async) {
+        nodeA.eventBus().<JsonObject>send(GAME_BASE + gameId, new JsonObject().put(ACTION, ACTION_SNAPSHOT), snapshot -> {
+            if (snapshot.failed()) {
+                //game is being recovered
+                nodeA.setTimer(50, id -> awaitPlayer(ctx, gameId, verified, async));
+                return;
+            }
+            ctx.assertEquals("player1", snapshot.result().body().getJsonArray(PLAYERS).getJsonObject(0).getString(PLAYER_NAME));
+            verified.add(gameId);
+            if (verified.size() == 2)
+                nodeA.eventBus().<JsonObject>send(GAMES_GET_ONE, gameId, ctx.asyncAssertSuccess(game -> async.complete()));
+        });
+    }
+}
@@ -2,6 +2,8 @@ package de.codepitbull.vertx.eventsourcing.verticles;
 
 import de.codepitbull.vertx.eventsourcing.constants.Addresses;
 import de.codepitbull.vertx.eventsourcing.constants.Constants;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.JsonObject;
@@ -17,7 +19,9 @@ import org.junit.runner.RunWith;
 import java.util.UUID;
 
 import static de.codepitbull.vertx.eventsourcing.constants.Constants.GAME_ID;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.MSG_TYPE;
 import static de.codepitbull.vertx.eventsourcing.constants.Constants.ROUND_ID;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.SNAPSHOT;
 import static de.codeptibull.vertx.kafka.writer.KafkaWriterVerticle.CONFIG_KAFKA_HOST;
 import static java.util.stream.IntStream.range;
 
@@ -59,14 +63,16 @@ public class EventStoreVerticleTest {
     @Test
     public void testReplay(TestContext ctx) {
         Async async = ctx.async();
-        range(0, 10).forEach(val -> eventBus.send(Addresses.REPLAY_SNAPSHOTS_BASE + DEFAULT_GAME_ID, new JsonObject().put("sn-id", val).put(ROUND_ID, 2 + val)));
-        range(0, 20).forEach(val -> eventBus.send(Addresses.REPLAY_UPDATES_BASE + DEFAULT_GAME_ID, new JsonObject().put("up-id", val)));
-        eventBus.<JsonObject>consumer(Addresses.BROWSER_SPECTATOR_BASE + DEFAULT_GAME_ID + ".1", update -> {
-            JsonObject body = update.body();
-            if (body.containsKey("sn-id"))
-                ctx.assertEquals(4, body.getInteger("sn-id"));
-            if (body.containsKey("up-id")) {
-                ctx.assertEquals(7, body.getInteger("up-id"));
+        range(0, 10).forEach(val -> eventBus.send(Addresses.REPLAY_SNAPSHOTS_BASE + DEFAULT_GAME_ID,
+                Game.builder().gameId(DEFAULT_GAME_ID).numPlayers(2).roundId(2 + val).build()));
+        range(0, 20).forEach(val -> eventBus.send(Addresses.REPLAY_UPDATES_BASE + DEFAULT_GAME_ID,
+                RoundUpdate.builder().roundId(val).build()));
+        eventBus.<String>consumer(Addresses.BROWSER_SPECTATOR_BASE + DEFAULT_GAME_ID + ".1", update -> {
+            JsonObject body = new JsonObject(update.body());
+            if (SNAPSHOT.equals(body.getString(MSG_TYPE)))
+                ctx.assertEquals(6, body.getInteger(ROUND_ID));
+            else {
+                ctx.assertEquals(7, body.getInteger(ROUND_ID));
                 async.complete();
             }
         });
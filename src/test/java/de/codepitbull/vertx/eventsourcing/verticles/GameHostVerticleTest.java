@@ -0,0 +1,72 @@
+package de.codepitbull.vertx.eventsourcing.verticles;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAMES_CREATE;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.*;
+
+/**
+ *
+ * @author Jochen Mader
+ */
+@RunWith(VertxUnitRunner.class)
+public class GameHostVerticleTest {
+    public static final int GAMES = 16;
+
+    @Rule
+    public final RunTestOnContext rule = new RunTestOnContext();
+
+    @Before
+    public void setUp(TestContext ctx) {
+        rule.vertx().deployVerticle(GameControlVerticle.class.getName(),
+                new DeploymentOptions().setConfig(new JsonObject().put(CONFIG_GAME_HOSTS, 1)),
+                ctx.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testGamesKeepStateWhenHostsAreAdded(TestContext ctx) {
+        Async async = ctx.async();
+        List<String> gameIds = new ArrayList<>();
+        List<String> verified = new ArrayList<>();
+        for (int i = 0; i < GAMES; i++)
+            rule.vertx().eventBus().<String>send(GAMES_CREATE, 2, ctx.asyncAssertSuccess(created -> {
+                String gameId = created.body();
+                rule.vertx().eventBus().<Integer>send(GAME_BASE + gameId, new JsonObject()
+                        .put(ACTION, ACTION_REG)
+                        .put(PLAYER_NAME, "player1"), ctx.asyncAssertSuccess(registered -> {
+                    gameIds.add(gameId);
+                    if (gameIds.size() == GAMES)
+                        //about half of the games move to the new host
+                        rule.vertx().deployVerticle(GameHostVerticle.class.getName(), ctx.asyncAssertSuccess(id ->
+                                gameIds.forEach(movedGameId -> awaitPlayer(ctx, movedGameId, verified, async))));
+                }));
+            }));
+    }
+
+    private void awaitPlayer(TestContext ctx, String gameId, List<String> verified, Async async) {
+        rule.vertx().eventBus().<JsonObject>send(GAME_BASE + gameId, new JsonObject().put(ACTION, ACTION_SNAPSHOT), snapshot -> {
+            if (snapshot.failed()) {
+                //game is being moved
+                rule.vertx().setTimer(20, id -> awaitPlayer(ctx, gameId, verified, async));
+                return;
+            }
+            ctx.assertEquals("player1", snapshot.result().body().getJsonArray(PLAYERS).getJsonObject(0).getString(PLAYER_NAME));
+            verified.add(gameId);
+            if (verified.size() == GAMES)
+                async.complete();
+        });
+    }
+}
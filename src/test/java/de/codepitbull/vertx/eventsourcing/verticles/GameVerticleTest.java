@@ -2,9 +2,12 @@ package de.codepitbull.vertx.eventsourcing.verticles;
 
 import de.codepitbull.vertx.eventsourcing.constants.Addresses;
 import de.codepitbull.vertx.eventsourcing.constants.Constants;
+import de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum;
 import de.codepitbull.vertx.eventsourcing.entity.Game;
 import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -53,6 +56,35 @@ public class GameVerticleTest {
                 });
     }
 
+    @Test
+    public void testRestartedGameContinues(TestContext ctx) {
+        Async async = ctx.async();
+        String gameId = "recovered";
+        DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject()
+                .put(GAME_ID, gameId)
+                .put(NR_PLAYERS, DEFAULT_NR_PLAYERS)
+                .put(CONFIG_TICK_PERIOD, 20l));
+        rule.vertx().deployVerticle(EventStoreVerticle.class.getName(), options, ctx.asyncAssertSuccess(store ->
+                rule.vertx().deployVerticle(GameVerticle.class.getName(), options, ctx.asyncAssertSuccess(game ->
+                        rule.vertx().eventBus().<Integer>send(Addresses.GAME_BASE + gameId, new JsonObject()
+                                .put(Constants.ACTION, Constants.ACTION_REG)
+                                .put(Constants.PLAYER_NAME, "player1"), ctx.asyncAssertSuccess(registered ->
+                                //let some rounds reach the event store
+                                rule.vertx().setTimer(200, id -> restart(ctx, game, options, async))))))));
+    }
+
+    private void restart(TestContext ctx, String deploymentId, DeploymentOptions options, Async async) {
+        String gameId = options.getConfig().getString(GAME_ID);
+        rule.vertx().undeploy(deploymentId, ctx.asyncAssertSuccess(undeployed ->
+                rule.vertx().deployVerticle(GameVerticle.class.getName(), options, ctx.asyncAssertSuccess(restarted ->
+                        rule.vertx().eventBus().<JsonObject>send(Addresses.GAME_BASE + gameId,
+                                new JsonObject().put(Constants.ACTION, Constants.ACTION_SNAPSHOT), ctx.asyncAssertSuccess(snapshot -> {
+                                    ctx.assertTrue(snapshot.body().getInteger(ROUND_ID) > 0);
+                                    ctx.assertEquals("player1", snapshot.body().getJsonArray(PLAYERS).getJsonObject(0).getString(PLAYER_NAME));
+                                    async.complete();
+                                }))))));
+    }
+
     @Test
     public void testGetSnapshot(TestContext ctx) {
         Async async = ctx.async();
@@ -80,13 +112,14 @@ public class GameVerticleTest {
         Async async = ctx.async();
         rule.vertx().eventBus().localConsumer(Addresses.REPLAY_UPDATES_BASE + DEFAULT_GAME_ID).handler(req -> req.reply(true));
         rule.vertx().eventBus().localConsumer(Addresses.REPLAY_SNAPSHOTS_BASE + DEFAULT_GAME_ID).handler(req -> req.reply(true));
-        rule.vertx().eventBus().<JsonObject>localConsumer(Addresses.BROWSER_GAME_BASE + "1").handler(req -> {
-            //wait for a response to our move-left-command
-            if(req.body().containsKey(PLAYERS) && req.body().getJsonArray(PLAYERS).size() == 1) {
-                JsonObject player = req.body().getJsonArray(PLAYERS).getJsonObject(0);
+        rule.vertx().eventBus().<RoundUpdate>localConsumer(Addresses.BROWSER_GAME_BASE + "1").handler(req -> {
+            //wait for a response to our move-down-command
+            JsonObject body = req.body().toJson();
+            if(body.containsKey(PLAYERS) && body.getJsonArray(PLAYERS).size() == 1) {
+                JsonObject player = body.getJsonArray(PLAYERS).getJsonObject(0);
                 ctx.assertNotEquals(0, player.getInteger(ROUND_ID));
                 ctx.assertEquals(0, player.getInteger(PLAYER_ID));
-                ctx.assertEquals("l", player.getString("mov"));
+                ctx.assertEquals("d", player.getString("mov"));
                 async.complete();
             }
         });
@@ -98,11 +131,42 @@ public class GameVerticleTest {
                         new JsonObject()
                                 .put(Constants.ACTION, Constants.ACTION_REG)
                                 .put(Constants.PLAYER_NAME, "player2"), pl2Registered ->
-                                //send move-left-command for player1
+                                //send move-down-command for player1, left of it is a wall
                                 rule.vertx().eventBus().send(Addresses.GAME_BASE + DEFAULT_GAME_ID,
                                         new JsonObject()
                                                 .put(Constants.ACTION, Constants.ACTION_MOVE)
-                                                .put(PLAYER_ID, 0).put(Constants.ACTION_MOVE, "l"))));
+                                                .put(PLAYER_ID, 0).put(Constants.ACTION_MOVE, "d"))));
+
+    }
 
+    @Test
+    public void testUnknownMoveIsRejected(TestContext ctx) {
+        Async async = ctx.async();
+        rule.vertx().eventBus().localConsumer(Addresses.REPLAY_UPDATES_BASE + DEFAULT_GAME_ID).handler(req -> req.reply(true));
+        rule.vertx().eventBus().localConsumer(Addresses.REPLAY_SNAPSHOTS_BASE + DEFAULT_GAME_ID).handler(req -> req.reply(true));
+        rule.vertx().eventBus().<RoundUpdate>localConsumer(Addresses.BROWSER_GAME_BASE + "1").handler(req -> {
+            //moves are still applied after the unknown one
+            JsonObject body = req.body().toJson();
+            if(body.containsKey(PLAYERS) && body.getJsonArray(PLAYERS).size() == 1) {
+                ctx.assertEquals("d", body.getJsonArray(PLAYERS).getJsonObject(0).getString("mov"));
+                async.complete();
+            }
+        });
+
+        rule.vertx().eventBus().<Integer>send(Addresses.GAME_BASE + DEFAULT_GAME_ID,
+                new JsonObject()
+                        .put(Constants.ACTION, Constants.ACTION_REG)
+                        .put(Constants.PLAYER_NAME, "player1"), registered -> rule.vertx().eventBus().send(Addresses.GAME_BASE + DEFAULT_GAME_ID,
+                        new JsonObject()
+                                .put(Constants.ACTION, Constants.ACTION_MOVE)
+                                .put(PLAYER_ID, 0).put(Constants.ACTION_MOVE, "x"), rejected -> {
+                            ctx.assertTrue(rejected.failed());
+                            ctx.assertEquals(FailureCodesEnum.FAILURE_UNKNOWN_MOVE.intValue(),
+                                    ((ReplyException) rejected.cause()).failureCode());
+                            rule.vertx().eventBus().send(Addresses.GAME_BASE + DEFAULT_GAME_ID,
+                                    new JsonObject()
+                                            .put(Constants.ACTION, Constants.ACTION_MOVE)
+                                            .put(PLAYER_ID, 0).put(Constants.ACTION_MOVE, "d"));
+                        }));
     }
 }
@@ -1,6 +1,13 @@
 package de.codepitbull.vertx.eventsourcing.verticles;
 
+import de.codepitbull.vertx.eventsourcing.codec.EventCodecs;
+import de.codepitbull.vertx.eventsourcing.constants.FailureCodesEnum;
+import de.codepitbull.vertx.eventsourcing.entity.Game;
+import de.codepitbull.vertx.eventsourcing.entity.Move;
+import de.codepitbull.vertx.eventsourcing.entity.Player;
+import de.codepitbull.vertx.eventsourcing.entity.RoundUpdate;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.json.JsonObject;
@@ -14,9 +21,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static de.codepitbull.vertx.eventsourcing.constants.Constants.CONFIG_PORT;
-import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAMES_CREATE;
-import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAMES_GET_ONE;
-import static de.codepitbull.vertx.eventsourcing.constants.Addresses.GAME_BASE;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.REPLAY_BINARY;
+import static de.codepitbull.vertx.eventsourcing.constants.Constants.SPECTATOR_ID;
+import static de.codepitbull.vertx.eventsourcing.constants.Addresses.*;
 import static de.codepitbull.vertx.eventsourcing.verticles.HttpVerticle.URL_GAMEID;
 import static io.vertx.core.http.HttpHeaders.*;
 
@@ -87,6 +94,47 @@ public class HttpVerticleTest {
                 .end();
     }
 
+    @Test
+    public void testStaticFilesAreCompressedAndRevalidated(TestContext ctx) {
+        Async async = ctx.async();
+        httpClient()
+                .get("/static/js/vertxbus.js")
+                .putHeader(ACCEPT_ENCODING, "gzip, deflate")
+                .handler(response -> {
+                            ctx.assertEquals(200, response.statusCode());
+                            ctx.assertEquals("gzip", response.getHeader(CONTENT_ENCODING.toString()));
+                            String etag = response.getHeader(ETAG.toString());
+                            ctx.assertNotNull(etag);
+                            httpClient()
+                                    .get("/static/js/vertxbus.js")
+                                    .putHeader(ACCEPT_ENCODING, "gzip")
+                                    .putHeader(IF_NONE_MATCH, etag)
+                                    .handler(revalidated -> {
+                                        ctx.assertEquals(304, revalidated.statusCode());
+                                        async.complete();
+                                    })
+                                    .end();
+                        }
+                )
+                .end();
+    }
+
+    @Test
+    public void testMetrics(TestContext ctx) {
+        Async async = ctx.async();
+        httpClient()
+                .get("/metrics")
+                .handler(response -> {
+                            ctx.assertEquals(200, response.statusCode());
+                            response.bodyHandler(body -> {
+                                ctx.assertTrue(body.toString().contains("# TYPE vertx_event_loop_delay_seconds summary"));
+                                async.complete();
+                            });
+                        }
+                )
+                .end();
+    }
+
     @Test
     public void testGetPlayers(TestContext ctx) {
         Async async = ctx.async();
@@ -144,6 +192,70 @@ public class HttpVerticleTest {
                 .end("player_name=player1");
     }
 
+    @Test
+    public void testPlayOverBinaryWebSocket(TestContext ctx) {
+        Async async = ctx.async();
+        Game game = Game.builder().gameId("1").numPlayers(2)
+                .player(Player.builder().id(0).name("player1").x(3).y(5).build())
+                .build();
+        rule.vertx().eventBus().<JsonObject>localConsumer(GAME_BASE + "1").handler(req -> req.reply(game.toJson()));
+        rule.vertx().eventBus().<Buffer>localConsumer(GAME_INPUT_BASE + "1").handler(req -> {
+            ctx.assertEquals(0, EventCodecs.playerIdOfMove(req.body()));
+            ctx.assertEquals(Move.DOWN, EventCodecs.moveOf(req.body()));
+            rule.vertx().eventBus().publish(BROWSER_GAME_BASE + "1", RoundUpdate.builder().roundId(1).move(0, Move.DOWN).build());
+        });
+
+        httpClient().websocket("/ws/games/1/players/0", socket -> socket.handler(frame -> {
+            if (frame.getByte(0) == EventCodecs.TYPE_SNAPSHOT) {
+                ctx.assertEquals(game.toJson(), EventCodecs.decodeGame(frame).toJson());
+                socket.write(Buffer.buffer(new byte[]{(byte) Move.DOWN.ordinal()}));
+            } else {
+                RoundUpdate update = EventCodecs.decodeRoundUpdate(frame);
+                ctx.assertEquals(1, update.getRoundId());
+                ctx.assertEquals(Move.DOWN, update.move(0));
+                async.complete();
+            }
+        }));
+    }
+
+    @Test
+    public void testSpectateOverBinaryWebSocket(TestContext ctx) {
+        Async async = ctx.async();
+        Game game = Game.builder().gameId("1").numPlayers(2)
+                .player(Player.builder().id(0).name("player1").x(3).y(5).build())
+                .build();
+        rule.vertx().eventBus().<JsonObject>localConsumer(REPLAY_START_BASE + "1").handler(req -> {
+            ctx.assertEquals(7, req.body().getInteger(SPECTATOR_ID));
+            ctx.assertTrue(req.body().getBoolean(REPLAY_BINARY));
+            rule.vertx().eventBus().send(BROWSER_SPECTATOR_BASE + "1.7", game);
+            rule.vertx().eventBus().send(BROWSER_SPECTATOR_BASE + "1.7", RoundUpdate.builder().roundId(1).move(0, Move.DOWN).build());
+            req.reply(true);
+        });
+        //closing the websocket has to stop the replay
+        rule.vertx().eventBus().<Integer>localConsumer(REPLAY_STOP_BASE + "1").handler(req -> {
+            ctx.assertEquals(7, req.body());
+            async.complete();
+        });
+
+        httpClient().websocket("/ws/games/1/spectators/7", socket -> socket.handler(frame -> {
+            if (frame.getByte(0) == EventCodecs.TYPE_SNAPSHOT)
+                ctx.assertEquals(game.toJson(), EventCodecs.decodeGame(frame).toJson());
+            else {
+                ctx.assertEquals(1, EventCodecs.decodeRoundUpdate(frame).getRoundId());
+                socket.close();
+            }
+        }));
+    }
+
+    @Test
+    public void testSpectateAsUnknownSpectator(TestContext ctx) {
+        Async async = ctx.async();
+        rule.vertx().eventBus().<JsonObject>localConsumer(REPLAY_START_BASE + "1").handler(req ->
+                req.fail(FailureCodesEnum.FAILURE_UNKNOWN_SPECTATOR.intValue(), "No spectator"));
+
+        httpClient().websocket("/ws/games/1/spectators/8", socket -> socket.closeHandler(closed -> async.complete()));
+    }
+
     private HttpClient httpClient() {
         return rule.vertx().createHttpClient(new HttpClientOptions().setDefaultPort(DEFAULT_PORT));
     }
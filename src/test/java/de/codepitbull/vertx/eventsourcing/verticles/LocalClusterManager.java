@@ -0,0 +1,322 @@
+package de.codepitbull.vertx.eventsourcing.verticles;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Counter;
+import io.vertx.core.shareddata.Lock;
+import io.vertx.core.spi.cluster.AsyncMultiMap;
+import io.vertx.core.spi.cluster.ChoosableIterable;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.core.spi.cluster.NodeListener;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Clusters Vert.x instances running in the same JVM by sharing all cluster state in static maps, used for testing
+ * several nodes without a real cluster manager.
+ *
+ * @author Jochen Mader
+ */
+public class LocalClusterManager implements ClusterManager {
+
+    private static final Map<String, LocalClusterManager> nodes = new ConcurrentHashMap<>();
+    private static final Map<String, Map<?, ?>> syncMaps = new ConcurrentHashMap<>();
+    private static final Map<String, LocalAsyncMap<?, ?>> asyncMaps = new ConcurrentHashMap<>();
+    private static final Map<String, LocalAsyncMultiMap<?, ?>> asyncMultiMaps = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Semaphore> locks = new ConcurrentHashMap<>();
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private Vertx vertx;
+    private NodeListener nodeListener;
+    private volatile boolean active;
+
+    /**
+     * Drops the state of all nodes, to be called once all clustered instances of a test are closed.
+     */
+    public static void reset() {
+        nodes.clear();
+        syncMaps.clear();
+        asyncMaps.clear();
+        asyncMultiMaps.clear();
+        counters.clear();
+        locks.clear();
+    }
+
+    @Override
+    public void setVertx(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> void getAsyncMultiMap(String name, Handler<AsyncResult<AsyncMultiMap<K, V>>> resultHandler) {
+        AsyncMultiMap<K, V> map = (AsyncMultiMap<K, V>) asyncMultiMaps.computeIfAbsent(name, key -> new LocalAsyncMultiMap<>());
+        vertx.runOnContext(v -> resultHandler.handle(Future.succeededFuture(map)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> void getAsyncMap(String name, Handler<AsyncResult<AsyncMap<K, V>>> resultHandler) {
+        AsyncMap<K, V> map = (AsyncMap<K, V>) asyncMaps.computeIfAbsent(name, key -> new LocalAsyncMap<>());
+        vertx.runOnContext(v -> resultHandler.handle(Future.succeededFuture(map)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> getSyncMap(String name) {
+        return (Map<K, V>) syncMaps.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public void getLockWithTimeout(String name, long timeout, Handler<AsyncResult<Lock>> resultHandler) {
+        Semaphore semaphore = locks.computeIfAbsent(name, key -> new Semaphore(1));
+        vertx.<Lock>executeBlocking(future -> {
+            try {
+                if (semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                    future.complete(semaphore::release);
+                else
+                    future.fail("Timed out waiting for lock " + name);
+            } catch (InterruptedException e) {
+                future.fail(e);
+            }
+        }, false, resultHandler);
+    }
+
+    @Override
+    public void getCounter(String name, Handler<AsyncResult<Counter>> resultHandler) {
+        AtomicLong counter = counters.computeIfAbsent(name, key -> new AtomicLong());
+        vertx.runOnContext(v -> resultHandler.handle(Future.succeededFuture(new LocalCounter(counter))));
+    }
+
+    @Override
+    public String getNodeID() {
+        return nodeId;
+    }
+
+    @Override
+    public List<String> getNodes() {
+        return new ArrayList<>(nodes.keySet());
+    }
+
+    @Override
+    public void nodeListener(NodeListener listener) {
+        this.nodeListener = listener;
+    }
+
+    @Override
+    public void join(Handler<AsyncResult<Void>> resultHandler) {
+        vertx.executeBlocking(future -> {
+            nodes.values().forEach(node -> node.notify(listener -> listener.nodeAdded(nodeId)));
+            nodes.put(nodeId, this);
+            active = true;
+            future.complete();
+        }, resultHandler);
+    }
+
+    @Override
+    public void leave(Handler<AsyncResult<Void>> resultHandler) {
+        vertx.executeBlocking(future -> {
+            active = false;
+            nodes.remove(nodeId);
+            nodes.values().forEach(node -> node.notify(listener -> listener.nodeLeft(nodeId)));
+            future.complete();
+        }, resultHandler);
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    private void notify(Consumer<NodeListener> event) {
+        if (nodeListener != null)
+            event.accept(nodeListener);
+    }
+
+    private static <T> void complete(Handler<AsyncResult<T>> handler, Supplier<T> result) {
+        if (handler != null)
+            handler.handle(Future.succeededFuture(result.get()));
+    }
+
+    private static class LocalAsyncMultiMap<K, V> implements AsyncMultiMap<K, V> {
+        private final Map<K, Set<V>> map = new ConcurrentHashMap<>();
+
+        @Override
+        public void add(K k, V v, Handler<AsyncResult<Void>> handler) {
+            complete(handler, () -> {
+                map.computeIfAbsent(k, key -> new CopyOnWriteArraySet<>()).add(v);
+                return null;
+            });
+        }
+
+        @Override
+        public void get(K k, Handler<AsyncResult<ChoosableIterable<V>>> handler) {
+            Set<V> values = map.get(k);
+            complete(handler, () -> new LocalChoosableIterable<>(values == null ? new ArrayList<>() : new ArrayList<>(values)));
+        }
+
+        @Override
+        public void remove(K k, V v, Handler<AsyncResult<Boolean>> handler) {
+            Set<V> values = map.get(k);
+            complete(handler, () -> values != null && values.remove(v));
+        }
+
+        @Override
+        public void removeAllForValue(V v, Handler<AsyncResult<Void>> handler) {
+            complete(handler, () -> {
+                map.values().forEach(values -> values.remove(v));
+                return null;
+            });
+        }
+    }
+
+    private static class LocalChoosableIterable<T> implements ChoosableIterable<T> {
+        private final List<T> values;
+        private final AtomicInteger next = new AtomicInteger();
+
+        LocalChoosableIterable(List<T> values) {
+            this.values = new CopyOnWriteArrayList<>(values);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return values.isEmpty();
+        }
+
+        @Override
+        public T choose() {
+            return values.isEmpty() ? null : values.get(Math.abs(next.getAndIncrement() % values.size()));
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return values.iterator();
+        }
+    }
+
+    private static class LocalAsyncMap<K, V> implements AsyncMap<K, V> {
+        private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>();
+
+        @Override
+        public void get(K k, Handler<AsyncResult<V>> handler) {
+            complete(handler, () -> map.get(k));
+        }
+
+        @Override
+        public void put(K k, V v, Handler<AsyncResult<Void>> handler) {
+            complete(handler, () -> {
+                map.put(k, v);
+                return null;
+            });
+        }
+
+        @Override
+        public void put(K k, V v, long ttl, Handler<AsyncResult<Void>> handler) {
+            put(k, v, handler);
+        }
+
+        @Override
+        public void putIfAbsent(K k, V v, Handler<AsyncResult<V>> handler) {
+            complete(handler, () -> map.putIfAbsent(k, v));
+        }
+
+        @Override
+        public void putIfAbsent(K k, V v, long ttl, Handler<AsyncResult<V>> handler) {
+            putIfAbsent(k, v, handler);
+        }
+
+        @Override
+        public void remove(K k, Handler<AsyncResult<V>> handler) {
+            complete(handler, () -> map.remove(k));
+        }
+
+        @Override
+        public void removeIfPresent(K k, V v, Handler<AsyncResult<Boolean>> handler) {
+            complete(handler, () -> map.remove(k, v));
+        }
+
+        @Override
+        public void replace(K k, V v, Handler<AsyncResult<V>> handler) {
+            complete(handler, () -> map.replace(k, v));
+        }
+
+        @Override
+        public void replaceIfPresent(K k, V oldValue, V newValue, Handler<AsyncResult<Boolean>> handler) {
+            complete(handler, () -> map.replace(k, oldValue, newValue));
+        }
+
+        @Override
+        public void clear(Handler<AsyncResult<Void>> handler) {
+            complete(handler, () -> {
+                map.clear();
+                return null;
+            });
+        }
+
+        @Override
+        public void size(Handler<AsyncResult<Integer>> handler) {
+            complete(handler, map::size);
+        }
+    }
+
+    private static class LocalCounter implements Counter {
+        private final AtomicLong value;
+
+        LocalCounter(AtomicLong value) {
+            this.value = value;
+        }
+
+        @Override
+        public void get(Handler<AsyncResult<Long>> handler) {
+            complete(handler, value::get);
+        }
+
+        @Override
+        public void incrementAndGet(Handler<AsyncResult<Long>> handler) {
+            complete(handler, value::incrementAndGet);
+        }
+
+        @Override
+        public void getAndIncrement(Handler<AsyncResult<Long>> handler) {
+            complete(handler, value::getAndIncrement);
+        }
+
+        @Override
+        public void decrementAndGet(Handler<AsyncResult<Long>> handler) {
+            complete(handler, value::decrementAndGet);
+        }
+
+        @Override
+        public void addAndGet(long delta, Handler<AsyncResult<Long>> handler) {
+            complete(handler, () -> value.addAndGet(delta));
+        }
+
+        @Override
+        public void getAndAdd(long delta, Handler<AsyncResult<Long>> handler) {
+            complete(handler, () -> value.getAndAdd(delta));
+        }
+
+        @Override
+        public void compareAndSet(long expected, long value, Handler<AsyncResult<Boolean>> handler) {
+            complete(handler, () -> this.value.compareAndSet(expected, value));
+        }
+    }
+}